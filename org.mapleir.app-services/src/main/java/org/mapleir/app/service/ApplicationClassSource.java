@@ -91,6 +91,27 @@ public class ApplicationClassSource extends ClassSource {
 		}
 	}
 
+	/**
+	 * Reads the code of a class of the application or of one of its
+	 * libraries if it was parsed without it, from whichever source the class
+	 * belongs to.
+	 *
+	 * @param cn The class.
+	 * @return The class.
+	 */
+	@Override
+	public ClassNode loadCode(ClassNode cn) {
+		if(hasCode(cn)) {
+			for(LibraryClassSource cs : libraries) {
+				if(!cs.hasCode(cn)) {
+					return cs.loadCode(cn);
+				}
+			}
+			return cn;
+		}
+		return super.loadCode(cn);
+	}
+
 	public boolean isLibraryClass(String name) {
 		if(name == null) {
 			return false;
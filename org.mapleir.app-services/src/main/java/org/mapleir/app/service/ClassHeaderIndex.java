@@ -0,0 +1,430 @@
+package org.mapleir.app.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * The headers of the classes in a jar: their names, super types, access
+ * flags and member names and descriptors, but no code.<br>
+ * An index is built by parsing the jar once and is stored as a small binary
+ * file in a cache directory, named by the hash of the contents of the jar, so
+ * that later runs against the same jar only need to map that file.
+ *
+ * <p> The file starts with a magic number and {@link #VERSION}, followed by a
+ * table of all distinct strings and then the class records, which refer to
+ * strings by their index in the table. Files of another version are rebuilt.
+ */
+public class ClassHeaderIndex {
+	private static final Logger LOGGER = Logger.getLogger(ClassHeaderIndex.class);
+	private static final int MAGIC = 0x4D494458; // MIDX
+	public static final int VERSION = 1;
+	private static final int PARSE_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+	private final List<ClassHeader> headers;
+
+	private ClassHeaderIndex(List<ClassHeader> headers) {
+		this.headers = headers;
+	}
+
+	/**
+	 * @return The headers of the classes in the jar, in jar order.
+	 */
+	public List<ClassHeader> getHeaders() {
+		return Collections.unmodifiableList(headers);
+	}
+
+	public int size() {
+		return headers.size();
+	}
+
+	/**
+	 * Loads the index of the given jar from the cache directory, or builds it
+	 * and stores it there if it isn't cached yet.
+	 *
+	 * @param jar The jar to index.
+	 * @param cacheDir The directory that indexes are kept in.
+	 * @return The index.
+	 * @throws IOException If the jar can't be read.
+	 */
+	public static ClassHeaderIndex load(File jar, File cacheDir) throws IOException {
+		Path file = cacheDir.toPath().resolve(hash(jar) + ".idx");
+		if(Files.exists(file)) {
+			try {
+				ClassHeaderIndex index = read(file);
+				if(index != null) {
+					return index;
+				}
+			} catch(IOException | RuntimeException e) {
+				LOGGER.warn(String.format("Discarding unreadable index %s for %s", file, jar), e);
+			}
+		}
+
+		ClassHeaderIndex index = build(jar);
+		try {
+			Files.createDirectories(cacheDir.toPath());
+			/* write to a temporary file first so that other runs never see a
+			 * partially written index. */
+			Path tmp = Files.createTempFile(cacheDir.toPath(), "index", ".tmp");
+			try {
+				index.write(tmp);
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch(IOException e) {
+			LOGGER.warn(String.format("Couldn't store index of %s in %s", jar, cacheDir), e);
+		}
+		return index;
+	}
+
+	/**
+	 * @return The hex encoded SHA-256 hash of the contents of the file.
+	 */
+	public static String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+			while(ch.read(buf) != -1) {
+				buf.flip();
+				digest.update(buf);
+				buf.clear();
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for(byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Parses the headers of every class in the jar.
+	 */
+	public static ClassHeaderIndex build(File jar) throws IOException {
+		List<ClassHeader> headers = new ArrayList<>();
+		try (ZipFile zip = new ZipFile(jar)) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while(entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if(!entry.getName().endsWith(".class")) {
+					continue;
+				}
+				byte[] bytes;
+				try (InputStream in = zip.getInputStream(entry)) {
+					bytes = in.readAllBytes();
+				}
+				org.objectweb.asm.tree.ClassNode cn = new org.objectweb.asm.tree.ClassNode();
+				new ClassReader(bytes).accept(cn, PARSE_FLAGS);
+				headers.add(new ClassHeader(entry.getName(), cn));
+			}
+		}
+		return new ClassHeaderIndex(headers);
+	}
+
+	/**
+	 * Reads an index file.
+	 *
+	 * @return The index or null if the file is of a different version.
+	 */
+	public static ClassHeaderIndex read(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			if(buf.getInt() != MAGIC) {
+				throw new IOException("Not an index: " + file);
+			}
+			if(buf.getInt() != VERSION) {
+				return null;
+			}
+
+			String[] strings = new String[buf.getInt()];
+			byte[] tmp = new byte[256];
+			for(int i=0; i < strings.length; i++) {
+				int len = buf.getInt();
+				if(len > tmp.length) {
+					tmp = new byte[len];
+				}
+				buf.get(tmp, 0, len);
+				strings[i] = new String(tmp, 0, len, StandardCharsets.UTF_8);
+			}
+
+			int count = buf.getInt();
+			List<ClassHeader> headers = new ArrayList<>(count);
+			for(int i=0; i < count; i++) {
+				headers.add(ClassHeader.read(buf, strings));
+			}
+			return new ClassHeaderIndex(headers);
+		}
+	}
+
+	/**
+	 * Writes this index to the given file.
+	 */
+	public void write(Path file) throws IOException {
+		StringTable strings = new StringTable();
+		for(ClassHeader h : headers) {
+			h.intern(strings);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(strings.list.size());
+			for(String s : strings.list) {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.writeInt(headers.size());
+			for(ClassHeader h : headers) {
+				h.write(out, strings);
+			}
+		}
+	}
+
+	private static class StringTable {
+		final List<String> list = new ArrayList<>();
+		final Map<String, Integer> indices = new HashMap<>();
+
+		void add(String s) {
+			if(s != null && !indices.containsKey(s)) {
+				indices.put(s, list.size());
+				list.add(s);
+			}
+		}
+
+		/* -1 stands for null. */
+		int indexOf(String s) {
+			return s == null ? -1 : indices.get(s);
+		}
+	}
+
+	private static String string(String[] strings, int index) {
+		return index == -1 ? null : strings[index];
+	}
+
+	/**
+	 * The header of a single class.
+	 */
+	public static class ClassHeader {
+		private final String entryName;
+		private final int version;
+		private final int access;
+		private final String name;
+		private final String superName;
+		private final String[] interfaces;
+		private final MemberHeader[] fields;
+		private final MemberHeader[] methods;
+
+		ClassHeader(String entryName, org.objectweb.asm.tree.ClassNode cn) {
+			this.entryName = entryName;
+			version = cn.version;
+			access = cn.access;
+			name = cn.name;
+			superName = cn.superName;
+			interfaces = cn.interfaces.toArray(new String[0]);
+			fields = new MemberHeader[cn.fields.size()];
+			for(int i=0; i < fields.length; i++) {
+				FieldNode f = cn.fields.get(i);
+				fields[i] = new MemberHeader(f.access, f.name, f.desc, null);
+			}
+			methods = new MemberHeader[cn.methods.size()];
+			for(int i=0; i < methods.length; i++) {
+				MethodNode m = cn.methods.get(i);
+				methods[i] = new MemberHeader(m.access, m.name, m.desc, m.exceptions.toArray(new String[0]));
+			}
+		}
+
+		private ClassHeader(String entryName, int version, int access, String name, String superName, String[] interfaces, MemberHeader[] fields, MemberHeader[] methods) {
+			this.entryName = entryName;
+			this.version = version;
+			this.access = access;
+			this.name = name;
+			this.superName = superName;
+			this.interfaces = interfaces;
+			this.fields = fields;
+			this.methods = methods;
+		}
+
+		/**
+		 * @return The name of the jar entry that the class was read from.
+		 */
+		public String getEntryName() {
+			return entryName;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getSuperName() {
+			return superName;
+		}
+
+		/**
+		 * Creates a class from this header. The methods of the class have no
+		 * code.
+		 */
+		public ClassNode toClassNode() {
+			org.objectweb.asm.tree.ClassNode cn = new org.objectweb.asm.tree.ClassNode();
+			cn.version = version;
+			cn.access = access;
+			cn.name = name;
+			cn.superName = superName;
+			Collections.addAll(cn.interfaces, interfaces);
+			for(MemberHeader f : fields) {
+				cn.fields.add(new FieldNode(f.access, f.name, f.desc, null, null));
+			}
+			for(MemberHeader m : methods) {
+				cn.methods.add(new MethodNode(m.access, m.name, m.desc, null, m.exceptions));
+			}
+			return ClassHelper.create(cn);
+		}
+
+		void intern(StringTable strings) {
+			strings.add(entryName);
+			strings.add(name);
+			strings.add(superName);
+			for(String s : interfaces) {
+				strings.add(s);
+			}
+			for(MemberHeader f : fields) {
+				f.intern(strings);
+			}
+			for(MemberHeader m : methods) {
+				m.intern(strings);
+			}
+		}
+
+		void write(DataOutputStream out, StringTable strings) throws IOException {
+			out.writeInt(strings.indexOf(entryName));
+			out.writeInt(version);
+			out.writeInt(access);
+			out.writeInt(strings.indexOf(name));
+			out.writeInt(strings.indexOf(superName));
+			writeStrings(out, strings, interfaces);
+			out.writeInt(fields.length);
+			for(MemberHeader f : fields) {
+				f.write(out, strings);
+			}
+			out.writeInt(methods.length);
+			for(MemberHeader m : methods) {
+				m.write(out, strings);
+			}
+		}
+
+		static ClassHeader read(ByteBuffer buf, String[] strings) {
+			String entryName = string(strings, buf.getInt());
+			int version = buf.getInt();
+			int access = buf.getInt();
+			String name = string(strings, buf.getInt());
+			String superName = string(strings, buf.getInt());
+			String[] interfaces = readStrings(buf, strings);
+			MemberHeader[] fields = new MemberHeader[buf.getInt()];
+			for(int i=0; i < fields.length; i++) {
+				fields[i] = MemberHeader.read(buf, strings);
+			}
+			MemberHeader[] methods = new MemberHeader[buf.getInt()];
+			for(int i=0; i < methods.length; i++) {
+				methods[i] = MemberHeader.read(buf, strings);
+			}
+			return new ClassHeader(entryName, version, access, name, superName, interfaces, fields, methods);
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, StringTable strings, String[] arr) throws IOException {
+		if(arr == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(arr.length);
+			for(String s : arr) {
+				out.writeInt(strings.indexOf(s));
+			}
+		}
+	}
+
+	private static String[] readStrings(ByteBuffer buf, String[] strings) {
+		int len = buf.getInt();
+		if(len == -1) {
+			return null;
+		}
+		String[] arr = new String[len];
+		for(int i=0; i < len; i++) {
+			arr[i] = string(strings, buf.getInt());
+		}
+		return arr;
+	}
+
+	private static class MemberHeader {
+		final int access;
+		final String name;
+		final String desc;
+		/* the thrown exceptions of methods, null for fields. */
+		final String[] exceptions;
+
+		MemberHeader(int access, String name, String desc, String[] exceptions) {
+			this.access = access;
+			this.name = name;
+			this.desc = desc;
+			this.exceptions = exceptions;
+		}
+
+		void intern(StringTable strings) {
+			strings.add(name);
+			strings.add(desc);
+			if(exceptions != null) {
+				for(String s : exceptions) {
+					strings.add(s);
+				}
+			}
+		}
+
+		void write(DataOutputStream out, StringTable strings) throws IOException {
+			out.writeInt(access);
+			out.writeInt(strings.indexOf(name));
+			out.writeInt(strings.indexOf(desc));
+			writeStrings(out, strings, exceptions);
+		}
+
+		static MemberHeader read(ByteBuffer buf, String[] strings) {
+			int access = buf.getInt();
+			String name = string(strings, buf.getInt());
+			String desc = string(strings, buf.getInt());
+			return new MemberHeader(access, name, desc, readStrings(buf, strings));
+		}
+	}
+}
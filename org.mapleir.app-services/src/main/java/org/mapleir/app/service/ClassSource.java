@@ -1,78 +1,248 @@
 package org.mapleir.app.service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mapleir.asm.ClassHelper;
 import org.mapleir.asm.ClassNode;
 
+/**
+ * A named pool of classes.<br>
+ * Besides the classes in the node map a source may hold deferred classes,
+ * which are only parsed when they are first looked up or iterated. Depending
+ * on the {@link Tier} of the source they are parsed in full or without the
+ * code of their methods, in which case the code can be read later with
+ * {@link #loadCode(ClassNode)}.<br>
+ * Lookups may happen on any thread, so the source keeps its classes in its
+ * own concurrent map rather than in the map it was created with.
+ */
 public abstract class ClassSource {
 
+	/**
+	 * How much of a deferred class is parsed when it is first needed.
+	 */
+	public enum Tier {
+		/* names, super types, flags and members, but no method code. */
+		HEADER,
+		FULL
+	}
+
 	protected final Map<String, ClassNode> nodeMap;
-	
+	/* classes that haven't been parsed yet. only removed while holding the
+	 * lock of this source, after the parsed class is put in the node map. */
+	private final Map<String, DeferredClass> deferred;
+	/* classes that were parsed without code and where to read it from. only
+	 * removed while holding the lock of this source, after the code is read. */
+	private final Map<ClassNode, DeferredClass> headerOnly;
+	private volatile Tier tier;
+
+	private final AtomicInteger inflatedCount = new AtomicInteger();
+	private final AtomicInteger codeLoadedCount = new AtomicInteger();
+
 	public ClassSource(Collection<ClassNode> classes) {
 		this(ClassHelper.convertToMap(classes));
 	}
-	
+
 	public ClassSource(Map<String, ClassNode> nodeMap) {
-		this.nodeMap = nodeMap;
+		this.nodeMap = new ConcurrentHashMap<>(nodeMap);
+		deferred = new ConcurrentHashMap<>();
+		headerOnly = new ConcurrentHashMap<>();
+		tier = Tier.FULL;
+	}
+
+	public Tier getTier() {
+		return tier;
+	}
+
+	/**
+	 * Sets how deferred classes are parsed from now on.
+	 */
+	public void setTier(Tier tier) {
+		this.tier = tier;
+	}
+
+	/**
+	 * Adds a class that will only be parsed when it is first needed.
+	 *
+	 * @param name The name of the class.
+	 * @param cls The class.
+	 */
+	public void addDeferred(String name, DeferredClass cls) {
+		if(!nodeMap.containsKey(name)) {
+			deferred.putIfAbsent(name, cls);
+		}
+	}
+
+	/**
+	 * Records that a class of this source was created without code, so that
+	 * {@link #loadCode(ClassNode)} can read it from the given class.
+	 */
+	protected void addHeaderOnly(ClassNode cn, DeferredClass cls) {
+		headerOnly.put(cn, cls);
 	}
-	
+
 	public boolean contains(String name) {
 		if(name == null) {
 			return false;
 		}
-		
-		return nodeMap.containsKey(name);
+
+		return nodeMap.containsKey(name) || deferred.containsKey(name);
 	}
-	
+
 	public LocateableClassNode findIfLoaded(String name) {
-		if(nodeMap.containsKey(name)) {
-			return new LocateableClassNode(this, nodeMap.get(name), false);
+		ClassNode node = getNode(name);
+		if(node != null) {
+			return new LocateableClassNode(this, node, false);
 		} else {
 			return null;
 		}
 	}
-	
+
 	public abstract LocateableClassNode findClass(String name);
-	
+
 	/* internal method to look up a class in the current pool.*/
 	protected LocateableClassNode findClass0(String name) {
 		if(contains(name)) {
-			ClassNode node = nodeMap.get(name);
+			ClassNode node = getNode(name);
 			if(node != null) {
 				return new LocateableClassNode(this, node, false);
 			}
 		}
 		return null;
 	}
-	
+
+	/* the class with the given name, parsing it if it was deferred. */
+	private ClassNode getNode(String name) {
+		ClassNode node = nodeMap.get(name);
+		if(node == null && deferred.containsKey(name)) {
+			node = inflate(name);
+		}
+		return node;
+	}
+
+	private synchronized ClassNode inflate(String name) {
+		DeferredClass cls = deferred.get(name);
+		if(cls == null) {
+			/* parsed by another thread while we were waiting. */
+			return nodeMap.get(name);
+		}
+
+		ClassNode cn;
+		try {
+			if(tier == Tier.HEADER) {
+				cn = cls.readHeader();
+				headerOnly.put(cn, cls);
+			} else {
+				cn = cls.readClass();
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException("Couldn't read " + name, e);
+		}
+		nodeMap.put(name, cn);
+		deferred.remove(name);
+		inflatedCount.incrementAndGet();
+		return cn;
+	}
+
+	private void inflateAll() {
+		if(!deferred.isEmpty()) {
+			for(String name : new ArrayList<>(deferred.keySet())) {
+				inflate(name);
+			}
+		}
+	}
+
+	/**
+	 * Reads the code of the methods of a class of this source if it was
+	 * parsed without it, otherwise does nothing.
+	 *
+	 * @param cn A class of this source.
+	 * @return The class.
+	 */
+	public ClassNode loadCode(ClassNode cn) {
+		if(headerOnly.containsKey(cn)) {
+			loadCode0(cn);
+		}
+		return cn;
+	}
+
+	private synchronized void loadCode0(ClassNode cn) {
+		DeferredClass cls = headerOnly.get(cn);
+		if(cls == null) {
+			/* loaded by another thread while we were waiting. */
+			return;
+		}
+		try {
+			cls.readCode(cn);
+		} catch(IOException e) {
+			throw new UncheckedIOException("Couldn't read code of " + cn.getName(), e);
+		}
+		headerOnly.remove(cn);
+		codeLoadedCount.incrementAndGet();
+	}
+
+	/**
+	 * @return Whether the methods of the class have their code, i.e. it was
+	 * not parsed as a header or its code has since been loaded.
+	 */
+	public boolean hasCode(ClassNode cn) {
+		return !headerOnly.containsKey(cn);
+	}
+
+	/**
+	 * @return The number of deferred classes that have been parsed.
+	 */
+	public int getInflatedCount() {
+		return inflatedCount.get();
+	}
+
+	/**
+	 * @return The number of header only classes whose code has been loaded.
+	 */
+	public int getCodeLoadedCount() {
+		return codeLoadedCount.get();
+	}
+
+	/**
+	 * @return The number of classes that haven't been parsed yet.
+	 */
+	public int getDeferredCount() {
+		return deferred.size();
+	}
+
 	protected static void throwNoParent() {
 		throw new UnsupportedOperationException("Null parent.");
 	}
-	
+
 	protected void rebuildTable() {
+		inflateAll();
 		Set<ClassNode> cset = new HashSet<>();
 		cset.addAll(nodeMap.values());
 		nodeMap.clear();
-		
+
 		for(ClassNode cn : cset) {
 			nodeMap.put(cn.getName(), cn);
 		}
 	}
-	
+
 	public Iterable<ClassNode> iterate() {
 		return this::iterator;
 	}
-	
+
 	public Iterator<ClassNode> iterator() {
+		inflateAll();
 		return nodeMap.values().iterator();
 	}
 
 	public int size() {
-		return nodeMap.size();
+		return nodeMap.size() + deferred.size();
 	}
 }
@@ -1,13 +1,11 @@
 package org.mapleir.app.service;
 
-import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 import org.mapleir.app.service.ClassTree.InheritanceEdge;
-import org.mapleir.asm.ClassHelper;
 import org.mapleir.stdlib.collections.graph.FastDirectedGraph;
 import org.mapleir.stdlib.collections.graph.FastGraphEdge;
 import org.mapleir.stdlib.collections.graph.FastGraphEdgeImpl;
@@ -31,6 +29,12 @@ public class ClassTree extends FastDirectedGraph<ClassNode, InheritanceEdge> {
 	private final ApplicationClassSource source;
 	private final ClassNode rootNode;
 	private final boolean allowPhantomClasses;
+	private volatile CommonSuperTypeResolver superTypeResolver;
+	/* built on first use and kept up to date while classes are only added.
+	 * guarded by indexLock rather than this, which callers lock around
+	 * lookups that can load classes. */
+	private final Object indexLock = new Object();
+	private ClassTreeIndex index;
 
 	public ClassTree(ApplicationClassSource source) {
 		this(source, ALLOW_PHANTOM_CLASSES);
@@ -54,6 +58,10 @@ public class ClassTree extends FastDirectedGraph<ClassNode, InheritanceEdge> {
 	}
 
 	public Iterable<ClassNode> iterateParents(ClassNode cn) {
+		ClassTreeIndex idx = indexOf(cn);
+		if(idx != null) {
+			return idx.getParents(cn);
+		}
 		// this avoids any stupid anonymous Iterable<ClassNode> and Iterator bullcrap
 		// and also avoids computing a temporary set, so it is performant
 		return () -> getEdges(cn).stream().map(e -> e.dst()).iterator();
@@ -64,6 +72,10 @@ public class ClassTree extends FastDirectedGraph<ClassNode, InheritanceEdge> {
 	}
 
 	public Iterable<ClassNode> iterateChildren(ClassNode cn) {
+		ClassTreeIndex idx = indexOf(cn);
+		if(idx != null) {
+			return idx.getChildren(cn);
+		}
 		return () -> getReverseEdges(cn).stream().map(e -> e.src()).iterator();
 	}
 
@@ -84,10 +96,18 @@ public class ClassTree extends FastDirectedGraph<ClassNode, InheritanceEdge> {
 	}
 
 	public Collection<ClassNode> getParents(ClassNode cn) {
+		ClassTreeIndex idx = indexOf(cn);
+		if(idx != null) {
+			return new HashSet<>(idx.getParents(cn));
+		}
 		return __getnodes(getEdges(cn), true);
 	}
 
 	public Collection<ClassNode> getChildren(ClassNode cn) {
+		ClassTreeIndex idx = indexOf(cn);
+		if(idx != null) {
+			return new HashSet<>(idx.getChildren(cn));
+		}
 		return __getnodes(getReverseEdges(cn), false);
 	}
 
@@ -104,6 +124,10 @@ public class ClassTree extends FastDirectedGraph<ClassNode, InheritanceEdge> {
 		if(!containsVertex(cn)) {
 			return new ArrayList<>();
 		}
+		ClassTreeIndex idx = indexOf(cn);
+		if(idx != null) {
+			return new ArrayList<>(idx.getAncestors(cn));
+		}
 		return SimpleDfs.topoorder(this, cn, false);
 	}
 
@@ -112,9 +136,45 @@ public class ClassTree extends FastDirectedGraph<ClassNode, InheritanceEdge> {
 		if(!containsVertex(cn)) {
 			return new ArrayList<>();
 		}
+		ClassTreeIndex idx = indexOf(cn);
+		if(idx != null) {
+			return new ArrayList<>(idx.getDescendants(cn));
+		}
 		return SimpleDfs.postorder(this, cn, true);
 	}
 
+	/**
+	 * @return Whether {@code sup} is {@code sub} or one of its super classes or
+	 * interfaces, false if either class isn't in the tree.
+	 */
+	public boolean isSubtype(ClassNode sub, ClassNode sup) {
+		if(sub == null || sup == null || !containsVertex(sub) || !containsVertex(sup)) {
+			return false;
+		}
+		return getIndex().isSubtype(sub, sup);
+	}
+
+	/**
+	 * @return The index of the classes in this tree, built when it is first
+	 * requested and then extended as classes are added. It is discarded and
+	 * rebuilt when classes are removed or replaced.
+	 */
+	public ClassTreeIndex getIndex() {
+		synchronized (indexLock) {
+			if(index == null) {
+				index = new ClassTreeIndex(this);
+			}
+			return index;
+		}
+	}
+
+	/* the index if it has been built and contains the class. */
+	private ClassTreeIndex indexOf(ClassNode cn) {
+		synchronized (indexLock) {
+			return index != null && index.contains(cn) ? index : null;
+		}
+	}
+
 	/**
 	 * @param cn classnode to search out from
 	 * @return every class connected to the class in any way.
@@ -170,55 +230,23 @@ public class ClassTree extends FastDirectedGraph<ClassNode, InheritanceEdge> {
 		}
 	}
 
-	public ClassNode getCommonSuperType(String type1, String type2) {
-		ClassNode ccn = source.findClassNode(type1);
-		ClassNode dcn = source.findClassNode(type2);
-
-		if(ccn == null) {
-			ClassNode c;
-			try {
-				c = ClassHelper.create(type1);
-			} catch (IOException e) {
-				e.printStackTrace();
-				return null;
-			}
-
-			this.addVertex(ccn = c);
-		}
-
-		if(dcn == null) {
-			ClassNode c;
-			try {
-				c = ClassHelper.create(type2);
-			} catch (IOException e) {
-				e.printStackTrace();
-				return null;
+	/**
+	 * @return The resolver used to find common super types in this tree.
+	 */
+	public CommonSuperTypeResolver getCommonSuperTypeResolver() {
+		CommonSuperTypeResolver r = superTypeResolver;
+		if(r == null) {
+			synchronized (this) {
+				if((r = superTypeResolver) == null) {
+					superTypeResolver = r = new CommonSuperTypeResolver(this, source);
+				}
 			}
-			this.addVertex(dcn = c);
-		}
-
-		Collection<ClassNode> c = this.getAllParents(ccn);
-		Collection<ClassNode> d = this.getAllParents(dcn);
-
-		if(c.contains(dcn))
-			return dcn;
-
-		if(d.contains(ccn))
-			return ccn;
-
-		Stack<ClassNode> stack = new Stack<>();
-		List<ClassNode> cached = new ArrayList<>(c);
-		Collections.reverse(cached);
-		stack.addAll(cached);
-
-		while (!stack.isEmpty()) {
-			final ClassNode peek = stack.pop();
-
-			if (d.contains(peek))
-				return peek;
 		}
+		return r;
+	}
 
-		return null;
+	public ClassNode getCommonSuperType(String type1, String type2) {
+		return getCommonSuperTypeResolver().getCommonSuperType(type1, type2);
 	}
 
 	@Override
@@ -256,9 +284,44 @@ public class ClassTree extends FastDirectedGraph<ClassNode, InheritanceEdge> {
 			}
 		}
 
+		synchronized (indexLock) {
+			if(index != null && !index.append(cn, c -> containsVertex(c) ? iterateEdgeTargets(c) : null)) {
+				index = null;
+			}
+		}
 		return true;
 	}
 
+	private Iterable<ClassNode> iterateEdgeTargets(ClassNode cn) {
+		return () -> super.getEdges(cn).stream().map(e -> e.dst()).iterator();
+	}
+
+	@Override
+	public void removeVertex(ClassNode cn) {
+		synchronized (indexLock) {
+			if(index != null && index.contains(cn)) {
+				index = null;
+			}
+		}
+		super.removeVertex(cn);
+	}
+
+	@Override
+	public void replace(ClassNode old, ClassNode n) {
+		synchronized (indexLock) {
+			index = null;
+		}
+		super.replace(old, n);
+	}
+
+	@Override
+	public void clear() {
+		synchronized (indexLock) {
+			index = null;
+		}
+		super.clear();
+	}
+
 	@Override
 	public void addEdge(InheritanceEdge e) {
 		throw new UnsupportedOperationException();
@@ -0,0 +1,441 @@
+package org.mapleir.app.service;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.mapleir.asm.ClassNode;
+
+/**
+ * A frozen copy of a {@link ClassTree} in which every class has a dense id.
+ * Ids are given in topological order, so the ancestors of a class always
+ * have smaller ids than it does. The parents and children of the classes are
+ * kept in compressed arrays and the sets of ancestors and descendants of a
+ * class are computed as sorted arrays of ids on first use and then cached,
+ * so the cache takes space in proportion to the number of subtype pairs
+ * rather than to the square of the number of classes.
+ *
+ * <p> Classes can be appended when they are added to the tree, which is the
+ * common case of classes being loaded on demand. A newly added class never
+ * has children yet, so its ancestors are simply the union of those of its
+ * parents. Parents that aren't indexed yet are appended first. Any other
+ * change to the tree requires a new index.
+ */
+public class ClassTreeIndex {
+
+	private final Map<ClassNode, Integer> ids;
+	private ClassNode[] nodes;
+	private int[] levels;
+	private int size;
+	private int maxLevel;
+
+	/* parents of node i are parents[parentStart[i]..parentStart[i + 1]), in the
+	 * edge order of the tree. parentStart has size + 1 entries. */
+	private int[] parentStart;
+	private int[] parents;
+	/* children of the nodes that were in the tree when the index was built,
+	 * in the same layout. children of appended nodes or children that were
+	 * appended later are in extraChildren. */
+	private final int frozenSize;
+	private final int[] childStart;
+	private final int[] children;
+	private int[][] extraChildren;
+
+	/* the transitive closures as sorted ids, including the node itself.
+	 * descendants are appended to in place, so only the first
+	 * descendantCount[i] entries of descendants[i] are used. guarded by this. */
+	private int[][] ancestors;
+	private int[][] descendants;
+	private int[] descendantCount;
+
+	public ClassTreeIndex(ClassTree tree) {
+		int n = tree.size();
+		ids = new HashMap<>(n * 2);
+		nodes = new ClassNode[n];
+		levels = new int[n];
+
+		/* kahn's algorithm, parents first. */
+		Map<ClassNode, Integer> pending = new HashMap<>(n * 2);
+		Deque<ClassNode> ready = new ArrayDeque<>();
+		for(ClassNode cn : tree.vertices()) {
+			int count = tree.getEdges(cn).size();
+			if(count == 0) {
+				ready.add(cn);
+			} else {
+				pending.put(cn, count);
+			}
+		}
+
+		List<int[]> parentLists = new ArrayList<>(n);
+		int edgeCount = 0;
+		while(!ready.isEmpty()) {
+			ClassNode cn = ready.poll();
+			int id = size++;
+			ids.put(cn, id);
+			nodes[id] = cn;
+
+			int[] ps = new int[tree.getEdges(cn).size()];
+			int level = 0, i = 0;
+			for(ClassTree.InheritanceEdge e : tree.getEdges(cn)) {
+				int p = ids.get(e.dst());
+				ps[i++] = p;
+				level = Math.max(level, levels[p] + 1);
+			}
+			levels[id] = level;
+			maxLevel = Math.max(maxLevel, level);
+			parentLists.add(ps);
+			edgeCount += ps.length;
+
+			for(ClassTree.InheritanceEdge e : tree.getReverseEdges(cn)) {
+				ClassNode child = e.src();
+				int left = pending.get(child) - 1;
+				if(left == 0) {
+					pending.remove(child);
+					ready.add(child);
+				} else {
+					pending.put(child, left);
+				}
+			}
+		}
+		if(!pending.isEmpty()) {
+			throw new IllegalStateException("Cyclic class hierarchy: " + pending.keySet());
+		}
+
+		parentStart = new int[size + 1];
+		parents = new int[edgeCount];
+		int[] childCount = new int[size];
+		for(int id=0, k=0; id < size; id++) {
+			parentStart[id] = k;
+			for(int p : parentLists.get(id)) {
+				parents[k++] = p;
+				childCount[p]++;
+			}
+		}
+		parentStart[size] = edgeCount;
+
+		frozenSize = size;
+		childStart = new int[size + 1];
+		for(int id=0; id < size; id++) {
+			childStart[id + 1] = childStart[id] + childCount[id];
+		}
+		children = new int[edgeCount];
+		int[] fill = Arrays.copyOf(childStart, size);
+		for(int id=0; id < size; id++) {
+			for(int k=parentStart[id]; k < parentStart[id + 1]; k++) {
+				int p = parents[k];
+				children[fill[p]++] = id;
+			}
+		}
+
+		extraChildren = new int[size][];
+		ancestors = new int[size][];
+		descendants = new int[size][];
+		descendantCount = new int[size];
+	}
+
+	/**
+	 * Adds a class that was added to the tree after this index was built,
+	 * along with any of its ancestors that aren't indexed yet.
+	 *
+	 * @param cn The new class, which must not have any children.
+	 * @param supersOf Gives the parents of a class in tree edge order, or null
+	 * if the class isn't in the tree.
+	 * @return Whether the class could be added, which is not the case if one
+	 * of its ancestors isn't in the tree or the hierarchy is cyclic.
+	 */
+	public synchronized boolean append(ClassNode cn, Function<ClassNode, Iterable<ClassNode>> supersOf) {
+		return append(cn, supersOf, new HashSet<>());
+	}
+
+	private boolean append(ClassNode cn, Function<ClassNode, Iterable<ClassNode>> supersOf, Set<ClassNode> visiting) {
+		if(ids.containsKey(cn)) {
+			return true;
+		}
+		Iterable<ClassNode> supers = supersOf.apply(cn);
+		if(supers == null || !visiting.add(cn)) {
+			return false;
+		}
+		List<Integer> ps = new ArrayList<>();
+		for(ClassNode sup : supers) {
+			/* a missing parent has no indexed children, so it can be appended
+			 * as well. */
+			if(!append(sup, supersOf, visiting)) {
+				return false;
+			}
+			ps.add(ids.get(sup));
+		}
+
+		int id = size;
+		if(id == nodes.length) {
+			int cap = Math.max(16, nodes.length + (nodes.length >> 1));
+			nodes = Arrays.copyOf(nodes, cap);
+			levels = Arrays.copyOf(levels, cap);
+			parentStart = Arrays.copyOf(parentStart, cap + 1);
+			extraChildren = Arrays.copyOf(extraChildren, cap);
+			ancestors = Arrays.copyOf(ancestors, cap);
+			descendants = Arrays.copyOf(descendants, cap);
+			descendantCount = Arrays.copyOf(descendantCount, cap);
+		}
+
+		int start = parentStart[id];
+		if(start + ps.size() > parents.length) {
+			parents = Arrays.copyOf(parents, Math.max(start + ps.size(), parents.length + (parents.length >> 1)));
+		}
+		int level = 0;
+		for(int i=0; i < ps.size(); i++) {
+			int p = ps.get(i);
+			parents[start + i] = p;
+			level = Math.max(level, levels[p] + 1);
+			int[] extra = extraChildren[p];
+			extra = extra == null ? new int[1] : Arrays.copyOf(extra, extra.length + 1);
+			extra[extra.length - 1] = id;
+			extraChildren[p] = extra;
+		}
+		parentStart[id + 1] = start + ps.size();
+
+		nodes[id] = cn;
+		levels[id] = level;
+		maxLevel = Math.max(maxLevel, level);
+		ids.put(cn, id);
+		size++;
+
+		/* the new class is a descendant of all of its ancestors and has the
+		 * largest id, so it goes at the end of their sets. */
+		for(int a : ancestors(id)) {
+			int[] desc = descendants[a];
+			if(desc != null) {
+				int count = descendantCount[a];
+				if(count == desc.length) {
+					descendants[a] = desc = Arrays.copyOf(desc, count + (count >> 1) + 1);
+				}
+				desc[count] = id;
+				descendantCount[a] = count + 1;
+			}
+		}
+		return true;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized boolean contains(ClassNode cn) {
+		return ids.containsKey(cn);
+	}
+
+	/**
+	 * @return The id of the class or -1 if it isn't indexed.
+	 */
+	public synchronized int getId(ClassNode cn) {
+		Integer id = ids.get(cn);
+		return id == null ? -1 : id;
+	}
+
+	public synchronized ClassNode getNode(int id) {
+		return nodes[id];
+	}
+
+	/**
+	 * @return The length of the longest path from a root of the tree to the
+	 * class, i.e. 0 for the root and 1 more than the level of its deepest
+	 * parent otherwise.
+	 */
+	public synchronized int getLevel(ClassNode cn) {
+		return levels[id(cn)];
+	}
+
+	public synchronized int getMaxLevel() {
+		return maxLevel;
+	}
+
+	/**
+	 * @return The classes grouped by level, so that the parents of every
+	 * class are in earlier groups.
+	 */
+	public synchronized List<List<ClassNode>> getLevels() {
+		List<List<ClassNode>> res = new ArrayList<>(maxLevel + 1);
+		for(int i=0; i <= maxLevel; i++) {
+			res.add(new ArrayList<>());
+		}
+		for(int id=0; id < size; id++) {
+			res.get(levels[id]).add(nodes[id]);
+		}
+		return res;
+	}
+
+	/**
+	 * @return The direct super class and interfaces of the class.
+	 */
+	public synchronized List<ClassNode> getParents(ClassNode cn) {
+		int id = id(cn);
+		return toNodes(Arrays.copyOfRange(parents, parentStart[id], parentStart[id + 1]));
+	}
+
+	/**
+	 * @return The direct subclasses and implementations of the class.
+	 */
+	public synchronized List<ClassNode> getChildren(ClassNode cn) {
+		int id = id(cn);
+		int[] res = id < frozenSize ? Arrays.copyOfRange(children, childStart[id], childStart[id + 1]) : new int[0];
+		int[] extra = extraChildren[id];
+		if(extra != null) {
+			int len = res.length;
+			res = Arrays.copyOf(res, len + extra.length);
+			System.arraycopy(extra, 0, res, len, extra.length);
+		}
+		return toNodes(res);
+	}
+
+	/**
+	 * @return Whether {@code sup} is {@code sub} or one of its ancestors.
+	 */
+	public synchronized boolean isSubtype(ClassNode sub, ClassNode sup) {
+		Integer subId = ids.get(sub), supId = ids.get(sup);
+		if(subId == null || supId == null) {
+			return false;
+		}
+		/* ancestors have smaller ids. */
+		return supId <= subId && Arrays.binarySearch(ancestors(subId), supId) >= 0;
+	}
+
+	/**
+	 * @return The class and all of its ancestors, every class coming before
+	 * its ancestors.
+	 */
+	public synchronized List<ClassNode> getAncestors(ClassNode cn) {
+		int[] anc = ancestors(id(cn));
+		return toNodesDescending(anc, anc.length);
+	}
+
+	/**
+	 * @return The class and all of its descendants, every class coming before
+	 * its ancestors, so the class itself is last.
+	 */
+	public synchronized List<ClassNode> getDescendants(ClassNode cn) {
+		int id = id(cn);
+		return toNodesDescending(descendants(id), descendantCount[id]);
+	}
+
+	/**
+	 * @return The number of descendants of the class, including itself.
+	 */
+	public synchronized int getDescendantCount(ClassNode cn) {
+		int id = id(cn);
+		descendants(id);
+		return descendantCount[id];
+	}
+
+	private int id(ClassNode cn) {
+		Integer id = ids.get(cn);
+		if(id == null) {
+			throw new IllegalArgumentException(cn + " is not indexed");
+		}
+		return id;
+	}
+
+	private int[] ancestors(int id) {
+		int[] set = ancestors[id];
+		if(set == null) {
+			int start = parentStart[id], end = parentStart[id + 1];
+			if(start == end) {
+				set = new int[] { id };
+			} else if(end - start == 1) {
+				/* the common case of only a super class. */
+				int[] sup = ancestors(parents[start]);
+				set = Arrays.copyOf(sup, sup.length + 1);
+				set[sup.length] = id;
+			} else {
+				int[][] sets = new int[end - start][];
+				for(int k=start; k < end; k++) {
+					sets[k - start] = ancestors(parents[k]);
+				}
+				set = union(sets, null, id);
+			}
+			ancestors[id] = set;
+		}
+		return set;
+	}
+
+	/* the descendants of the node, of which only the first descendantCount[id]
+	 * entries are used. */
+	private int[] descendants(int id) {
+		int[] set = descendants[id];
+		if(set == null) {
+			int frozen = id < frozenSize ? childStart[id + 1] - childStart[id] : 0;
+			int[] extra = extraChildren[id];
+			int n = frozen + (extra == null ? 0 : extra.length);
+			int[][] sets = new int[n][];
+			int[] counts = new int[n];
+			for(int i=0; i < n; i++) {
+				int c = i < frozen ? children[childStart[id] + i] : extra[i - frozen];
+				sets[i] = descendants(c);
+				counts[i] = descendantCount[c];
+			}
+			set = union(sets, counts, id);
+			descendants[id] = set;
+			descendantCount[id] = set.length;
+		}
+		return set;
+	}
+
+	/* the sorted union of the first counts[i] (or all) ids of each of the
+	 * sorted sets and the given id, which is smaller or larger than all of
+	 * them. */
+	private int[] union(int[][] sets, int[] counts, int id) {
+		int total = 1;
+		for(int i=0; i < sets.length; i++) {
+			total += counts == null ? sets[i].length : counts[i];
+		}
+		int[] res = new int[total];
+		int n = 0;
+		res[n++] = id;
+		for(int i=0; i < sets.length; i++) {
+			int len = counts == null ? sets[i].length : counts[i];
+			System.arraycopy(sets[i], 0, res, n, len);
+			n += len;
+		}
+		Arrays.sort(res);
+		int k = 0;
+		for(int i=0; i < n; i++) {
+			if(k == 0 || res[i] != res[k - 1]) {
+				res[k++] = res[i];
+			}
+		}
+		return k == res.length ? res : Arrays.copyOf(res, k);
+	}
+
+	private List<ClassNode> toNodes(int[] arr) {
+		ClassNode[] res = new ClassNode[arr.length];
+		for(int i=0; i < arr.length; i++) {
+			res[i] = nodes[arr[i]];
+		}
+		return Collections.unmodifiableList(Arrays.asList(res));
+	}
+
+	private List<ClassNode> toNodesDescending(int[] set, int count) {
+		ClassNode[] res = new ClassNode[count];
+		for(int i=0; i < count; i++) {
+			res[i] = nodes[set[count - 1 - i]];
+		}
+		return new AbstractList<ClassNode>() {
+			@Override
+			public ClassNode get(int index) {
+				return res[index];
+			}
+
+			@Override
+			public int size() {
+				return res.length;
+			}
+		};
+	}
+}
@@ -0,0 +1,278 @@
+package org.mapleir.app.service;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+
+/**
+ * Finds the common super types of pairs of classes in a {@link ClassTree}.
+ * The ancestors of the classes and the subtype checks come from the tree's
+ * {@link ClassTreeIndex}, and the result of every pair that is asked for is
+ * cached.<br>
+ * This is safe to use from several threads at once. Lookups that have to
+ * resolve a class or read the tree lock the tree; repeated lookups don't.
+ *
+ * <p> Results are computed from the hierarchy at the time of the first lookup
+ * of a class. Classes may be added to the tree afterwards, but if the
+ * hierarchy of existing classes is changed the resolver must be
+ * {@link #clear() cleared}.
+ */
+public class CommonSuperTypeResolver {
+	private static final Logger LOGGER = Logger.getLogger(CommonSuperTypeResolver.class);
+
+	private final ClassTree tree;
+	private final ApplicationClassSource source;
+
+	/* classes by name, including those that were loaded from the runtime
+	 * because the source couldn't find them. */
+	private final ConcurrentHashMap<String, ClassNode> nodes;
+	private final Set<String> unresolvable;
+	private final ConcurrentHashMap<ClassNode, Ancestry> ancestries;
+	private final ConcurrentHashMap<Long, ClassNode> commonSuperClasses;
+	/* not every pair of types has a common super type when interfaces are
+	 * involved, so these are optional. */
+	private final ConcurrentHashMap<Long, Optional<ClassNode>> commonSuperTypes;
+
+	private final AtomicLong queries = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public CommonSuperTypeResolver(ClassTree tree, ApplicationClassSource source) {
+		this.tree = tree;
+		this.source = source;
+		nodes = new ConcurrentHashMap<>();
+		unresolvable = ConcurrentHashMap.newKeySet();
+		ancestries = new ConcurrentHashMap<>();
+		commonSuperClasses = new ConcurrentHashMap<>();
+		commonSuperTypes = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Finds the common super class of two types in the way that is expected of
+	 * {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}.
+	 *
+	 * @return The internal name of the common super class, or
+	 * {@code java/lang/Object} if either type can't be found.
+	 */
+	public String getCommonSuperClass(String type1, String type2) {
+		ClassNode ccn = resolve(type1);
+		ClassNode dcn = resolve(type2);
+		if(ccn == null || dcn == null) {
+			return "java/lang/Object";
+		}
+		return getCommonSuperClass(ccn, dcn).getName();
+	}
+
+	/**
+	 * @return The first class in the superclass chain of {@code ccn} that
+	 * {@code dcn} is assignable to, or the root class if either class is an
+	 * interface and neither is assignable to the other.
+	 */
+	public ClassNode getCommonSuperClass(ClassNode ccn, ClassNode dcn) {
+		queries.incrementAndGet();
+		Long key = pair(ccn, dcn);
+		ClassNode res = commonSuperClasses.get(key);
+		if(res == null) {
+			misses.incrementAndGet();
+			res = computeCommonSuperClass(ccn, dcn);
+			commonSuperClasses.putIfAbsent(key, res);
+		}
+		return res;
+	}
+
+	private ClassNode computeCommonSuperClass(ClassNode ccn, ClassNode dcn) {
+		Ancestry c = getAncestry(ccn);
+		Ancestry d = getAncestry(dcn);
+
+		if(d.contains(ccn))
+			return ccn;
+
+		if(c.contains(dcn))
+			return dcn;
+
+		if(Modifier.isInterface(ccn.node.access) || Modifier.isInterface(dcn.node.access)) {
+			// enums as well?
+			return tree.getRootNode();
+		}
+
+		for(ClassNode sup : c.chain) {
+			if(d.contains(sup)) {
+				return sup;
+			}
+		}
+		return tree.getRootNode();
+	}
+
+	/**
+	 * @return The common super type of the two types, or null if either type
+	 * can't be found.
+	 * @see #getCommonSuperType(ClassNode, ClassNode)
+	 */
+	public ClassNode getCommonSuperType(String type1, String type2) {
+		ClassNode ccn = resolve(type1);
+		ClassNode dcn = resolve(type2);
+		if(ccn == null || dcn == null) {
+			return null;
+		}
+		return getCommonSuperType(ccn, dcn);
+	}
+
+	/**
+	 * Finds a least common super type of two classes, including interfaces.
+	 * Of the common super types, the one that comes first in the ancestors
+	 * of {@code ccn}, as ordered by {@link ClassTreeIndex#getAncestors}, is
+	 * chosen. No class comes before one of its subtypes there.
+	 *
+	 * @return The common super type, or null if there is none.
+	 */
+	public ClassNode getCommonSuperType(ClassNode ccn, ClassNode dcn) {
+		queries.incrementAndGet();
+		Long key = pair(ccn, dcn);
+		Optional<ClassNode> res = commonSuperTypes.get(key);
+		if(res == null) {
+			misses.incrementAndGet();
+			res = Optional.ofNullable(computeCommonSuperType(ccn, dcn));
+			commonSuperTypes.putIfAbsent(key, res);
+		}
+		return res.orElse(null);
+	}
+
+	private ClassNode computeCommonSuperType(ClassNode ccn, ClassNode dcn) {
+		Ancestry d = getAncestry(dcn);
+		for(ClassNode sup : getAncestry(ccn).getAncestors()) {
+			if(d.contains(sup)) {
+				return sup;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Whether {@code sub} is {@code sup} or inherits from it.
+	 */
+	public boolean isSuperType(ClassNode sup, ClassNode sub) {
+		return getAncestry(sub).contains(sup);
+	}
+
+	/**
+	 * @return The number of common super type queries that have been made.
+	 */
+	public long getQueryCount() {
+		return queries.get();
+	}
+
+	/**
+	 * @return The number of queries that weren't answered from the cache.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Drops everything that has been computed so far.
+	 */
+	public void clear() {
+		synchronized (tree) {
+			nodes.clear();
+			unresolvable.clear();
+			ancestries.clear();
+			commonSuperClasses.clear();
+			commonSuperTypes.clear();
+		}
+	}
+
+	private static Long pair(ClassNode c, ClassNode d) {
+		return ((long) c.getNumericId() << 32) | (d.getNumericId() & 0xFFFFFFFFL);
+	}
+
+	private ClassNode resolve(String name) {
+		ClassNode cn = nodes.get(name);
+		if(cn != null || unresolvable.contains(name)) {
+			return cn;
+		}
+
+		synchronized (tree) {
+			cn = nodes.get(name);
+			if(cn != null) {
+				return cn;
+			}
+			cn = source.findClassNode(name);
+			if(cn == null) {
+				try {
+					cn = ClassHelper.create(name);
+				} catch (IOException | RuntimeException e) {
+					LOGGER.warn(String.format("Couldn't load %s: %s", name, e));
+				}
+				if(cn == null) {
+					unresolvable.add(name);
+					return null;
+				}
+				tree.addVertex(cn);
+			}
+			nodes.put(name, cn);
+			return cn;
+		}
+	}
+
+	private Ancestry getAncestry(ClassNode cn) {
+		Ancestry a = ancestries.get(cn);
+		if(a != null) {
+			return a;
+		}
+
+		synchronized (tree) {
+			a = ancestries.get(cn);
+			if(a == null) {
+				a = new Ancestry(cn);
+				ancestries.put(cn, a);
+			}
+			return a;
+		}
+	}
+
+	private class Ancestry {
+		final ClassNode cn;
+		/* cn and its super classes, ending with the root. */
+		final ClassNode[] chain;
+		/* false if the class or one of its parents couldn't be found. */
+		final boolean indexed;
+
+		/* must be called while holding the tree lock. */
+		Ancestry(ClassNode cn) {
+			this.cn = cn;
+			if(!tree.containsVertex(cn)) {
+				tree.addVertex(cn);
+			}
+
+			indexed = tree.containsVertex(cn) && tree.getIndex().contains(cn);
+			if(indexed) {
+				List<ClassNode> chain = new ArrayList<>();
+				for(ClassNode sup : tree.iterateInheritanceChain(cn)) {
+					chain.add(sup);
+				}
+				chain.add(tree.getRootNode());
+				this.chain = chain.toArray(new ClassNode[0]);
+			} else {
+				chain = new ClassNode[] { cn, tree.getRootNode() };
+			}
+		}
+
+		/* cn and all of its super types, every class before its ancestors. */
+		List<ClassNode> getAncestors() {
+			return indexed ? tree.getIndex().getAncestors(cn) : Collections.singletonList(cn);
+		}
+
+		boolean contains(ClassNode sup) {
+			return indexed ? tree.getIndex().isSubtype(cn, sup) : sup == cn;
+		}
+	}
+}
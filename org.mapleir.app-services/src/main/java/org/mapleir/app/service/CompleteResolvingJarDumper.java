@@ -1,6 +1,5 @@
 package org.mapleir.app.service;
 
-import org.mapleir.asm.ClassHelper;
 import org.objectweb.asm.ClassWriter;
 import org.mapleir.asm.ClassNode;
 import org.mapleir.asm.MethodNode;
@@ -12,8 +11,17 @@ import org.topdank.byteio.util.Debug;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Modifier;
-import java.util.Collection;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
@@ -21,20 +29,65 @@ import java.util.jar.JarOutputStream;
  * Dumps ClassNodes and JarResources back into a file on the local system.
  * Todo: make this extend CompleteJarDumper?
  *
+ * <p> With a parallelism greater than one, classes are written to byte arrays
+ * on a pool of that many threads while the calling thread streams the
+ * finished arrays into the jar in the order of the contents. At most
+ * {@code maxInFlight} classes are queued or held in memory at once. Either
+ * way the classes are serialised by {@link #writeClass(ClassNode)}, which is
+ * the method to override to change how they are written.
+ *
  * @author Bibl
  */
 public class CompleteResolvingJarDumper implements JarDumper {
+	/* methods with more instructions than this are reported when dumping. */
+	private static final int LARGE_METHOD_SIZE = 10000;
+	/* the number of slowest classes that are reported after dumping. */
+	private static final int SLOWEST_COUNT = 10;
 
 	private final JarContents<?> contents;
 	private final ApplicationClassSource source;
+	private final int parallelism;
+	private final int maxInFlight;
+	/* the slowest classes written in the current dump, slowest last. guarded by itself. */
+	private final PriorityQueue<ClassTiming> slowest;
+
 	/**
 	 * Creates a new JarDumper.
 	 *
 	 * @param contents Contents of jar.
 	 */
 	public CompleteResolvingJarDumper(JarContents<ClassNode> contents, ApplicationClassSource source) {
+		this(contents, source, 1);
+	}
+
+	/**
+	 * Creates a new JarDumper that writes classes on the given number of
+	 * threads, with up to four classes in flight per thread.
+	 *
+	 * @param contents Contents of jar.
+	 * @param parallelism Number of threads to write classes with.
+	 */
+	public CompleteResolvingJarDumper(JarContents<ClassNode> contents, ApplicationClassSource source, int parallelism) {
+		this(contents, source, parallelism, Math.max(1, parallelism) * 4);
+	}
+
+	/**
+	 * Creates a new JarDumper.
+	 *
+	 * @param contents Contents of jar.
+	 * @param parallelism Number of threads to write classes with.
+	 * @param maxInFlight Maximum number of classes that are being written or
+	 * are waiting to be put in the jar at any time.
+	 */
+	public CompleteResolvingJarDumper(JarContents<ClassNode> contents, ApplicationClassSource source, int parallelism, int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight: " + maxInFlight);
+		}
 		this.contents = contents;
 		this.source = source;
+		this.parallelism = parallelism;
+		this.maxInFlight = maxInFlight;
+		slowest = new PriorityQueue<>();
 	}
 
 	/**
@@ -47,23 +100,73 @@ public class CompleteResolvingJarDumper implements JarDumper {
 		if (file.exists())
 			file.delete();
 		file.createNewFile();
-		JarOutputStream jos = new JarOutputStream(new FileOutputStream(file));
+		synchronized (slowest) {
+			slowest.clear();
+		}
+		long start = System.nanoTime();
 		int classesDumped = 0;
 		int resourcesDumped = 0;
-		for (ClassNode cn : contents.getClassContents()) {
-			classesDumped += dumpClass(jos, cn.getName(), cn);
+		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(file))) {
+			if (parallelism <= 1) {
+				for (ClassNode cn : contents.getClassContents()) {
+					classesDumped += dumpClass(jos, cn.getName(), cn);
+				}
+			} else {
+				classesDumped = dumpClassesParallel(jos);
+			}
+			for (JarResource res : contents.getResourceContents()) {
+				resourcesDumped += dumpResource(jos, res.getName(), res.getData());
+			}
+		}
+		if(!Debug.debugging) {
+			System.out.println("Dumped " + classesDumped + " classes and " + resourcesDumped + " resources to " + file.getAbsolutePath()
+					+ " in " + ((System.nanoTime() - start) / 1000000L) + "ms");
+			for (ClassTiming t : getSlowestClasses()) {
+				System.out.println("  " + t);
+			}
+			CommonSuperTypeResolver resolver = source.getClassTree().getCommonSuperTypeResolver();
+			System.out.println("Common super class queries: " + resolver.getQueryCount() + ", computed: " + resolver.getMissCount());
+		}
+	}
+
+	private int dumpClassesParallel(JarOutputStream jos) throws IOException {
+		// the tree is built lazily, make sure it isn't built by the writers.
+		source.getClassTree();
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try {
+			Deque<PendingClass> window = new ArrayDeque<>();
+			int classesDumped = 0;
+			for (ClassNode cn : contents.getClassContents()) {
+				if (window.size() >= maxInFlight) {
+					classesDumped += writeNext(jos, window);
+				}
+				window.add(new PendingClass(cn, pool.submit(() -> writeClass(cn))));
+			}
+			while (!window.isEmpty()) {
+				classesDumped += writeNext(jos, window);
+			}
+			return classesDumped;
+		} finally {
+			pool.shutdownNow();
 		}
-		for (JarResource res : contents.getResourceContents()) {
-			resourcesDumped += dumpResource(jos, res.getName(), res.getData());
+	}
+
+	private int writeNext(JarOutputStream jos, Deque<PendingClass> window) throws IOException {
+		PendingClass p = window.poll();
+		try {
+			return writeClassEntry(jos, p.cn, p.bytes.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing " + p.cn.getName());
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to write " + p.cn.getName(), e.getCause());
 		}
-		if(!Debug.debugging)
-			System.out.println("Dumped " + classesDumped + " classes and " + resourcesDumped + " resources to " + file.getAbsolutePath());
-		
-		jos.close();
 	}
 
 	/**
-	 * Writes the {@link ClassNode} to the Jar.
+	 * Writes the {@link ClassNode} to the Jar. This is only called when
+	 * writing on a single thread, to change how classes are written in both
+	 * modes override {@link #writeClass(ClassNode)} instead.
 	 *
 	 * @param out The {@link JarOutputStream}.
 	 * @param cn The ClassNode.
@@ -73,35 +176,93 @@ public class CompleteResolvingJarDumper implements JarDumper {
 	 */
 	@Override
 	public int dumpClass(JarOutputStream out, String name, ClassNode cn) throws IOException {
+		return writeClassEntry(out, cn, writeClass(cn));
+	}
+
+	private int writeClassEntry(JarOutputStream out, ClassNode cn, byte[] bytes) throws IOException {
 		JarEntry entry = new JarEntry(cn.getName() + ".class");
 		out.putNextEntry(entry);
+		out.write(bytes);
+		return 1;
+	}
+
+	/**
+	 * Writes a class to a byte array, first computing its frames and falling
+	 * back to only computing the maximum stack and locals if that fails. If
+	 * that fails as well, the class is written with the frames and maximums
+	 * it already has. This may be called from several threads at once for
+	 * different classes.
+	 *
+	 * @param cn The class to write.
+	 * @return The class file, which is empty if the class couldn't be written
+	 * at all.
+	 */
+	protected byte[] writeClass(ClassNode cn) {
 		ClassTree tree = source.getClassTree();
-		
 
-		
+		int largeMethods = 0;
 		for(MethodNode m : cn.getMethods()) {
-			if(m.node.instructions.size() > 10000) {
+			if(m.node.instructions.size() > LARGE_METHOD_SIZE) {
 				System.out.println("large method: " + m + " @" + m.node.instructions.size());
+				largeMethods++;
 			}
 		}
 
+		long start = System.nanoTime();
+		byte[] bytes;
+		WriteMode mode = WriteMode.FRAMES;
 		try {
 			try {
 				ClassWriter writer = this.buildClassWriter(tree, ClassWriter.COMPUTE_FRAMES);
 				cn.node.accept(writer); // must use custom writer which overrides getCommonSuperclass
-				out.write(writer.toByteArray());
+				bytes = writer.toByteArray();
 			} catch (Exception e) {
+				mode = WriteMode.MAXS;
 				ClassWriter writer = this.buildClassWriter(tree, ClassWriter.COMPUTE_MAXS);
 				cn.node.accept(writer); // must use custom writer which overrides getCommonSuperclass
-				out.write(writer.toByteArray());
+				bytes = writer.toByteArray();
 				System.err.println("Failed to write " + cn.getName() + "! Writing with COMPUTE_MAXS, " +
 						"which may cause runtime abnormalities");
 			}
 		} catch (Exception e) {
-			System.err.println("Failed to write " + cn.getName() + "! Skipping class...");
+			try {
+				mode = WriteMode.NONE;
+				ClassWriter writer = new ClassWriter(0);
+				cn.node.accept(writer);
+				bytes = writer.toByteArray();
+				System.err.println("Failed to write " + cn.getName() + "! Writing it without computing frames or maxs...");
+			} catch (Exception e2) {
+				mode = WriteMode.EMPTY;
+				bytes = new byte[0];
+				System.err.println("Failed to write " + cn.getName() + "! Skipping class...");
+			}
 		}
 
-		return 1;
+		recordTiming(new ClassTiming(cn.getName(), System.nanoTime() - start, largeMethods, mode));
+		return bytes;
+	}
+
+	private void recordTiming(ClassTiming t) {
+		synchronized (slowest) {
+			slowest.add(t);
+			if (slowest.size() > SLOWEST_COUNT) {
+				slowest.poll();
+			}
+		}
+	}
+
+	/**
+	 * @return The classes that took the longest to write in the current
+	 * or last dump, slowest first.
+	 */
+	public List<ClassTiming> getSlowestClasses() {
+		List<ClassTiming> list;
+		synchronized (slowest) {
+			list = new ArrayList<>(slowest);
+		}
+		list.sort(null);
+		Collections.reverse(list);
+		return list;
 	}
 
 	public ClassWriter buildClassWriter(ClassTree tree, int flags) {
@@ -115,68 +276,7 @@ public class CompleteResolvingJarDumper implements JarDumper {
 			// with ClassNodes rather than Classes.
 			@Override
 			protected String getCommonSuperClass(String type1, String type2) {
-				ClassNode ccn = source.findClassNode(type1);
-				ClassNode dcn = source.findClassNode(type2);
-
-				if(ccn == null) {
-//		    		return "java/lang/Object";
-					ClassNode c;
-					try {
-						c = ClassHelper.create(type1);
-					} catch (IOException e) {
-						e.printStackTrace();
-						return "java/lang/Object";
-					}
-					if(c == null) {
-						return "java/lang/Object";
-					}
-
-					tree.addVertex(ccn = c);
-					// classTree.build(c);
-					// return getCommonSuperClass(type1, type2);
-				}
-
-				if(dcn == null) {
-
-//		    		return "java/lang/Object";
-					ClassNode c;
-					try {
-						c = ClassHelper.create(type2);
-					} catch (IOException e) {
-						e.printStackTrace();
-						return "java/lang/Object";
-					}
-					if(c == null) {
-						return "java/lang/Object";
-					}
-
-					tree.addVertex(dcn = c);
-					// classTree.build(c)
-					// return getCommonSuperClass(type1, type2);
-				}
-
-				Collection<ClassNode> c = tree.getAllParents(ccn);
-				Collection<ClassNode> d = tree.getAllParents(dcn);
-
-				if(c.contains(dcn))
-					return type1;
-
-				if(d.contains(ccn))
-					return type2;
-
-				if(Modifier.isInterface(ccn.node.access) || Modifier.isInterface(dcn.node.access)) {
-					// enums as well?
-					return "java/lang/Object";
-				} else {
-					do {
-						ClassNode nccn = source.findClassNode(ccn.node.superName);
-						if(nccn == null)
-							break;
-						ccn = nccn;
-						c = tree.getAllParents(ccn);
-					} while(!c.contains(dcn));
-					return ccn.getName();
-				}
+				return tree.getCommonSuperTypeResolver().getCommonSuperClass(type1, type2);
 			}
 		};
 	}
@@ -197,4 +297,105 @@ public class CompleteResolvingJarDumper implements JarDumper {
 		out.write(file);
 		return 1;
 	}
+
+	private static class PendingClass {
+		final ClassNode cn;
+		final Future<byte[]> bytes;
+
+		PendingClass(ClassNode cn, Future<byte[]> bytes) {
+			this.cn = cn;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * How a class was finally written by {@link #writeClass(ClassNode)}.
+	 */
+	public enum WriteMode {
+		/** With its frames computed. */
+		FRAMES("COMPUTE_FRAMES"),
+		/** With only its maximum stack and locals computed. */
+		MAXS("COMPUTE_MAXS"),
+		/** With the frames and maximums it already had. */
+		NONE("no frames or maxs computed"),
+		/** Not at all, the entry is empty. */
+		EMPTY("empty");
+
+		private final String description;
+
+		WriteMode(String description) {
+			this.description = description;
+		}
+
+		@Override
+		public String toString() {
+			return description;
+		}
+	}
+
+	/**
+	 * The time taken to write a single class.
+	 */
+	public static class ClassTiming implements Comparable<ClassTiming> {
+		private final String name;
+		private final long nanos;
+		private final int largeMethods;
+		private final WriteMode mode;
+
+		public ClassTiming(String name, long nanos, int largeMethods, WriteMode mode) {
+			this.name = name;
+			this.nanos = nanos;
+			this.largeMethods = largeMethods;
+			this.mode = mode;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return The number of methods in the class with more than 10000
+		 * instructions.
+		 */
+		public int getLargeMethods() {
+			return largeMethods;
+		}
+
+		/**
+		 * @return How the class was finally written.
+		 */
+		public WriteMode getWriteMode() {
+			return mode;
+		}
+
+		/**
+		 * @return Whether computing the frames failed and the class was
+		 * written in some other way.
+		 */
+		public boolean isFallback() {
+			return mode != WriteMode.FRAMES;
+		}
+
+		@Override
+		public int compareTo(ClassTiming o) {
+			return Long.compare(nanos, o.nanos);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(name).append(": ").append(nanos / 1000000L).append("ms");
+			if (largeMethods > 0) {
+				sb.append(", ").append(largeMethods).append(" large methods");
+			}
+			if (mode != WriteMode.FRAMES) {
+				sb.append(", ").append(mode);
+			}
+			return sb.toString();
+		}
+	}
 }
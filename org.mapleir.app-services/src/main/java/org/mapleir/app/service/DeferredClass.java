@@ -0,0 +1,99 @@
+package org.mapleir.app.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * A class in a {@link ClassSource} that hasn't been parsed yet, holding
+ * either its bytes or where to read them from.
+ */
+public abstract class DeferredClass {
+	/* the flags that classes are normally parsed with, see ClassHelper. */
+	public static final int FULL_FLAGS = ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG;
+	public static final int HEADER_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG;
+
+	/**
+	 * @return The class file.
+	 */
+	public abstract byte[] read() throws IOException;
+
+	/**
+	 * Creates the class with the code of its methods.
+	 */
+	public ClassNode readClass() throws IOException {
+		return ClassHelper.create(read(), FULL_FLAGS);
+	}
+
+	/**
+	 * Creates the class without the code of its methods.
+	 */
+	public ClassNode readHeader() throws IOException {
+		return ClassHelper.create(read(), HEADER_FLAGS);
+	}
+
+	/**
+	 * Reads the code of the methods of a class that was created by
+	 * {@link #readHeader()} into its existing methods, so that the class
+	 * keeps its identity.
+	 *
+	 * @param cn The class created from this.
+	 */
+	public void readCode(ClassNode cn) throws IOException {
+		org.objectweb.asm.tree.ClassNode full = new org.objectweb.asm.tree.ClassNode();
+		new ClassReader(read()).accept(full, FULL_FLAGS);
+
+		Map<String, MethodNode> bodies = new HashMap<>();
+		for(MethodNode m : full.methods) {
+			bodies.put(m.name + m.desc, m);
+		}
+		for(org.mapleir.asm.MethodNode m : cn.getMethods()) {
+			MethodNode body = bodies.get(m.getName() + m.getDesc());
+			if(body != null) {
+				m.node.instructions = body.instructions;
+				m.node.tryCatchBlocks = body.tryCatchBlocks;
+				m.node.maxStack = body.maxStack;
+				m.node.maxLocals = body.maxLocals;
+			}
+		}
+	}
+
+	/**
+	 * @return A class that keeps its bytes in memory.
+	 */
+	public static DeferredClass of(byte[] bytes) {
+		return new DeferredClass() {
+			@Override
+			public byte[] read() {
+				return bytes;
+			}
+		};
+	}
+
+	/**
+	 * @return A class that is read from the given entry of an open zip file
+	 * every time it is needed.
+	 */
+	public static DeferredClass of(ZipFile zip, String entryName) {
+		return new DeferredClass() {
+			@Override
+			public byte[] read() throws IOException {
+				ZipEntry entry = zip.getEntry(entryName);
+				if(entry == null) {
+					throw new IOException(entryName + " is missing from " + zip.getName());
+				}
+				try (InputStream in = zip.getInputStream(entry)) {
+					return in.readAllBytes();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,84 @@
+package org.mapleir.app.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.zip.ZipFile;
+
+import org.mapleir.app.service.ClassHeaderIndex.ClassHeader;
+import org.mapleir.asm.ClassNode;
+
+/**
+ * A library jar whose classes are created from a {@link ClassHeaderIndex}
+ * rather than parsed from the jar. Classes are created on first use without
+ * the code of their methods, which is read from the jar by
+ * {@link #loadCode(ClassNode)}.
+ */
+public class IndexedLibraryClassSource extends LibraryClassSource implements Closeable {
+
+	private final File jar;
+	private ZipFile zip;
+
+	public IndexedLibraryClassSource(ApplicationClassSource parent, File jar, ClassHeaderIndex index) {
+		super(parent, new HashMap<>());
+		this.jar = jar;
+		setTier(Tier.HEADER);
+		for(ClassHeader h : index.getHeaders()) {
+			addDeferred(h.getName(), new IndexedClass(h));
+		}
+	}
+
+	/**
+	 * Creates a source for the given jar, using the index of the jar from the
+	 * cache directory or building it if there is none.
+	 */
+	public static IndexedLibraryClassSource load(ApplicationClassSource parent, File jar, File cacheDir) throws IOException {
+		return new IndexedLibraryClassSource(parent, jar, ClassHeaderIndex.load(jar, cacheDir));
+	}
+
+	public File getJar() {
+		return jar;
+	}
+
+	private synchronized ZipFile getZip() throws IOException {
+		if(zip == null) {
+			zip = new ZipFile(jar);
+		}
+		return zip;
+	}
+
+	/**
+	 * Closes the jar if it was opened to load code.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(zip != null) {
+			zip.close();
+			zip = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return jar.getName();
+	}
+
+	private class IndexedClass extends DeferredClass {
+		private final ClassHeader header;
+
+		IndexedClass(ClassHeader header) {
+			this.header = header;
+		}
+
+		@Override
+		public byte[] read() throws IOException {
+			return DeferredClass.of(getZip(), header.getEntryName()).read();
+		}
+
+		@Override
+		public ClassNode readHeader() {
+			return header.toClassNode();
+		}
+	}
+}
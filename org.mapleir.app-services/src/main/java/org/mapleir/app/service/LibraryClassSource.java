@@ -1,11 +1,18 @@
 package org.mapleir.app.service;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.mapleir.asm.ClassHelper;
 import org.mapleir.asm.ClassNode;
+import org.objectweb.asm.ClassReader;
 
 public class LibraryClassSource extends ClassSource {
 
@@ -25,6 +32,35 @@ public class LibraryClassSource extends ClassSource {
 		this.parent = parent;
 	}
 	
+	/**
+	 * Creates a library of the classes in a jar, which are read into memory
+	 * but only parsed when they are first needed.
+	 *
+	 * @param parent The application.
+	 * @param jar The jar.
+	 * @param tier How much of each class to parse.
+	 * @return The library.
+	 */
+	public static LibraryClassSource deferred(ApplicationClassSource parent, File jar, Tier tier) throws IOException {
+		LibraryClassSource lib = new LibraryClassSource(parent);
+		lib.setTier(tier);
+		try (ZipFile zip = new ZipFile(jar)) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while(entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if(entry.getName().endsWith(".class")) {
+					byte[] bytes;
+					try (InputStream in = zip.getInputStream(entry)) {
+						bytes = in.readAllBytes();
+					}
+					/* only reads the constant pool offsets, not the class. */
+					lib.addDeferred(new ClassReader(bytes).getClassName(), DeferredClass.of(bytes));
+				}
+			}
+		}
+		return lib;
+	}
+	
 	/* public lookup method, polls parent first (which can
 	 * call it's children to look for the */
 	@Override
@@ -0,0 +1,216 @@
+package org.mapleir.app.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.mapleir.asm.ClassNode;
+
+/**
+ * A library of the classes in the module image of a JDK 9+ runtime, read
+ * through the {@code jrt:/} file system.<br>
+ * The packages of every module are indexed when the source is created, after
+ * which classes are loaded on first request with only their headers parsed.
+ * The code of their methods can be read later with
+ * {@link #loadCode(ClassNode)}. Classes that aren't in the image are
+ * remembered so that they are only looked for once.<br>
+ * The image of another installation is opened as a file system of its own,
+ * which is closed by {@link #close()}.
+ */
+public class ModularRuntimeClassSource extends LibraryClassSource implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(ModularRuntimeClassSource.class);
+
+	private final String description;
+	private final FileSystem fs;
+	/* whether the file system was opened by this source, the one of the
+	 * running runtime can't be closed. */
+	private final boolean ownsFileSystem;
+	/* internal package name -> package directories in the modules that
+	 * contain it. */
+	private final Map<String, List<Path>> packages;
+	private final Set<String> notContains;
+
+	/**
+	 * Creates a source for the runtime that is running this program.
+	 */
+	public ModularRuntimeClassSource(ApplicationClassSource parent) throws IOException {
+		this(parent, FileSystems.getFileSystem(URI.create("jrt:/")), false, "JRE " + System.getProperty("java.version"));
+	}
+
+	/**
+	 * Creates a source for the runtime installed at the given location, which
+	 * must be a JDK 9+ home directory.
+	 */
+	public ModularRuntimeClassSource(ApplicationClassSource parent, Path javaHome) throws IOException {
+		this(parent, FileSystems.newFileSystem(URI.create("jrt:/"), Collections.singletonMap("java.home", javaHome.toString())), true, "JRE " + javaHome);
+	}
+
+	private ModularRuntimeClassSource(ApplicationClassSource parent, FileSystem fs, boolean ownsFileSystem, String description) throws IOException {
+		super(parent, new ConcurrentHashMap<>());
+		this.description = description;
+		this.fs = fs;
+		this.ownsFileSystem = ownsFileSystem;
+		setTier(Tier.HEADER);
+		try {
+			packages = index(fs);
+		} catch(IOException e) {
+			close();
+			throw e;
+		}
+		notContains = ConcurrentHashMap.newKeySet();
+	}
+
+	/**
+	 * Closes the image if it was opened for another installation. Classes
+	 * and code that haven't been loaded yet can't be read afterwards.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(ownsFileSystem && fs.isOpen()) {
+			fs.close();
+		}
+	}
+
+	private static Map<String, List<Path>> index(FileSystem fs) throws IOException {
+		Map<String, List<Path>> packages = new HashMap<>();
+		/* /packages/<package>/<module> links each package to its modules. */
+		try (DirectoryStream<Path> pkgs = Files.newDirectoryStream(fs.getPath("/packages"))) {
+			for (Path pkg : pkgs) {
+				String pkgName = pkg.getFileName().toString();
+				String internalName = pkgName.replace('.', '/');
+				List<Path> dirs = new ArrayList<>(1);
+				try (DirectoryStream<Path> modules = Files.newDirectoryStream(pkg)) {
+					for (Path module : modules) {
+						dirs.add(fs.getPath("/modules", module.getFileName().toString(), internalName));
+					}
+				}
+				packages.put(internalName, dirs);
+			}
+		}
+		return packages;
+	}
+
+	/**
+	 * @return The number of packages in the image.
+	 */
+	public int getPackageCount() {
+		return packages.size();
+	}
+
+	@Override
+	public boolean contains(String name) {
+		if(super.contains(name)) {
+			return true;
+		} else if(name != null && !notContains.contains(name)) {
+			return __resolve(name) != null;
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	protected LocateableClassNode findClass0(String name) {
+		/* check the cache first. */
+		LocateableClassNode node = super.findClass0(name);
+		if(node != null) {
+			return node;
+		}
+
+		return __resolve(name);
+	}
+
+	/* loads a class from the image, parses are serialised so that a class is
+	 * never loaded twice. */
+	private synchronized LocateableClassNode __resolve(String name) {
+		ClassNode cn = nodeMap.get(name);
+		if(cn != null) {
+			return new LocateableClassNode(this, cn, true);
+		} else if(notContains.contains(name)) {
+			return null;
+		}
+
+		if(name.startsWith("[")) {
+			/* array types resolve to Object, see InstalledRuntimeClassSource. */
+			LocateableClassNode node = findClass0("java/lang/Object");
+			nodeMap.put(name, node.node);
+			return node;
+		}
+
+		Path file = locate(name);
+		if(file == null) {
+			notContains.add(name);
+			return null;
+		}
+
+		DeferredClass cls = new DeferredClass() {
+			@Override
+			public byte[] read() throws IOException {
+				return Files.readAllBytes(file);
+			}
+		};
+		try {
+			cn = cls.readHeader();
+		} catch(IOException e) {
+			LOGGER.error(String.format("Could not read %s from %s", name, file), e);
+			notContains.add(name);
+			return null;
+		}
+		nodeMap.put(cn.getName(), cn);
+		addHeaderOnly(cn, cls);
+
+		ClassTree tree = parent._getClassTree();
+		if(tree == null) {
+			if(!cn.getName().equals("java/lang/Object")) {
+				LOGGER.error(String.format("Tried to load %s before initialisation", cn));
+				throw new IllegalStateException("Only Object may be loaded during tree initialisation.");
+			}
+		} else {
+			if(!tree.containsVertex(cn)) {
+				tree.addVertex(cn);
+			}
+		}
+
+		return new LocateableClassNode(this, cn, true);
+	}
+
+	/* the file of the class in the image or null if there is none. */
+	private Path locate(String name) {
+		int i = name.lastIndexOf('/');
+		List<Path> dirs = packages.get(i == -1 ? "" : name.substring(0, i));
+		if(dirs == null) {
+			return null;
+		}
+
+		String fileName = name.substring(i + 1) + ".class";
+		for(Path dir : dirs) {
+			Path file = dir.resolve(fileName);
+			if(Files.exists(file)) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean isIterable() {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
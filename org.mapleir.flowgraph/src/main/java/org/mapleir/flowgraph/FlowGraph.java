@@ -17,15 +17,22 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 	protected final Set<N> entries;
 	
 	protected final BitSetIndexer<N> indexer;
-	protected final Map<Integer, N> indexMap;
+	/* the vertices by their numeric id, which graphs hand out densely. */
+	protected Object[] indexMap;
 	protected final BitSet indexedSet;
+
+	/**
+	 * Incremented whenever a vertex or an edge is added to or removed from
+	 * this graph.
+	 */
+	private int structureVersion;
 	
 	public FlowGraph() {
 		ranges = new ArrayList<>();
 		entries = new HashSet<>();
 
 		indexer = new FastGraphVertexBitSetIndexer();
-		indexMap = new HashMap<>();
+		indexMap = new Object[16];
 		indexedSet = new BitSet();
 	}
 	
@@ -36,7 +43,7 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 		entries = new HashSet<>(g.entries);
 
 		indexer = g.indexer;
-		indexMap = new HashMap<>(g.indexMap);
+		indexMap = g.indexMap.clone();
 		indexedSet = g.indexedSet;
 	}
 	
@@ -44,6 +51,14 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 		return entries;
 	}
 
+	/**
+	 * @return A counter that changes whenever the vertices or edges of this
+	 * graph change, for invalidating results that depend on its structure.
+	 */
+	public int getStructureVersion() {
+		return structureVersion;
+	}
+
 	/**
 	 * Use this if you need a topoorder. There is *NO* guarantee what order vertices() will return the blocks in
 	 */
@@ -72,32 +87,46 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 	@Override
 	public void clear() {
 		super.clear();
-		indexMap.clear();
+		Arrays.fill(indexMap, null);
 		indexedSet.clear();
 		topoorderCache = null;
+		structureVersion++;
 	}
 	
 	@Override
 	public boolean addVertex(N v) {
 		boolean ret = super.addVertex(v);
 		
+		index(v);
+		if(ret) {
+			structureVersion++;
+		}
+		return ret;
+	}
+
+	private void index(N v) {
 		int index = v.getNumericId();
-		assert(!indexMap.containsKey(index) || indexMap.get(index) == v); // ensure no id collisions
-		indexMap.put(index, v);
+		if(index >= indexMap.length) {
+			indexMap = Arrays.copyOf(indexMap, Math.max(index + 1, indexMap.length * 2));
+		}
+		assert(indexMap[index] == null || indexMap[index] == v); // ensure no id collisions
+		indexMap[index] = v;
 		indexedSet.set(index, true);
-		return ret;
 	}
 
 	@Override
 	public void addEdge(E e) {
 		super.addEdge(e);
 
-		N src = e.src();
-		int index = src.getNumericId();
-		assert(!indexMap.containsKey(index) || indexMap.get(index) == src); // ensure no id collisions
-		indexMap.put(index, src);
-		indexedSet.set(index, true);
+		index(e.src());
 		topoorderCache = null;
+		structureVersion++;
+	}
+
+	@Override
+	public void removeEdge(E e) {
+		super.removeEdge(e);
+		structureVersion++;
 	}
 	
 	@Override
@@ -127,8 +156,11 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 		super.removeVertex(v);
 
 		int index = v.getNumericId();
-		indexMap.remove(index);
+		if(index < indexMap.length) {
+			indexMap[index] = null;
+		}
 		indexedSet.set(index, false);
+		structureVersion++;
 	}
 
 	// this is some pretty bad code duplication but it's not too big of a deal.
@@ -178,10 +210,10 @@ public abstract class FlowGraph<N extends FastGraphVertex, E extends FlowEdge<N>
 			return basicBlock.getNumericId();
 		}
 
-		@Override
+		@Override @SuppressWarnings("unchecked")
 		public N get(int index) {
 			// really, we don't want to be using this since it pretty much defeats the point of the whole bitset scheme.
-			return indexMap.get(index);
+			return index < indexMap.length ? (N) indexMap[index] : null;
 		}
 
 		@Override
@@ -685,7 +685,7 @@ public class TypeUtils {
 			return true;
 		}
 		
-		return tree.getAllParents(src).contains(dst);
+		return tree.isSubtype(src, dst);
 	}
 	
 	public static boolean isRefLikeType(Type t) {
@@ -50,14 +50,33 @@ public class BoissinotDestructor {
 	private final BasicBlock entry;
 
 	private final DominanceLivenessAnalyser resolver;
-	private final NullPermeableHashMap<Local, LinkedHashSet<Local>> values;
 	private final SimpleDfs<BasicBlock> dom_dfs;
 	private final SSADefUseMap defuse;
 
-	private final Map<Local, Local> equalAncIn;
-	private final Map<Local, Local> equalAncOut;
-
-	private final Map<Local, CongruenceClass> congruenceClasses;
+	/* the locals defined in the graph are numbered by the order of their
+	 * definitions in a pre order walk of the dominator tree, so that sorting
+	 * them by number sorts them in dominance order. the state of the
+	 * coalescing is kept in arrays indexed by these numbers, with -1 for
+	 * none. */
+	private int[] numbers; // by pool id
+	private Local[] byNumber;
+	private BasicBlock[] defBlock;
+	private int[] defIndex;
+	/* pre order and topological order times of the def blocks in the dominator
+	 * tree, a dominates b iff domPre[a] <= domPre[b] && domTopo[a] <= domTopo[b] */
+	private int[] domPre;
+	private int[] domTopo;
+
+	/* values[l] is the first local of the value class of l. the members of a
+	 * class are linked through valueNext in the order they were added. */
+	private int[] values;
+	private int[] valueNext;
+	private int[] valueTail;
+
+	private int[] equalAncIn;
+	private int[] equalAncOut;
+
+	private CongruenceClass[] congruenceClasses;
 	private final Map<Local, Local> remap;
 
 	private BoissinotDestructor(ControlFlowGraph cfg) {
@@ -69,14 +88,6 @@ public class BoissinotDestructor {
 		// if ((flags & 2) != 0)
 		// DO_SHARE_COALESCE = true;
 		
-		values = new NullPermeableHashMap<>(local -> {
-			LinkedHashSet<Local> vc = new LinkedHashSet<>();
-			vc.add(local);
-			return vc;
-		});
-		congruenceClasses = new HashMap<>();
-		equalAncIn = new HashMap<>();
-		equalAncOut = new HashMap<>();
 		remap = new HashMap<>();
 
 		// 1. Insert copies to enter CSSA.
@@ -93,6 +104,7 @@ public class BoissinotDestructor {
 		defuse = createDuChains();
 		// this is bad.
 		resolver.setDefuse(defuse);
+		numberLocals();
 
 		computeValueInterference();
 
@@ -262,6 +274,73 @@ public class BoissinotDestructor {
 		return defuse;
 	}
 
+	private void numberLocals() {
+		int maxId = -1;
+		for (Local l : defuse.defs.keySet())
+			maxId = Math.max(maxId, l.getPoolId());
+		numbers = new int[maxId + 1];
+		Arrays.fill(numbers, -1);
+
+		int n = defuse.defs.size();
+		byNumber = new Local[n];
+		defBlock = new BasicBlock[n];
+		defIndex = new int[n];
+		domPre = new int[n];
+		domTopo = new int[n];
+
+		int maxBlockId = 0;
+		for (BasicBlock b : cfg.vertices())
+			maxBlockId = Math.max(maxBlockId, b.getNumericId());
+		int[] blockTopo = new int[maxBlockId + 1];
+		List<BasicBlock> topoorder = dom_dfs.getTopoOrder();
+		for (int i = 0; i < topoorder.size(); i++)
+			blockTopo[topoorder.get(i).getNumericId()] = i;
+
+		int count = 0;
+		List<BasicBlock> preorder = dom_dfs.getPreOrder();
+		for (int i = 0; i < preorder.size(); i++) {
+			BasicBlock b = preorder.get(i);
+			for (Stmt stmt : b) {
+				if (stmt instanceof ParallelCopyVarStmt) {
+					for (CopyPair pair : ((ParallelCopyVarStmt) stmt).pairs)
+						count = number(pair.targ, count, b, i, blockTopo);
+				} else if (stmt instanceof AbstractCopyStmt) {
+					count = number(((AbstractCopyStmt) stmt).getVariable().getLocal(), count, b, i, blockTopo);
+				}
+			}
+		}
+
+		values = newNumberArray(n);
+		valueNext = newNumberArray(n);
+		valueTail = newNumberArray(n);
+		equalAncIn = newNumberArray(n);
+		equalAncOut = newNumberArray(n);
+		congruenceClasses = new CongruenceClass[n];
+	}
+
+	private int number(Local l, int count, BasicBlock b, int pre, int[] blockTopo) {
+		int id = l.getPoolId();
+		if (numbers[id] != -1)
+			return count;
+		numbers[id] = count;
+		byNumber[count] = l;
+		defBlock[count] = b;
+		defIndex[count] = defuse.defIndex.get(l);
+		domPre[count] = pre;
+		domTopo[count] = blockTopo[b.getNumericId()];
+		return count + 1;
+	}
+
+	private static int[] newNumberArray(int n) {
+		int[] arr = new int[n];
+		Arrays.fill(arr, -1);
+		return arr;
+	}
+
+	private int number(Local l) {
+		return numbers[l.getPoolId()];
+	}
+
 	private void computeValueInterference() {
 		List<BasicBlock> topoorder = dom_dfs.getTopoOrder();
 		assert (topoorder.size() >= cfg.vertices().size());
@@ -272,30 +351,43 @@ public class BoissinotDestructor {
 				if (opcode == Opcode.LOCAL_STORE) {
 					CopyVarStmt copy = (CopyVarStmt) stmt;
 					Expr e = copy.getExpression();
-					Local b = copy.getVariable().getLocal();
+					int b = number(copy.getVariable().getLocal());
 
 					// Expression has to be a VarExpr
 					if (!copy.isSynthetic() && e.getOpcode() == Opcode.LOCAL_LOAD) {
-						LinkedHashSet<Local> vc = values.get(((VarExpr) e).getLocal());
-						vc.add(b);
-						values.put(b, vc);
+						addValue(getValue(number(((VarExpr) e).getLocal())), b);
 					} else {
-						values.getNonNull(b);
+						getValue(b);
 					}
 				} else if (opcode == Opcode.PHI_STORE) {
 					CopyPhiStmt copy = (CopyPhiStmt) stmt;
-					values.getNonNull(copy.getVariable().getLocal());
+					getValue(number(copy.getVariable().getLocal()));
 				} else if (opcode == ParallelCopyVarStmt.PARALLEL_STORE) {
 					ParallelCopyVarStmt copy = (ParallelCopyVarStmt) stmt;
 					for (CopyPair p : copy.pairs) {
-						LinkedHashSet<Local> valueClass = values.getNonNull(p.source);
-						valueClass.add(p.targ);
-						values.put(p.targ, valueClass);
+						addValue(getValue(number(p.source)), number(p.targ));
 					}
 				}
 			}
 		}
 	}
+
+	// returns the value class of l, which is created if l doesn't have one
+	private int getValue(int l) {
+		if (values[l] == -1) {
+			values[l] = l;
+			valueTail[l] = l;
+		}
+		return values[l];
+	}
+
+	private void addValue(int vc, int l) {
+		if (values[l] == vc)
+			return;
+		values[l] = vc;
+		valueNext[valueTail[vc]] = l;
+		valueTail[vc] = l;
+	}
 	
 	// Initialize ccs based on phis and drop phi statements
 	private void coalescePhis() {
@@ -309,15 +401,14 @@ public class BoissinotDestructor {
 			// therefore we can coalesce them all together and drop phis. with this, we leave cssa.
 			PhiExpr phi = e.getValue().getExpression();
 
-			CongruenceClass pcc = new CongruenceClass();
-			pcc.add(l);
-			congruenceClasses.put(l, pcc);
+			CongruenceClass pcc = new CongruenceClass(number(l));
+			congruenceClasses[number(l)] = pcc;
 
 			for (Expr ex : phi.getArguments().values()) {
 				VarExpr v = (VarExpr) ex;
-				Local argL = v.getLocal();
+				int argL = number(v.getLocal());
 				pcc.add(argL);
-				congruenceClasses.put(argL, pcc);
+				congruenceClasses[argL] = pcc;
 			}
 
 			// is b is null, this phi copy has block equal to `null`, i.e. it has already
@@ -354,12 +445,12 @@ public class BoissinotDestructor {
 						Local lhs = copy.getVariable().getLocal();
 						Local rhs = ((VarExpr) copy.getExpression()).getLocal();
 						if (!isReservedRegister((VersionedLocal) rhs)) {
-							if (tryCoalesceCopyValue(lhs, rhs)) {
+							if (tryCoalesceCopyValue(number(lhs), number(rhs))) {
 //								 System.out.println("COPYKILL(1) " + lhs + " == " + rhs);
 								it.remove();
 							}
 
-							if (tryCoalesceCopySharing(lhs, rhs)) {
+							if (tryCoalesceCopySharing(number(lhs), number(rhs))) {
 //								 System.out.println("SHAREKILL(1) " + lhs + " == " + rhs);
 								it.remove();
 							}
@@ -374,12 +465,12 @@ public class BoissinotDestructor {
 						Local lhs = pair.targ, rhs = pair.source;
 						
 						if(!isReservedRegister((VersionedLocal) rhs)) {
-							if (tryCoalesceCopyValue(lhs, rhs)) {
+							if (tryCoalesceCopyValue(number(lhs), number(rhs))) {
 								// System.out.println("COPYKILL(2) " + lhs + " == " + rhs);
 								pairIter.remove();
 							}
 
-							if (tryCoalesceCopySharing(lhs, rhs)) {
+							if (tryCoalesceCopySharing(number(lhs), number(rhs))) {
 								// System.out.println("SHAREKILL(2) " + lhs + " == " + rhs);
 								pairIter.remove();
 							}
@@ -397,53 +488,42 @@ public class BoissinotDestructor {
 	}
 
 	// Process the copy a = b. Returns true if a and b can be coalesced via value.
-	private boolean tryCoalesceCopyValue(Local a, Local b) {
-		// System.out.println("Enter COPY");
+	private boolean tryCoalesceCopyValue(int a, int b) {
 		CongruenceClass conClassA = getCongruenceClass(a);
 		CongruenceClass conClassB = getCongruenceClass(b);
 
-		// System.out.println(" A: " + conClassA);
-		// System.out.println(" B: " + conClassB);
-
-		// System.out.println(" same=" + (conClassA == conClassB));
 		if (conClassA == conClassB)
 			return true;
 
-		if (conClassA.size() == 1 && conClassB.size() == 1) {
-			boolean r = checkInterfereSingle(conClassA, conClassB);
-			// System.out.println(" single=" + r);
-			return r;
+		if (conClassA.size == 1 && conClassB.size == 1) {
+			return checkInterfereSingle(conClassA, conClassB);
 		}
 
-		boolean r2 = checkInterfere(conClassA, conClassB);
-		// System.out.println(" both=" + r2);
-		if (r2) {
+		if (checkInterfere(conClassA, conClassB)) {
 			return false;
 		}
 
 		// merge congruence classes
 		merge(conClassA, conClassB);
-		// System.out.println("Exit COPY");
 		return true;
 	}
 
-	private CongruenceClass getCongruenceClass(Local l) {
-		if (congruenceClasses.containsKey(l)) {
-			return congruenceClasses.get(l);
+	private CongruenceClass getCongruenceClass(int l) {
+		CongruenceClass cc = congruenceClasses[l];
+		if (cc == null) {
+			cc = new CongruenceClass(l);
+			congruenceClasses[l] = cc;
 		}
-		CongruenceClass cc = new CongruenceClass();
-		cc.add(l);
-		congruenceClasses.put(l, cc);
 		return cc;
 	}
 
 	// Process the copy a = b. Returns true of a and b can be coalesced via sharing.
-	private boolean tryCoalesceCopySharing(Local a, Local b) {
+	private boolean tryCoalesceCopySharing(int a, int b) {
 		// if (!DO_SHARE_COALESCE)
 		// return false;
 		CongruenceClass pccX = getCongruenceClass(a);
 		CongruenceClass pccY = getCongruenceClass(b);
-		for (Local c : values.get(a)) {
+		for (int c = values[a]; c != -1; c = valueNext[c]) {
 			if (c == b || c == a || !checkPreDomOrder(c, a) || !intersect(a, c))
 				continue;
 			CongruenceClass pccZ = getCongruenceClass(c);
@@ -463,14 +543,16 @@ public class BoissinotDestructor {
 	}
 
 	// if they are in the same pcvs they will have the same index.
-	private boolean checkPreDomOrder(Local x, Local y) {
-		return defuse.defIndex.get(x) < defuse.defIndex.get(y);
+	private boolean checkPreDomOrder(int x, int y) {
+		return defIndex[x] < defIndex[y];
 	}
 
 	private void remapLocals() {
 		// ok NOW we remap to avoid that double remap issue
-		for (Entry<Local, CongruenceClass> e : congruenceClasses.entrySet()) {
-			remap.put(e.getKey(), e.getValue().first());
+		for (int l = 0; l < congruenceClasses.length; l++) {
+			CongruenceClass cc = congruenceClasses[l];
+			if (cc != null)
+				remap.put(byNumber[l], byNumber[cc.first()]);
 		}
 	}
 
@@ -529,164 +611,144 @@ public class BoissinotDestructor {
 	}
 
 	private boolean checkInterfereSingle(CongruenceClass red, CongruenceClass blue) {
-		Local a = red.first();
-		Local b = blue.first();
+		int a = red.first();
+		int b = blue.first();
 		// we want a > b in dom order (b is parent)
 		if (checkPreDomOrder(a, b)) {
-			Local c = a;
+			int c = a;
 			a = b;
 			b = c;
 		}
 
-		// System.out.println(" a,b=" + a + ", " + b);
-		// if (!DO_VALUE_INTERFERENCE) {
-		// boolean r1 = intersect(a, b);
-		// System.out.println(" intersect=" + r1);
-		// return r1;
-		// }
-		// System.out.println(" s valA,valB: " + values.getNonNull(a) + ", " +
-		// values.getNonNull(b));
-
-		if (intersect(a, b) && values.getNonNull(a) != values.getNonNull(b)) {
+		if (intersect(a, b) && getValue(a) != getValue(b)) {
 			return true;
 		} else {
-			equalAncIn.put(a, b);
+			equalAncIn[a] = b;
 			red.add(b);
-			congruenceClasses.put(b, red);
+			congruenceClasses[b] = red;
 			return false;
 		}
 	}
 
 	// returns true if a's def dominates b's def
-	private boolean dominates(Local a, Local b) {
-		BasicBlock defA = defuse.defs.get(a);
-		BasicBlock defB = defuse.defs.get(b);
-		if (defA != defB) {
+	private boolean dominates(int a, int b) {
+		if (defBlock[a] != defBlock[b]) {
 			// typical case (between blocks)
-			return resolver.domc.getDominates(defA).contains(defB);
+			return domPre[a] <= domPre[b] && domTopo[a] <= domTopo[b];
 		} else {
 			// special case (same basic block, rely on statement ordering within block)
 			return checkPreDomOrder(a, b);
 		}
 	}
 
+	// the linear merge of the two classes in dominance order from the paper,
+	// with an explicit stack for the walk down the dominator tree.
 	private boolean checkInterfere(CongruenceClass red, CongruenceClass blue) {
-		// System.out.println("Enter interfere: " + red + " vs " + blue);
-		Stack<Local> dom = new Stack<>(); // dominator tree traversal stack
-		Stack<Integer> domClasses = new Stack<>(); // 0=red, 1=blue
+		int[] dom = new int[red.size + blue.size]; // dominator tree traversal stack
+		boolean[] domIsBlue = new boolean[dom.length];
+		int sp = 0;
 		int nr = 0, nb = 0; // from the paper
-		Local ir = red.first(), ib = blue.first(); // iteration pointers
-		Local lr = red.last(), lb = blue.last(); // end sentinels
-		boolean redHasNext = true, blueHasNext = true;
-		equalAncOut.put(ir, null); // these have no parents so we have to manually init them
-		equalAncOut.put(ib, null);
+		int ir = 0, ib = 0; // iteration pointers
+		equalAncOut[red.first()] = -1; // these have no parents so we have to manually init them
+		equalAncOut[blue.first()] = -1;
 		do {
-			// System.out.println("\n ir, ib, lr, lb: " + ir + " " + ib + " " + lr + " " + lb);
-			// System.out.println(" dom: " + dom);
-			Local current;
-			int currentClass;
-			if (!blueHasNext || (redHasNext && checkPreDomOrder(ir, ib))) {
+			int current;
+			boolean currentIsBlue;
+			if (ib == blue.size || (ir < red.size && checkPreDomOrder(red.members[ir], blue.members[ib]))) {
 				// current = red[ir++] (Red case)
-				current = ir;
-				currentClass = 0;
+				current = red.members[ir++];
+				currentIsBlue = false;
 				nr++;
-				if (redHasNext = ir != lr)
-					ir = red.higher(ir);
 			} else {
 				// current = blue[ib++] (Blue case)
-				current = ib;
-				currentClass = 1;
+				current = blue.members[ib++];
+				currentIsBlue = true;
 				nb++;
-				if (blueHasNext = ib != lb)
-					ib = blue.higher(ib);
 			}
 
-			while (!dom.isEmpty() && !dominates(dom.peek(), current)) {
-				if (domClasses.peek() == 0)
-					nr--;
-				else if (domClasses.peek() == 1)
+			while (sp > 0 && !dominates(dom[sp - 1], current)) {
+				sp--;
+				if (domIsBlue[sp])
 					nb--;
 				else
-					assert false;
-				dom.pop();
-				domClasses.pop();
+					nr--;
 			}
-			if (!dom.isEmpty() && interference(current, dom.peek(), currentClass == domClasses.peek())) {
+			if (sp > 0 && interference(current, dom[sp - 1], currentIsBlue == domIsBlue[sp - 1])) {
 				return true;
 			}
-			dom.push(current);
-			domClasses.push(currentClass);
-		} while ((redHasNext && nb > 0) || (blueHasNext && nr > 0) || (redHasNext && blueHasNext));
+			dom[sp] = current;
+			domIsBlue[sp++] = currentIsBlue;
+		} while ((ir < red.size && nb > 0) || (ib < blue.size && nr > 0) || (ir < red.size && ib < blue.size));
 
 		return false;
 	}
 
-	private boolean interference(Local a, Local b, boolean sameConClass) {
-		// System.out.println("Check interference: " + a + " " + b + " " + sameConClass);
-		equalAncOut.put(a, null);
+	private boolean interference(int a, int b, boolean sameConClass) {
+		equalAncOut[a] = -1;
 		if (sameConClass) {
-			b = equalAncOut.get(b);
+			b = equalAncOut[b];
 		}
-		if (b == null) {
+		if (b == -1) {
 			return false;
 		}
 		if (dominates(a, b))
 			throw new IllegalArgumentException("b should dom a");
 
-		Local tmp = b;
-		while (tmp != null && !intersect(a, tmp)) {
-			tmp = equalAncIn.get(tmp);
+		int tmp = b;
+		while (tmp != -1 && !intersect(a, tmp)) {
+			tmp = equalAncIn[tmp];
 		}
-		if (values.getNonNull(a) != values.getNonNull(b)) {
+		if (getValue(a) != getValue(b)) {
 			// chain_intersect
-			return tmp != null;
+			return tmp != -1;
 		} else {
 			// update_equal_anc_out
-			equalAncOut.put(a, tmp);
+			equalAncOut[a] = tmp;
 			return false;
 		}
 	}
 
-	private boolean intersect(Local a, Local b) {
+	private boolean intersect(int a, int b) {
 		if (a == b) {
-			for (Entry<Local, CongruenceClass> e : congruenceClasses.entrySet()) {
-				System.err.println(e.getKey() + " in " + e.getValue());
+			for (int l = 0; l < congruenceClasses.length; l++) {
+				if (congruenceClasses[l] != null)
+					System.err.println(byNumber[l] + " in " + congruenceClasses[l]);
 			}
-			throw new IllegalArgumentException("me too thanks: " + a);
+			throw new IllegalArgumentException("me too thanks: " + byNumber[a]);
 		}
 		
 		if (dominates(a, b))
 			throw new IllegalArgumentException("b should dom a");
 
-		BasicBlock defA = defuse.defs.get(a);
+		BasicBlock defA = defBlock[a];
+		Local lb = byNumber[b];
 		// if it's liveOut it definitely intersects
-		if (resolver.isLiveOut(defA, b))
+		if (resolver.isLiveOut(defA, lb))
 			return true;
 		// defA == defB or liveIn to intersect{
-		if (!resolver.isLiveIn(defA, b) && defA != defuse.defs.get(b))
+		if (!resolver.isLiveIn(defA, lb) && defA != defBlock[b])
 			return false;
 		// ambiguous case. we need to check if use(dom) occurs after def(def), n that case it interferes. otherwise no
-		int domUseIndex = defuse.lastUseIndex.getNonNull(b).getOrDefault(defA, -1);
+		int domUseIndex = defuse.lastUseIndex.getNonNull(lb).getOrDefault(defA, -1);
 		if (domUseIndex == -1) {
 			return false;
 		}
-		int defDefIndex = defuse.defIndex.get(a);
-		return domUseIndex > defDefIndex;
+		return domUseIndex > defIndex[a];
 	}
 
 	private void merge(CongruenceClass conClassA, CongruenceClass conClassB) {
-		// System.out.println("Merge class " + conClassA + " <- " + conClassB);
 		conClassA.addAll(conClassB);
-		for (Local l : conClassB)
-			congruenceClasses.put(l, conClassA);
-
-		for (Local l : conClassA) {
-			Local in = equalAncIn.get(l);
-			Local out = equalAncOut.get(l);
-			if (in != null && out != null)
-				equalAncIn.put(l, checkPreDomOrder(in, out) ? out : in); // the MAXIMUM
-			else if (in != null || out != null)
-				equalAncIn.put(l, in != null ? in : out);
+		for (int i = 0; i < conClassB.size; i++)
+			congruenceClasses[conClassB.members[i]] = conClassA;
+
+		for (int i = 0; i < conClassA.size; i++) {
+			int l = conClassA.members[i];
+			int in = equalAncIn[l];
+			int out = equalAncOut[l];
+			if (in != -1 && out != -1)
+				equalAncIn[l] = checkPreDomOrder(in, out) ? out : in; // the MAXIMUM
+			else if (in != -1 || out != -1)
+				equalAncIn[l] = in != -1 ? in : out;
 		}
 	}
 
@@ -898,19 +960,66 @@ public class BoissinotDestructor {
 		}
 	}
 
-	private class CongruenceClass extends TreeSet<Local> {
-		private static final long serialVersionUID = -4472334406997712498L;
+	/* the numbers of the locals in a class, sorted in dominance order. */
+	private class CongruenceClass {
+		int[] members;
+		int size;
+
+		CongruenceClass(int l) {
+			members = new int[] { l };
+			size = 1;
+		}
+
+		int first() {
+			return members[0];
+		}
+
+		void add(int l) {
+			int i = Arrays.binarySearch(members, 0, size, l);
+			if (i >= 0)
+				return;
+			i = -(i + 1);
+			if (size == members.length)
+				members = Arrays.copyOf(members, size * 2);
+			System.arraycopy(members, i, members, i + 1, size - i);
+			members[i] = l;
+			size++;
+		}
 
-		protected CongruenceClass() {
-			super(new Comparator<Local>() {
-				@Override
-				public int compare(Local o1, Local o2) {
-					if (o1 == o2)
-						return 0;
-					return ((BoissinotDestructor.this.defuse.defIndex.get(o1) - BoissinotDestructor.
-							this.defuse.defIndex.get(o2))) >> 31 | 1;
+		void addAll(CongruenceClass o) {
+			int[] merged = new int[size + o.size];
+			int i = 0, j = 0, k = 0;
+			while (i < size && j < o.size) {
+				int a = members[i], b = o.members[j];
+				if (a < b) {
+					merged[k++] = a;
+					i++;
+				} else if (b < a) {
+					merged[k++] = b;
+					j++;
+				} else {
+					merged[k++] = a;
+					i++;
+					j++;
 				}
-			});
+			}
+			while (i < size)
+				merged[k++] = members[i++];
+			while (j < o.size)
+				merged[k++] = o.members[j++];
+			members = merged;
+			size = k;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("[");
+			for (int i = 0; i < size; i++) {
+				if (i > 0)
+					sb.append(", ");
+				sb.append(byNumber[members[i]]);
+			}
+			return sb.append("]").toString();
 		}
 	}
 
@@ -9,4 +9,12 @@ public interface Liveness<N> {
 	Set<Local> in(N n);
 	
 	Set<Local> out(N n);
+
+	default boolean isLiveIn(N n, Local l) {
+		return in(n).contains(l);
+	}
+
+	default boolean isLiveOut(N n, Local l) {
+		return out(n).contains(l);
+	}
 }
\ No newline at end of file
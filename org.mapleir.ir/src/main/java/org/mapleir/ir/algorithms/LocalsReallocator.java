@@ -1,5 +1,7 @@
 package org.mapleir.ir.algorithms;
 
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.flowgraph.edges.FlowEdges;
 import org.mapleir.ir.TypeUtils;
 import org.mapleir.ir.cfg.BasicBlock;
 import org.mapleir.ir.cfg.ControlFlowGraph;
@@ -8,15 +10,34 @@ import org.mapleir.ir.code.Opcode;
 import org.mapleir.ir.code.Stmt;
 import org.mapleir.ir.code.expr.VarExpr;
 import org.mapleir.ir.code.stmt.copy.CopyVarStmt;
+import org.mapleir.ir.codegen.ControlFlowGraphDumper;
 import org.mapleir.ir.locals.Local;
 import org.mapleir.ir.locals.LocalsPool;
 import org.mapleir.ir.locals.impl.VersionedLocal;
+import org.mapleir.stdlib.collections.bitset.GenericBitSet;
 import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 import org.objectweb.asm.Type;
 
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Assigns the locals of a graph that is out of SSA to the slots of the
+ * method's frame, with a linear scan over the statements in the order that
+ * {@link ControlFlowGraphDumper} will write them in. Locals whose live
+ * intervals don't overlap share slots, longs and doubles take two adjacent
+ * slots, and the parameters keep the slots they are passed in.
+ */
 public class LocalsReallocator {
+    private static final LongAdder totalSlots = new LongAdder();
+    private static final LongAdder totalSlotsSaved = new LongAdder();
+
+    /**
+     * Reallocates the locals of the graph.
+     *
+     * @param cfg The graph, which must be out of SSA.
+     * @return The number of slots used, i.e. the max locals of the method.
+     */
     public static int realloc(ControlFlowGraph cfg) {
         LocalsPool locals = cfg.getLocals();
         NullPermeableHashMap<Local, Set<Type>> types = new NullPermeableHashMap<>(HashSet::new);
@@ -91,45 +112,187 @@ public class LocalsReallocator {
             }
         }
 
-//		for(Entry<Local, Type> e : stypes.entrySet()) {
-//			System.out.println(e.getKey() + "  ==  " + e.getValue());
-//		}
-
-        // lvars then svars, ordered of course,
-        List<Local> wl = new ArrayList<>(stypes.keySet());
-//		System.out.println("safe: " + safe);
-        wl.sort(new Comparator<Local>() {
-            @Override
-            public int compare(Local o1, Local o2) {
-                boolean s1 = safe.contains(o1);
-                boolean s2 = safe.contains(o2);
-
-                if (s1 && !s2) {
-                    return -1;
-                } else if (!s1 && s2) {
-                    return 1;
-                } else {
-                    VersionedLocal vo1 = o1 instanceof VersionedLocal ? (VersionedLocal) o1 : cfg.getLocals().get(o1.getIndex(), 0);
-                    VersionedLocal vo2 = o2 instanceof VersionedLocal ? (VersionedLocal) o2 : cfg.getLocals().get(o2.getIndex(), 0);
-                    return vo1.compareTo(vo2);
-                }
+        Map<Local, Interval> intervals = computeIntervals(cfg, ControlFlowGraphDumper.computeOrder(cfg), stypes);
+
+        // the parameters are pinned to the slots the jvm passes them in, in
+        // order of their original index.
+        List<Interval> params = new ArrayList<>();
+        List<Interval> wl = new ArrayList<>();
+        for(Interval i : intervals.values()) {
+            (safe.contains(i.local) ? params : wl).add(i);
+        }
+        params.sort(Comparator.comparing(i -> i.local instanceof VersionedLocal ? (VersionedLocal) i.local
+                : locals.get(i.local.getIndex(), 0)));
+        wl.sort(Comparator.comparingInt(i -> i.start));
+
+        // linear scan, giving each interval the lowest free slot(s) when it
+        // starts. there is no register pressure to spill for, only the frame
+        // size to keep down.
+        BitSet used = new BitSet();
+        PriorityQueue<Interval> active = new PriorityQueue<>(Comparator.comparingInt(i -> i.end));
+        int idx = min;
+        for(Interval i : params) {
+            i.slot = idx;
+            idx += i.size;
+            used.set(i.slot, i.slot + i.size);
+            active.add(i);
+        }
+        int naive = idx;
+        int max = idx;
+        for(Interval i : wl) {
+            while(!active.isEmpty() && active.peek().end < i.start) {
+                Interval done = active.remove();
+                used.clear(done.slot, done.slot + done.size);
             }
-        });
-//		System.out.println("wl: " + wl);
+            int slot = used.nextClearBit(min);
+            while(i.size == 2 && used.get(slot + 1)) {
+                slot = used.nextClearBit(slot + 1);
+            }
+            i.slot = slot;
+            used.set(slot, slot + i.size);
+            active.add(i);
+            naive += i.size;
+            max = Math.max(max, slot + i.size);
+        }
 
         Map<Local, Local> remap = new HashMap<>();
-        int idx = min;
-        for(Local l : wl) {
-            Type type = stypes.get(l);
-            Local newL = locals.get(idx, false);
-            if(l != newL) {
-                remap.put(l, newL);
+        for(Interval i : intervals.values()) {
+            Local newL = locals.get(i.slot, false);
+            if(i.local != newL) {
+                remap.put(i.local, newL);
             }
-            idx += type.getSize();
         }
         remap(cfg, remap);
 
-        return idx;
+        totalSlots.add(max);
+        totalSlotsSaved.add(naive - max);
+        return max;
+    }
+
+    /* numbers the statements in the given block order and computes the span of
+     * positions over which each local is defined, used or live. a statement at
+     * position p reads its locals at p and writes at p + 1, so a local that is
+     * last used by the statement that defines another can share its slot. */
+    private static Map<Local, Interval> computeIntervals(ControlFlowGraph cfg, List<BasicBlock> order, Map<Local, Type> stypes) {
+        Map<Local, Interval> intervals = new HashMap<>();
+        for(Map.Entry<Local, Type> e : stypes.entrySet()) {
+            intervals.put(e.getKey(), new Interval(e.getKey(), e.getValue().getSize()));
+        }
+
+        NullPermeableHashMap<BasicBlock, GenericBitSet<Local>> in = computeLiveIns(cfg);
+
+        int pos = 0;
+        for(BasicBlock b : order) {
+            int start = pos;
+            for(Stmt stmt : b) {
+                pos++;
+                for(Expr s : stmt.enumerateOnlyChildren()) {
+                    if(s.getOpcode() == Opcode.LOCAL_LOAD) {
+                        intervals.get(((VarExpr) s).getLocal()).extend(pos);
+                    }
+                }
+                pos++;
+                if(stmt.getOpcode() == Opcode.LOCAL_STORE) {
+                    intervals.get(((CopyVarStmt) stmt).getVariable().getLocal()).extend(pos);
+                }
+            }
+            pos++;
+
+            for(Local l : in.getNonNull(b)) {
+                intervals.get(l).extend(start);
+            }
+            for(FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+                for(Local l : in.getNonNull(e.dst())) {
+                    intervals.get(l).extend(pos);
+                }
+            }
+            pos++;
+        }
+        return intervals;
+    }
+
+    /* in[b] = use[b] U (out[b] - def[b]) U in[h] for the handlers h of b. the
+     * handlers can be reached from any statement in the block, so what they
+     * read is live throughout it rather than only at its end. */
+    private static NullPermeableHashMap<BasicBlock, GenericBitSet<Local>> computeLiveIns(ControlFlowGraph cfg) {
+        LocalsPool locals = cfg.getLocals();
+        NullPermeableHashMap<BasicBlock, GenericBitSet<Local>> use = new NullPermeableHashMap<>(locals);
+        NullPermeableHashMap<BasicBlock, GenericBitSet<Local>> def = new NullPermeableHashMap<>(locals);
+        NullPermeableHashMap<BasicBlock, GenericBitSet<Local>> in = new NullPermeableHashMap<>(locals);
+
+        Deque<BasicBlock> queue = new ArrayDeque<>();
+        GenericBitSet<BasicBlock> queued = cfg.createBitSet();
+        for(BasicBlock b : cfg.vertices()) {
+            GenericBitSet<Local> useB = use.getNonNull(b);
+            GenericBitSet<Local> defB = def.getNonNull(b);
+            for(ListIterator<Stmt> it = b.listIterator(b.size()); it.hasPrevious(); ) {
+                Stmt stmt = it.previous();
+                if(stmt.getOpcode() == Opcode.LOCAL_STORE) {
+                    Local l = ((CopyVarStmt) stmt).getVariable().getLocal();
+                    defB.add(l);
+                    useB.remove(l);
+                }
+                for(Expr s : stmt.enumerateOnlyChildren()) {
+                    if(s.getOpcode() == Opcode.LOCAL_LOAD) {
+                        useB.add(((VarExpr) s).getLocal());
+                    }
+                }
+            }
+            in.getNonNull(b).addAll(useB);
+            queue.add(b);
+            queued.add(b);
+        }
+
+        GenericBitSet<Local> cur = locals.createBitSet();
+        while(!queue.isEmpty()) {
+            BasicBlock b = queue.remove();
+            queued.remove(b);
+
+            cur.clear();
+            GenericBitSet<Local> handlers = null;
+            for(FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+                cur.addAll(in.getNonNull(e.dst()));
+                if(e.getType() == FlowEdges.TRYCATCH) {
+                    if(handlers == null) {
+                        handlers = locals.createBitSet();
+                    }
+                    handlers.addAll(in.getNonNull(e.dst()));
+                }
+            }
+            cur.removeAll(def.get(b));
+            cur.addAll(use.get(b));
+            if(handlers != null) {
+                cur.addAll(handlers);
+            }
+
+            GenericBitSet<Local> inB = in.get(b);
+            if(!inB.containsAll(cur)) {
+                inB.addAll(cur);
+                for(FlowEdge<BasicBlock> e : cfg.getReverseEdges(b)) {
+                    if(queued.add(e.src())) {
+                        queue.add(e.src());
+                    }
+                }
+            }
+        }
+        return in;
+    }
+
+    /**
+     * @return The number of slots allocated to locals by all calls to
+     * {@link #realloc(ControlFlowGraph)}.
+     */
+    public static long getTotalSlotCount() {
+        return totalSlots.sum();
+    }
+
+    /**
+     * @return The number of slots saved by sharing them between locals that
+     * are never live at the same time, over all calls to
+     * {@link #realloc(ControlFlowGraph)}.
+     */
+    public static long getTotalSlotsSaved() {
+        return totalSlotsSaved.sum();
     }
 
     public static void remap(ControlFlowGraph cfg, Map<? extends Local, ? extends Local> remap) {
@@ -174,4 +337,22 @@ public class LocalsReallocator {
             }
         }
     }
+
+    private static class Interval {
+        final Local local;
+        final int size;
+        int start = Integer.MAX_VALUE;
+        int end = -1;
+        int slot;
+
+        Interval(Local local, int size) {
+            this.local = local;
+            this.size = size;
+        }
+
+        void extend(int pos) {
+            start = Math.min(start, pos);
+            end = Math.max(end, pos);
+        }
+    }
 }
@@ -1,6 +1,6 @@
 package org.mapleir.ir.algorithms;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Queue;
@@ -23,7 +23,7 @@ import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 
 /**
  * A simple fixed-point, worklist-based liveness analyser that supports both SSA and non-SSA flow graphs.
- * If your flow graph is already in SSA, you should use {@link DominanceLivenessAnalyser} instead.
+ * If your flow graph is already in SSA, you should use {@link SparseLivenessAnalyser} instead.
  */
 public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 	private final NullPermeableHashMap<BasicBlock, GenericBitSet<Local>> use;
@@ -37,6 +37,7 @@ public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 	private final NullPermeableHashMap<BasicBlock, GenericBitSet<Local>> in;
 
 	private final Queue<BasicBlock> queue;
+	private final GenericBitSet<BasicBlock> queued;
 	private final LocalsPool locals;
 
 	private final ControlFlowGraph cfg;
@@ -51,7 +52,8 @@ public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 		out = new NullPermeableHashMap<>(locals);
 		in = new NullPermeableHashMap<>(locals);
 
-		queue = new LinkedList<>();
+		queue = new ArrayDeque<>();
+		queued = cfg.createBitSet();
 
 		this.cfg = cfg;
 
@@ -59,7 +61,7 @@ public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 	}
 
 	private void enqueue(BasicBlock b) {
-		if (!queue.contains(b)) {
+		if (queued.add(b)) {
 			// System.out.println("Enqueue " + b);
 			queue.add(b);
 		}
@@ -150,43 +152,51 @@ public class SSABlockLivenessAnalyser implements Liveness<BasicBlock> {
 		// +use and -def affect out
 		// -use and +def affect in
 		// negative handling always goes after positive and any adds
+		// the sets are updated in place, curIn is the only scratch set
+		GenericBitSet<Local> curIn = locals.createBitSet();
 		while (!queue.isEmpty()) {
 			BasicBlock b = queue.remove();
+			queued.remove(b);
 			// System.out.println("\n\nProcessing " + b.getId());
 
-			GenericBitSet<Local> oldIn = new GenericBitSet<>(in.get(b));
-			GenericBitSet<Local> curIn = new GenericBitSet<>(use.get(b));
-			GenericBitSet<Local> curOut = locals.createBitSet();
+			GenericBitSet<Local> inB = in.get(b);
+			GenericBitSet<Local> curOut = out.get(b);
+			curOut.clear();
 
 			// out[n] = U(s in succ[n])(in[s])
+			// negative phi handling for defs, per edge so that a phi def of one
+			// successor doesn't hide the same variable being live into another.
 			for (FlowEdge<BasicBlock> succEdge : cfg.getEdges(b))
-				curOut.addAll(in.get(succEdge.dst()));
-
-			// negative phi handling for defs
-			for (FlowEdge<BasicBlock> succEdge : cfg.getEdges(b))
-				curOut.removeAll(phiDef.get(succEdge.dst()));
+				curOut.addAllExcept(in.get(succEdge.dst()), phiDef.get(succEdge.dst()));
 
 			// positive phi handling for uses, see §5.4.2 "Meaning of copy statements in Sreedhar's method"
 			for (FlowEdge<BasicBlock> succEdge : cfg.getEdges(b))
 				curOut.addAll(phiUse.get(succEdge.dst()).getNonNull(b));
 
 			// negative phi handling for uses
+			GenericBitSet<Local> useB = use.get(b);
+			curIn.copyFrom(useB);
 			for (FlowEdge<BasicBlock> predEdge : cfg.getReverseEdges(b))
-				curIn.removeAll(phiUse.get(b).getNonNull(predEdge.src()).relativeComplement(use.get(b)));
+				curIn.removeAllExcept(phiUse.get(b).getNonNull(predEdge.src()), useB);
 
 			// positive phi handling for defs
-			curIn.addAll(phiDef.get(b));
-			oldIn.addAll(phiDef.get(b));
+			GenericBitSet<Local> phiDefB = phiDef.get(b);
+			curIn.addAll(phiDefB);
 
 			// in[n] = use[n] U(out[n] - def[n])
-			curIn.addAll(curOut.relativeComplement(def.get(b)));
+			curIn.addAllExcept(curOut, def.get(b));
 
-			in.put(b, curIn);
-			out.put(b, curOut);
+			// the old in set counts as including the phi defs. curIn always
+			// contains them, so it is equal to that union if it contains the
+			// old set and has the same size as the union.
+			boolean changed = !curIn.containsAll(inB)
+					|| curIn.size() != inB.size() + phiDefB.size() - inB.intersectionSize(phiDefB);
+			inB.copyFrom(curIn);
 
 			// queue preds if dataflow state changed
-			if (!oldIn.equals(curIn)) {
-				cfg.getReverseEdges(b).stream().map(e -> e.src()).forEach(this::enqueue);
+			if (changed) {
+				for (FlowEdge<BasicBlock> predEdge : cfg.getReverseEdges(b))
+					enqueue(predEdge.src());
 
 				// for (BasicBlock b2 : cfg.vertices())
 				// System.out.println(b2.getId() + " |||| IN: " + in.get(b2) + " ||||| OUT: " + out.get(b2));
@@ -0,0 +1,196 @@
+package org.mapleir.ir.algorithms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.copy.CopyPhiStmt;
+import org.mapleir.ir.locals.Local;
+import org.mapleir.stdlib.collections.bitset.GenericBitSet;
+
+/**
+ * A liveness analyser for SSA-form flow graphs that answers queries for one
+ * variable at a time by exploring the paths from its uses back to its
+ * definition, instead of computing the live sets of every block to a fixed
+ * point. This is the path exploration approach described in the 2011 paper
+ * "Computing Liveness Sets for SSA-Form Programs" by Brandner et al..
+ *
+ * <p> The uses come from an {@link SSADefUseMap}, where the operands of phis
+ * are used at the end of the predecessor they flow in from. With caching
+ * enabled, the blocks a variable is live into are computed once per
+ * variable, otherwise every query explores the paths again, stopping as
+ * soon as the answer is known. The cache must be cleared with
+ * {@link #setDefuse(SSADefUseMap)} or {@link #invalidate(Local)} when the
+ * uses change.
+ */
+public class SparseLivenessAnalyser implements Liveness<BasicBlock> {
+
+	private final ControlFlowGraph cfg;
+	private SSADefUseMap defuse;
+	private final Map<Local, GenericBitSet<BasicBlock>> liveIns;
+
+	public SparseLivenessAnalyser(ControlFlowGraph cfg, SSADefUseMap defuse, boolean cache) {
+		this.cfg = cfg;
+		this.defuse = defuse;
+		liveIns = cache ? new HashMap<>() : null;
+	}
+
+	public void setDefuse(SSADefUseMap defuse) {
+		this.defuse = defuse;
+		if (liveIns != null)
+			liveIns.clear();
+	}
+
+	public void invalidate(Local l) {
+		if (liveIns != null)
+			liveIns.remove(l);
+	}
+
+	@Override
+	public boolean isLiveIn(BasicBlock b, Local l) {
+		BasicBlock defBlock = defuse.defs.get(l);
+		if (defBlock == null)
+			return false;
+		if (defBlock == b)
+			return defuse.phiDefs.containsKey(l);
+
+		if (liveIns != null)
+			return liveInBlocks(l).contains(b);
+		return explore(l, defBlock, b, null) != null;
+	}
+
+	@Override
+	public boolean isLiveOut(BasicBlock q, Local l) {
+		BasicBlock defBlock = defuse.defs.get(l);
+		if (defBlock == null)
+			return false;
+		// a phi operand is used on the edge out of q, whichever block defines it
+		for (FlowEdge<BasicBlock> e : cfg.getEdges(q)) {
+			if (isPhiOperand(e.dst(), q, l))
+				return true;
+		}
+		if (defBlock == q) {
+			// any use outside of the def block
+			GenericBitSet<BasicBlock> uses = defuse.uses.get(l);
+			return uses != null && uses.size() > (uses.contains(q) ? 1 : 0);
+		}
+
+		GenericBitSet<BasicBlock> succs = cfg.createBitSet();
+		for (FlowEdge<BasicBlock> e : cfg.getEdges(q))
+			succs.add(e.dst());
+
+		if (liveIns != null)
+			return liveInBlocks(l).intersects(succs);
+		return explore(l, defBlock, null, succs) != null;
+	}
+
+	/* whether one of the phis at the head of b takes l as its argument from
+	 * pred. */
+	private boolean isPhiOperand(BasicBlock b, BasicBlock pred, Local l) {
+		GenericBitSet<Local> phiUses = defuse.phiUses.get(b);
+		if (phiUses == null || !phiUses.contains(l))
+			return false;
+		for (Stmt stmt : b) {
+			if (stmt.getOpcode() != Opcode.PHI_STORE)
+				break;
+			Expr arg = ((CopyPhiStmt) stmt).getExpression().getArgument(pred);
+			if (arg instanceof VarExpr && ((VarExpr) arg).getLocal() == l)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The blocks, other than the block that defines it, that the
+	 * variable is live into. This is cached if caching is enabled and must not
+	 * be modified.
+	 */
+	public GenericBitSet<BasicBlock> liveInBlocks(Local l) {
+		if (liveIns != null) {
+			GenericBitSet<BasicBlock> res = liveIns.get(l);
+			if (res == null) {
+				res = exploreAll(l);
+				liveIns.put(l, res);
+			}
+			return res;
+		}
+		return exploreAll(l);
+	}
+
+	private GenericBitSet<BasicBlock> exploreAll(Local l) {
+		BasicBlock defBlock = defuse.defs.get(l);
+		if (defBlock == null)
+			return cfg.createBitSet();
+		GenericBitSet<BasicBlock> marked = cfg.createBitSet();
+		explore(l, defBlock, null, null, marked);
+		return marked;
+	}
+
+	private BasicBlock explore(Local l, BasicBlock defBlock, BasicBlock target, GenericBitSet<BasicBlock> targets) {
+		return explore(l, defBlock, target, targets, cfg.createBitSet());
+	}
+
+	/* marks the blocks that the variable is live into by walking backwards from
+	 * the blocks that use it until the def block is reached. returns the first
+	 * marked block that is the target or in the targets, or null. */
+	private BasicBlock explore(Local l, BasicBlock defBlock, BasicBlock target, GenericBitSet<BasicBlock> targets,
+			GenericBitSet<BasicBlock> marked) {
+		GenericBitSet<BasicBlock> uses = defuse.uses.get(l);
+		if (uses == null)
+			return null;
+
+		BasicBlock[] stack = new BasicBlock[Math.max(uses.size(), 4)];
+		int sp = 0;
+		for (BasicBlock u : uses) {
+			if (u != defBlock && marked.add(u)) {
+				if (u == target || (targets != null && targets.contains(u)))
+					return u;
+				stack[sp++] = u;
+			}
+		}
+
+		while (sp > 0) {
+			BasicBlock b = stack[--sp];
+			for (FlowEdge<BasicBlock> e : cfg.getReverseEdges(b)) {
+				BasicBlock p = e.src();
+				if (p != defBlock && marked.add(p)) {
+					if (p == target || (targets != null && targets.contains(p)))
+						return p;
+					if (sp == stack.length) {
+						BasicBlock[] newStack = new BasicBlock[sp * 2];
+						System.arraycopy(stack, 0, newStack, 0, sp);
+						stack = newStack;
+					}
+					stack[sp++] = p;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public GenericBitSet<Local> in(BasicBlock b) {
+		GenericBitSet<Local> res = cfg.getLocals().createBitSet();
+		for (Local l : defuse.defs.keySet()) {
+			if (isLiveIn(b, l))
+				res.add(l);
+		}
+		return res;
+	}
+
+	@Override
+	public GenericBitSet<Local> out(BasicBlock b) {
+		GenericBitSet<Local> res = cfg.getLocals().createBitSet();
+		for (Local l : defuse.defs.keySet()) {
+			if (isLiveOut(b, l))
+				res.add(l);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,94 @@
+package org.mapleir.ir.cfg;
+
+import java.util.function.Function;
+
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.ir.algorithms.SSABlockLivenessAnalyser;
+import org.mapleir.ir.algorithms.SSADefUseMap;
+import org.mapleir.ir.algorithms.SparseLivenessAnalyser;
+import org.mapleir.stdlib.collections.graph.algorithms.LT79Dom;
+import org.mapleir.stdlib.collections.graph.algorithms.TarjanSCC;
+
+/**
+ * A fact about a {@link ControlFlowGraph} that is computed on demand and
+ * cached by the {@link AnalysisManager} of the graph. Results are shared by
+ * everything that asks for them, so they must not be modified.
+ * 
+ * @param <T> The type of the result.
+ */
+public final class Analysis<T> {
+
+	/** The dominators of the blocks, rooted at the entry of the graph. */
+	public static final Analysis<LT79Dom<BasicBlock, FlowEdge<BasicBlock>>> DOMINATORS = new Analysis<>(
+			"dominators", false, cfg -> new LT79Dom<>(cfg, entry(cfg)));
+
+	/** The strongly connected components of the whole graph. */
+	public static final Analysis<TarjanSCC<BasicBlock>> SCCS = new Analysis<>("sccs", false, cfg -> {
+		TarjanSCC<BasicBlock> scc = new TarjanSCC<>(cfg);
+		for (BasicBlock b : cfg.vertices()) {
+			if (scc.low(b) == -1) {
+				scc.search(b);
+			}
+		}
+		return scc;
+	});
+
+	/** The live in and out sets of the blocks. */
+	public static final Analysis<SSABlockLivenessAnalyser> LIVENESS = new Analysis<>("liveness", true, cfg -> {
+		SSABlockLivenessAnalyser liveness = new SSABlockLivenessAnalyser(cfg);
+		liveness.compute();
+		return liveness;
+	});
+
+	/** Liveness queries for single locals, answered from the def-use chains
+	 * of a graph in SSA form. */
+	public static final Analysis<SparseLivenessAnalyser> SPARSE_LIVENESS = new Analysis<>("sparse liveness", true,
+			cfg -> new SparseLivenessAnalyser(cfg, cfg.getAnalyses().get(Analysis.DEF_USE), true));
+
+	/** The definitions and uses of the locals in SSA form. */
+	public static final Analysis<SSADefUseMap> DEF_USE = new Analysis<>("defuse", true, cfg -> {
+		SSADefUseMap defuse = new SSADefUseMap(cfg);
+		defuse.compute();
+		return defuse;
+	});
+
+	private final String name;
+	private final boolean dependsOnCode;
+	private final Function<ControlFlowGraph, T> function;
+
+	/**
+	 * @param name The name of the analysis, for debugging.
+	 * @param dependsOnCode Whether the result depends on the code in the
+	 * blocks, and therefore on the definitions and uses of the locals, rather
+	 * than only on the blocks and edges of the graph.
+	 * @param function Computes the result for a graph.
+	 */
+	public Analysis(String name, boolean dependsOnCode, Function<ControlFlowGraph, T> function) {
+		this.name = name;
+		this.dependsOnCode = dependsOnCode;
+		this.function = function;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean dependsOnCode() {
+		return dependsOnCode;
+	}
+
+	T compute(ControlFlowGraph cfg) {
+		return function.apply(cfg);
+	}
+
+	private static BasicBlock entry(ControlFlowGraph cfg) {
+		if (cfg.getEntries().size() != 1)
+			throw new IllegalStateException("graph has " + cfg.getEntries().size() + " entries");
+		return cfg.getEntries().iterator().next();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
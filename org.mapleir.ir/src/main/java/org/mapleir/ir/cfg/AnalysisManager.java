@@ -0,0 +1,132 @@
+package org.mapleir.ir.cfg;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes the {@link Analysis analyses} of a {@link ControlFlowGraph} when
+ * they are first requested and keeps the results until the graph changes.
+ * Every result is stamped with the version of the graph it was computed
+ * from: the structure version for analyses of the blocks and edges, and the
+ * modification count, which also covers the code and therefore the
+ * definitions and uses of the locals, for the others. A result is only
+ * recomputed when its stamp no longer matches. Results whose stamps no
+ * longer match are dropped the next time the cache is used after the graph
+ * changes, so that they don't keep their memory until they are requested
+ * again.
+ */
+public class AnalysisManager {
+
+	private static final LongAdder totalHits = new LongAdder();
+	private static final LongAdder totalMisses = new LongAdder();
+
+	private final ControlFlowGraph cfg;
+	private final Map<Analysis<?>, Result> results;
+	private int hits;
+	private int misses;
+	/* the modcount of the graph when stale results were last dropped. */
+	private int sweptModCount;
+
+	public AnalysisManager(ControlFlowGraph cfg) {
+		this.cfg = cfg;
+		results = new HashMap<>();
+	}
+
+	/**
+	 * Gets the result of an analysis, computing it if it isn't cached or the
+	 * graph has changed since it was computed.
+	 * 
+	 * @param analysis The analysis.
+	 * @return The shared result, which must not be modified.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T get(Analysis<T> analysis) {
+		evictStale();
+		int stamp = stamp(analysis);
+		Result r = results.get(analysis);
+		if (r != null && r.stamp == stamp) {
+			hits++;
+			totalHits.increment();
+			return (T) r.value;
+		}
+		misses++;
+		totalMisses.increment();
+		T value = analysis.compute(cfg);
+		results.put(analysis, new Result(value, stamp));
+		return value;
+	}
+
+	/**
+	 * @return The cached result of the analysis if it is still valid, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T getIfCached(Analysis<T> analysis) {
+		evictStale();
+		Result r = results.get(analysis);
+		return r != null && r.stamp == stamp(analysis) ? (T) r.value : null;
+	}
+
+	/**
+	 * Drops the result of an analysis, for changes the graph doesn't track.
+	 */
+	public synchronized void invalidate(Analysis<?> analysis) {
+		results.remove(analysis);
+	}
+
+	public synchronized void invalidateAll() {
+		results.clear();
+	}
+
+	/**
+	 * @return The number of results that are currently cached.
+	 */
+	public synchronized int size() {
+		evictStale();
+		return results.size();
+	}
+
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of requests answered from a cache, over all graphs.
+	 */
+	public static long getTotalHitCount() {
+		return totalHits.sum();
+	}
+
+	/**
+	 * @return The number of results computed, over all graphs.
+	 */
+	public static long getTotalMissCount() {
+		return totalMisses.sum();
+	}
+
+	private void evictStale() {
+		int modCount = cfg.getModCount();
+		if (modCount != sweptModCount && !results.isEmpty()) {
+			results.entrySet().removeIf(e -> e.getValue().stamp != stamp(e.getKey()));
+		}
+		sweptModCount = modCount;
+	}
+
+	private int stamp(Analysis<?> analysis) {
+		return analysis.dependsOnCode() ? cfg.getModCount() : cfg.getStructureVersion();
+	}
+
+	private static class Result {
+		final Object value;
+		final int stamp;
+
+		Result(Object value, int stamp) {
+			this.value = value;
+			this.stamp = stamp;
+		}
+	}
+}
@@ -33,10 +33,14 @@ public class BasicBlock implements FastGraphVertex, Collection<Stmt> {
 		this.cfg = cfg;
 		this.id = cfg.makeBlockId();
 		statements = new NotifiedList<>(
-				(s) -> s.setBlock(this),
+				(s) -> {
+					s.setBlock(this);
+					cfg.markDirty();
+				},
 				(s) -> {
 					if (s.getBlock() == this)
 						s.setBlock(null);
+					cfg.markDirty();
 				}
 		);
 	}
@@ -20,6 +20,7 @@ import org.mapleir.ir.locals.impl.VersionedLocal;
 import org.mapleir.ir.utils.CFGExporterUtils;
 import org.mapleir.ir.utils.CFGUtils;
 import org.mapleir.propertyframework.api.IPropertyDictionary;
+import org.mapleir.stdlib.collections.graph.algorithms.LT79Dom;
 import org.mapleir.stdlib.collections.itertools.ChainIterator;
 import org.mapleir.stdlib.util.IHasJavaDesc;
 import org.mapleir.stdlib.util.JavaDesc;
@@ -41,6 +42,15 @@ public class ControlFlowGraph extends FlowGraph<BasicBlock, FlowEdge<BasicBlock>
 	// used for assigning unique id's to basicblocks. ugly hack
 	// fyi, we start at one arbitrarily.
 	private int blockCounter = 1;
+	// used for assigning dense id's to the code units in the blocks, see
+	// CodeUnit.getLocalId.
+	private int unitCounter;
+
+	// incremented whenever the code inside of the blocks changes, see markDirty
+	private int codeVersion;
+
+	// cached analyses, not shared with copies of this graph
+	private final AnalysisManager analyses = new AnalysisManager(this);
 
 	public ControlFlowGraph(LocalsPool locals, JavaDesc javaDesc) {
 		this.locals = locals;
@@ -51,12 +61,100 @@ public class ControlFlowGraph extends FlowGraph<BasicBlock, FlowEdge<BasicBlock>
 		super(cfg);
 		locals = cfg.locals;
 		javaDesc = cfg.javaDesc;
+		/* the blocks and their units are shared, and keep the ids given to
+		 * them by the graph their blocks belong to. units added to blocks of
+		 * this graph are numbered from zero. */
 	}
 
 	public int makeBlockId() {
 		return blockCounter++;
 	}
 
+	/**
+	 * Allocates the identifier of a code unit that was added to this graph.
+	 * Units are numbered from zero, so that analyses can index arrays and
+	 * bitsets with them. Only to be called by {@link CodeUnit#setBlock}.
+	 * 
+	 * @return The identifier.
+	 */
+	public int makeUnitId() {
+		return unitCounter++;
+	}
+
+	/**
+	 * @return One more than the largest identifier that has been given to a
+	 * code unit in this graph.
+	 */
+	public int getUnitIdCount() {
+		return unitCounter;
+	}
+
+	/**
+	 * Records that the code in this graph has changed. This is called when
+	 * statements are added to or removed from blocks and when units in the
+	 * graph are modified.
+	 */
+	public void markDirty() {
+		codeVersion++;
+	}
+
+	/**
+	 * @return A counter that changes whenever either the structure of this
+	 * graph or the code inside of it changes. Two equal values mean that the
+	 * graph was not modified in between.
+	 */
+	public int getModCount() {
+		return getStructureVersion() + codeVersion;
+	}
+
+	/**
+	 * @return The cache of the analyses of this graph.
+	 */
+	public AnalysisManager getAnalyses() {
+		return analyses;
+	}
+
+	/**
+	 * Gets the dominators of the blocks reachable from the given entry. The
+	 * result is cached and shared until a block or an edge is added to or
+	 * removed from this graph, so it must not be modified.
+	 * 
+	 * @param entry The root of the dominator tree.
+	 * @return The dominators.
+	 */
+	public LT79Dom<BasicBlock, FlowEdge<BasicBlock>> getDominators(BasicBlock entry) {
+		if (getEntries().size() == 1 && getEntries().contains(entry))
+			return analyses.get(Analysis.DOMINATORS);
+		return new LT79Dom<>(this, entry);
+	}
+
+	/**
+	 * @return Whether the blocks of this graph form a single chain from the
+	 * entry, joined only by immediate edges and without exception ranges, in
+	 * which case its code runs straight through and the builder and the
+	 * dumper can skip most of their work.
+	 */
+	public boolean isStraightLine() {
+		if (getEntries().size() != 1 || !getRanges().isEmpty())
+			return false;
+		BasicBlock b = getEntries().iterator().next();
+		if (!getReverseEdges(b).isEmpty())
+			return false;
+		for (int i = 1;; i++) {
+			Set<FlowEdge<BasicBlock>> succs = getEdges(b);
+			if (succs.isEmpty())
+				return i == size();
+			if (succs.size() != 1 || i == size())
+				return false;
+			FlowEdge<BasicBlock> e = succs.iterator().next();
+			if (!(e instanceof ImmediateEdge))
+				return false;
+			b = e.dst();
+			if (getReverseEdges(b).size() != 1)
+				return false;
+		}
+	}
+
     public Stream<CodeUnit> allExprStream() {
    		return vertices().stream().flatMap(Collection::stream).map(Stmt::enumerateWithSelf).flatMap(Streams::stream);
    	}
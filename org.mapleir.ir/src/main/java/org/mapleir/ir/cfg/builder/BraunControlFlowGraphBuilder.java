@@ -0,0 +1,30 @@
+package org.mapleir.ir.cfg.builder;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+
+/**
+ * A {@link ControlFlowGraphBuilder} that constructs SSA form with a
+ * {@link BraunSSAGenPass} instead of a {@link SSAGenPass}. This is cheaper,
+ * but the resulting code is not optimised.
+ */
+public class BraunControlFlowGraphBuilder extends ControlFlowGraphBuilder {
+
+	public BraunControlFlowGraphBuilder(MethodNode method) {
+		super(method, false);
+	}
+
+	@Override
+	protected BuilderPass[] resolvePasses() {
+		return new BuilderPass[] {
+				new GenerationPass(this),
+				new DeadBlocksPass(this),
+				new NaturalisationPass(this),
+				new BraunSSAGenPass(this),
+		};
+	}
+
+	public static ControlFlowGraph build(MethodNode method) {
+		return new BraunControlFlowGraphBuilder(method).buildImpl();
+	}
+}
@@ -0,0 +1,418 @@
+package org.mapleir.ir.cfg.builder;
+
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.ir.cfg.Analysis;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ssaopt.ConstraintUtil;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.PhiExpr;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.PopStmt;
+import org.mapleir.ir.code.stmt.copy.AbstractCopyStmt;
+import org.mapleir.ir.code.stmt.copy.CopyPhiStmt;
+import org.mapleir.ir.locals.Local;
+import org.mapleir.ir.locals.LocalsPool;
+import org.mapleir.ir.locals.impl.VersionedLocal;
+import org.mapleir.stdlib.collections.graph.algorithms.SimpleDfs;
+import org.objectweb.asm.Type;
+
+import java.util.*;
+
+/**
+ * Converts a non-SSA flow graph into a SSA-form flow graph in a single walk
+ * over the blocks, using the algorithm described in the 2013 paper "Simple
+ * and Efficient Construction of Static Single Assignment Form" by Braun et
+ * al.. Uses are renamed as they are visited by looking up the latest
+ * definition of the local in the block, or in its predecessors, and phis are
+ * only created where such a lookup meets a join point. Blocks are sealed once
+ * all of their predecessors have been visited, until then the phis in them
+ * are left incomplete. Phis with only one distinct argument are removed as
+ * soon as they are complete, and phis that are only used by dead phis are
+ * removed at the end, which leaves pruned SSA form.
+ *
+ * <p> Unlike {@link SSAGenPass}, this needs neither dominance frontiers nor,
+ * unless the graph has exception ranges, liveness, but it does not do any
+ * constant or copy propagation. The input flowgraph *must* be naturalised; see
+ * {@link NaturalisationPass} for more details.
+ *
+ * @see <a href="https://c9x.me/compile/bib/braun13cc.pdf">Simple and Efficient
+ * Construction of Static Single Assignment Form</a>
+ */
+public class BraunSSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
+
+	private LocalsPool pool;
+	/* indexed by block id - 1, the graph is relabelled first. */
+	private BasicBlock[][] preds;
+	private boolean[] sealed;
+	private int[] unvisitedPreds;
+
+	private final Map<Local, Variable> variables;
+	private final Map<BasicBlock, List<CopyPhiStmt>> incompletePhis;
+	private final List<CopyPhiStmt> phis;
+	/* the phi that each phi argument belongs to. */
+	private final Map<VarExpr, CopyPhiStmt> phiArgs;
+	/* trivial phis that were removed and the value that replaced them. */
+	private final Map<VersionedLocal, VersionedLocal> replaced;
+	/* phis whose arguments are being looked up, these can't be checked for
+	 * triviality until they are complete. */
+	private final Set<CopyPhiStmt> filling;
+
+	public BraunSSAGenPass(ControlFlowGraphBuilder builder) {
+		super(builder);
+		variables = new HashMap<>();
+		incompletePhis = new HashMap<>();
+		phis = new ArrayList<>();
+		phiArgs = new IdentityHashMap<>();
+		replaced = new HashMap<>();
+		filling = new HashSet<>();
+	}
+
+	private int index(BasicBlock b) {
+		return b.getNumericId() - 1;
+	}
+
+	private Variable variable(Local l) {
+		Local base = pool.asSimpleLocal(l);
+		Variable v = variables.get(base);
+		if (v == null) {
+			v = new Variable(base, preds.length);
+			variables.put(base, v);
+		}
+		return v;
+	}
+
+	private VersionedLocal resolve(VersionedLocal vl) {
+		VersionedLocal r;
+		while ((r = replaced.get(vl)) != null) {
+			vl = r;
+		}
+		return vl;
+	}
+
+	private VersionedLocal read(Variable var, BasicBlock b) {
+		VersionedLocal vl = var.current[index(b)];
+		if (vl != null) {
+			return replaced.isEmpty() ? vl : resolve(vl);
+		}
+		return readRecursive(var, b);
+	}
+
+	private VersionedLocal readRecursive(Variable var, BasicBlock b) {
+		int i = index(b);
+		BasicBlock[] ps = preds[i];
+		VersionedLocal vl;
+		if (!sealed[i]) {
+			CopyPhiStmt phi = newPhi(var, b);
+			incompletePhis.computeIfAbsent(b, k -> new ArrayList<>()).add(phi);
+			vl = (VersionedLocal) phi.getVariable().getLocal();
+		} else if (ps.length == 1) {
+			vl = read(var, ps[0]);
+		} else if (ps.length == 0) {
+			throw new IllegalStateException("No definition of " + var.base + " reaches " + b + " in " + builder.method);
+		} else {
+			CopyPhiStmt phi = newPhi(var, b);
+			// break cycles through this block
+			var.current[i] = (VersionedLocal) phi.getVariable().getLocal();
+			vl = addPhiArguments(var, phi);
+		}
+		/* removing a trivial phi may have removed the phis that replaced it. */
+		vl = resolve(vl);
+		var.current[i] = vl;
+		return vl;
+	}
+
+	private CopyPhiStmt newPhi(Variable var, BasicBlock b) {
+		VersionedLocal vl = var.next(pool);
+		CopyPhiStmt phi = new CopyPhiStmt(new VarExpr(vl, null), new PhiExpr(new HashMap<>()));
+		b.add(0, phi);
+		pool.defs.put(vl, phi);
+		pool.uses.put(vl, new HashSet<>());
+		phis.add(phi);
+		return phi;
+	}
+
+	private VersionedLocal addPhiArguments(Variable var, CopyPhiStmt phi) {
+		BasicBlock b = phi.getBlock();
+		PhiExpr expr = phi.getExpression();
+		filling.add(phi);
+		for (BasicBlock p : preds[index(b)]) {
+			VersionedLocal vl = read(var, p);
+			VarExpr arg = new VarExpr(vl, null);
+			expr.setArgument(p, arg);
+			pool.uses.getNonNull(vl).add(arg);
+			phiArgs.put(arg, phi);
+		}
+		filling.remove(phi);
+		return tryRemoveTrivialPhi(phi);
+	}
+
+	private VersionedLocal tryRemoveTrivialPhi(CopyPhiStmt phi) {
+		VersionedLocal self = (VersionedLocal) phi.getVariable().getLocal();
+		VersionedLocal same = null;
+		for (Expr e : phi.getExpression().getArguments().values()) {
+			VersionedLocal op = (VersionedLocal) ((VarExpr) e).getLocal();
+			if (op == same || op == self) {
+				continue;
+			}
+			if (same != null) {
+				// merges at least two values
+				return self;
+			}
+			same = op;
+		}
+		if (same == null) {
+			throw new IllegalStateException("No definition of " + self + " reaches " + phi.getBlock() + " in " + builder.method);
+		}
+
+		removePhi(phi);
+		replaced.put(self, same);
+
+		/* reroute the uses of the phi to the value and try to remove the phis
+		 * that used it, as they may have become trivial. */
+		Set<VarExpr> uses = pool.uses.remove(self);
+		List<CopyPhiStmt> users = new ArrayList<>();
+		if (uses != null) {
+			Set<VarExpr> sameUses = pool.uses.getNonNull(same);
+			for (VarExpr v : uses) {
+				v.setLocal(same);
+				sameUses.add(v);
+				CopyPhiStmt user = phiArgs.get(v);
+				if (user != null) {
+					users.add(user);
+				}
+			}
+		}
+		for (CopyPhiStmt user : users) {
+			if (isPresent(user) && !filling.contains(user)) {
+				tryRemoveTrivialPhi(user);
+			}
+		}
+		return same;
+	}
+
+	private void removePhi(CopyPhiStmt phi) {
+		VersionedLocal self = (VersionedLocal) phi.getVariable().getLocal();
+		for (Expr e : phi.getExpression().getArguments().values()) {
+			Set<VarExpr> uses = pool.uses.get(((VarExpr) e).getLocal());
+			if (uses != null) {
+				uses.remove(e);
+			}
+			phiArgs.remove(e);
+		}
+		phi.getBlock().remove(phi);
+		pool.defs.remove(self);
+	}
+
+	private boolean isPresent(CopyPhiStmt phi) {
+		return pool.defs.get(phi.getVariable().getLocal()) == phi;
+	}
+
+	private void seal(BasicBlock b) {
+		List<CopyPhiStmt> incomplete = incompletePhis.remove(b);
+		if (incomplete != null) {
+			for (CopyPhiStmt phi : incomplete) {
+				addPhiArguments(variable(phi.getVariable().getLocal()), phi);
+			}
+		}
+		sealed[index(b)] = true;
+	}
+
+	private void visit(BasicBlock b) {
+		for (Stmt stmt : new ArrayList<>(b)) {
+			int opcode = stmt.getOpcode();
+			if (opcode == Opcode.PHI_STORE) {
+				// created by a lookup in this block
+				continue;
+			}
+			if (opcode == Opcode.POP && !ConstraintUtil.isUncopyable(((PopStmt) stmt).getExpression())) {
+				b.remove(stmt);
+				continue;
+			}
+
+			/* rename the uses before the def so that x = x; isn't turned
+			 * into x0 = x0. */
+			renameUses(stmt, b);
+
+			if (opcode == Opcode.LOCAL_STORE) {
+				AbstractCopyStmt copy = (AbstractCopyStmt) stmt;
+				VarExpr v = copy.getVariable();
+				Variable var = variable(v.getLocal());
+				VersionedLocal vl = var.next(pool);
+				v.setLocal(vl);
+				pool.defs.put(vl, copy);
+				pool.uses.put(vl, new HashSet<>());
+				var.current[index(b)] = vl;
+			}
+		}
+	}
+
+	private void renameUses(CodeUnit u, BasicBlock b) {
+		for (int i = 0; i < u.capacity(); i++) {
+			Expr c = u.read(i);
+			if (c == null) {
+				break;
+			}
+			if (c.getOpcode() == Opcode.LOCAL_LOAD) {
+				VarExpr v = (VarExpr) c;
+				VersionedLocal vl = read(variable(v.getLocal()), b);
+				v.setLocal(vl);
+				pool.uses.getNonNull(vl).add(v);
+			} else {
+				renameUses(c, b);
+			}
+		}
+	}
+
+	/* removes the phis that no statement other than dead phis uses. */
+	private void removeDeadPhis() {
+		/* indexed by the local id of the phi, no units are added from here. */
+		boolean[] live = new boolean[builder.graph.getUnitIdCount()];
+		Deque<CopyPhiStmt> worklist = new ArrayDeque<>();
+		for (CopyPhiStmt phi : phis) {
+			if (!isPresent(phi)) {
+				continue;
+			}
+			for (VarExpr v : pool.uses.get(phi.getVariable().getLocal())) {
+				if (!phiArgs.containsKey(v)) {
+					live[phi.getLocalId()] = true;
+					worklist.add(phi);
+					break;
+				}
+			}
+		}
+		while (!worklist.isEmpty()) {
+			for (Expr e : worklist.pop().getExpression().getArguments().values()) {
+				AbstractCopyStmt def = pool.defs.get(((VarExpr) e).getLocal());
+				if (def instanceof CopyPhiStmt && !live[def.getLocalId()]) {
+					live[def.getLocalId()] = true;
+					worklist.add((CopyPhiStmt) def);
+				}
+			}
+		}
+		for (CopyPhiStmt phi : phis) {
+			if (isPresent(phi) && !live[phi.getLocalId()]) {
+				removePhi(phi);
+				pool.uses.remove(phi.getVariable().getLocal());
+			}
+		}
+	}
+
+	private Type typeOf(VersionedLocal vl) {
+		return pool.defs.get(vl).getExpression().getType();
+	}
+
+	private void updateTypes() {
+		/* a phi has the type of its arguments, which may be other phis. */
+		boolean changed;
+		do {
+			changed = false;
+			for (CopyPhiStmt phi : phis) {
+				PhiExpr expr = phi.getExpression();
+				if (!isPresent(phi) || expr.getType() != null) {
+					continue;
+				}
+				for (Expr e : expr.getArguments().values()) {
+					Type t = typeOf((VersionedLocal) ((VarExpr) e).getLocal());
+					if (t != null) {
+						expr.setType(t);
+						phi.getVariable().setType(t);
+						changed = true;
+						break;
+					}
+				}
+			}
+		} while (changed);
+
+		for (Map.Entry<VersionedLocal, Set<VarExpr>> e : pool.uses.entrySet()) {
+			Type t = typeOf(e.getKey());
+			if (t == null) {
+				throw new IllegalStateException(e.getKey() + ", t=null");
+			}
+			for (VarExpr v : e.getValue()) {
+				v.setType(t);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		ControlFlowGraph graph = builder.graph;
+		pool = graph.getLocals();
+
+		List<BasicBlock> order = new ArrayList<>(graph.verticesInOrder());
+		order.remove(builder.head);
+		order.add(0, builder.head);
+		graph.relabel(order);
+
+		if (!graph.getRanges().isEmpty()) {
+			SSAGenPass.splitRanges(builder, graph.getAnalyses().get(Analysis.LIVENESS), order);
+		}
+
+		int n = graph.size();
+		preds = new BasicBlock[n][];
+		sealed = new boolean[n];
+		unvisitedPreds = new int[n];
+		for (BasicBlock b : graph.vertices()) {
+			Set<BasicBlock> ps = new LinkedHashSet<>();
+			for (FlowEdge<BasicBlock> e : graph.getReverseEdges(b)) {
+				ps.add(e.src());
+			}
+			preds[index(b)] = ps.toArray(new BasicBlock[0]);
+			unvisitedPreds[index(b)] = ps.size();
+		}
+
+		for (BasicBlock b : SimpleDfs.topoorder(graph, builder.head)) {
+			if (!sealed[index(b)] && unvisitedPreds[index(b)] == 0) {
+				seal(b);
+			}
+			visit(b);
+
+			for (FlowEdge<BasicBlock> e : graph.getEdges(b)) {
+				BasicBlock succ = e.dst();
+				int i = index(succ);
+				/* the preds are distinct, so count each successor once. */
+				if (!sealed[i] && e == firstEdgeTo(graph, b, succ) && --unvisitedPreds[i] == 0) {
+					seal(succ);
+				}
+			}
+		}
+		if (!incompletePhis.isEmpty()) {
+			throw new IllegalStateException("Unreachable blocks in " + builder.method + ": " + incompletePhis.keySet());
+		}
+
+		removeDeadPhis();
+		updateTypes();
+
+		// the pre-ssa liveness used to split the ranges is of no further use
+		graph.getAnalyses().invalidate(Analysis.LIVENESS);
+	}
+
+	private static FlowEdge<BasicBlock> firstEdgeTo(ControlFlowGraph graph, BasicBlock b, BasicBlock succ) {
+		for (FlowEdge<BasicBlock> e : graph.getEdges(b)) {
+			if (e.dst() == succ) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	private static class Variable {
+		final Local base;
+		/* the latest definition in each block, by block index. */
+		final VersionedLocal[] current;
+		int subscript;
+
+		Variable(Local base, int blocks) {
+			this.base = base;
+			current = new VersionedLocal[blocks];
+		}
+
+		VersionedLocal next(LocalsPool pool) {
+			return pool.get(base.getIndex(), subscript++, base.isStack());
+		}
+	}
+}
@@ -4,7 +4,7 @@ import org.mapleir.flowgraph.ExceptionRange;
 import org.mapleir.flowgraph.edges.FlowEdge;
 import org.mapleir.flowgraph.edges.FlowEdges;
 import org.mapleir.ir.algorithms.Liveness;
-import org.mapleir.ir.algorithms.SSABlockLivenessAnalyser;
+import org.mapleir.ir.cfg.Analysis;
 import org.mapleir.ir.cfg.BasicBlock;
 import org.mapleir.ir.cfg.builder.ssaopt.Constraint;
 import org.mapleir.ir.cfg.builder.ssaopt.ConstraintUtil;
@@ -103,13 +103,37 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 	}
 	
 	private void splitRanges() {
+		for(ExceptionRange<BasicBlock> er : builder.graph.getRanges()) {
+			handlers.add(er.getHandler());
+		}
+		splitRanges(builder, liveness, order);
+		List<BasicBlock> dfsPreorder = SimpleDfs.preorder(builder.graph, builder.head);
+		assert(dfsPreorder.size() == builder.graph.size());
+		
+		int po = 0;
+		for(BasicBlock b : dfsPreorder) {
+			insertion.put(b, 0);
+			process.put(b, 0);
+			preorder.put(b, po++);
+		}
+	}
+
+	/**
+	 * Splits the blocks protected by exception ranges before the stores to
+	 * the locals that are live into their handlers, so that the values that
+	 * flow into a handler are the ones at the end of its predecessors, and
+	 * relabels the graph.
+	 * 
+	 * @param order The order of the blocks to relabel the graph with. The
+	 * new blocks are placed before the blocks they were split from.
+	 */
+	static void splitRanges(ControlFlowGraphBuilder builder, Liveness<BasicBlock> liveness, List<BasicBlock> order) {
 		// produce cleaner cfg
-		List<BasicBlock> order = new ArrayList<>(builder.graph.verticesInOrder());
+		order = new ArrayList<>(order);
 		NullPermeableHashMap<BasicBlock, Set<Local>> splits = new NullPermeableHashMap<>(HashSet::new);
 		
 		for(ExceptionRange<BasicBlock> er : builder.graph.getRanges()) {
 			BasicBlock h = er.getHandler();
-			handlers.add(h);
 			
 			Set<Local> ls = new HashSet<>(liveness.in(h));
 			for(BasicBlock b : er.getNodes()) {
@@ -133,7 +157,7 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 					CopyVarStmt copy = (CopyVarStmt) stmt;
 					VarExpr v = copy.getVariable();
 					if (ls.contains(v.getLocal())) {
-						BasicBlock n = splitBlock(b, i);
+						BasicBlock n = splitBlock(builder, b, i);
 						order.add(order.indexOf(b), n);
 						i = 0;
 						checkSplit = false;
@@ -155,18 +179,9 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 		}
 		
 		builder.graph.relabel(order);
-		List<BasicBlock> dfsPreorder = SimpleDfs.preorder(builder.graph, builder.head);
-		assert(dfsPreorder.size() == order.size());
-		
-		int po = 0;
-		for(BasicBlock b : dfsPreorder) {
-			insertion.put(b, 0);
-			process.put(b, 0);
-			preorder.put(b, po++);
-		}
 	}
 
-	private BasicBlock splitBlock(BasicBlock b, int to) {
+	private static BasicBlock splitBlock(ControlFlowGraphBuilder builder, BasicBlock b, int to) {
 		// System.out.println("Splitting block " + b.getDisplayName() + " upto " + to);
 		BasicBlock newBlock = CFGUtils.splitBlock(builder.graph, b, to, true);
 
@@ -1362,9 +1377,35 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 	}
 	
 	private void makeLiveness() {
-		SSABlockLivenessAnalyser liveness = new SSABlockLivenessAnalyser(builder.graph);
-		liveness.compute();
-		this.liveness = liveness;
+		liveness = builder.graph.getAnalyses().get(Analysis.LIVENESS);
+	}
+	
+	private void renameGeneral() {
+		makeLiveness();
+		splitRanges();
+		makeLiveness();
+
+		doms = builder.graph.getDominators(builder.head);
+		insertPhis();
+		rename();
+	}
+	
+	/* a chain of blocks joined by immediate edges has no join points and so
+	 * needs no phis, dominators, liveness or range splitting. */
+	private void renameStraightLine() {
+		for(Local l : builder.locals) {
+			counters.put(l, 0);
+			stacks.put(l, new Stack<>());
+		}
+		
+		List<BasicBlock> chain = new ArrayList<>();
+		for(BasicBlock b = builder.head; b != null; b = builder.graph.getImmediate(b)) {
+			searchImpl(b);
+			chain.add(b);
+		}
+		for(int i=chain.size() - 1; i >= 0; i--) {
+			unstackDefs(chain.get(i));
+		}
 	}
 	
 	@Override
@@ -1377,13 +1418,11 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 		order.add(0, builder.head);
 		builder.graph.relabel(order);
 		
-		makeLiveness();
-		splitRanges();
-		makeLiveness();
-		
-		doms = new LT79Dom<>(builder.graph, builder.head);
-		insertPhis();
-		rename();
+		if(builder.graph.isStraightLine()) {
+			renameStraightLine();
+		} else {
+			renameGeneral();
+		}
 		
 		if(optimise) {
 			resolveShadowedLocals();
@@ -1396,5 +1435,9 @@ public class SSAGenPass extends ControlFlowGraphBuilder.BuilderPass {
 				i += pruneStatements();
 			} while(i > 0);
 		}
+
+		// the pre-ssa liveness is of no further use
+		liveness = null;
+		builder.graph.getAnalyses().invalidate(Analysis.LIVENESS);
 	}
 }
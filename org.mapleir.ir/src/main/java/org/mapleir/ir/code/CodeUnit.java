@@ -1,6 +1,7 @@
 package org.mapleir.ir.code;
 
 import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
 import org.mapleir.ir.code.expr.PhiExpr;
 import org.mapleir.ir.codegen.BytecodeFrontend;
 import org.mapleir.stdlib.collections.graph.FastGraphVertex;
@@ -9,9 +10,11 @@ import org.mapleir.stdlib.util.TabbedStringWriter;
 import org.objectweb.asm.MethodVisitor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is the shared base between the {@link Stmt} and {@link Expr} classes,
@@ -36,13 +39,22 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 	public static final int FLAG_STMT = 0x01;
 
 	/**
-	 * Global unit identifier counter.
+	 * Global unit identifier counter. Atomic as graphs may be built on
+	 * several threads at once.
 	 */
-	private static int G_ID_COUNTER = 1;
+	private static final AtomicInteger G_ID_COUNTER = new AtomicInteger(1);
 	/**
-	 * Unique global unit identifier.
+	 * Unique global unit identifier. Stable for the lifetime of the unit and
+	 * used for equality, so that units of different methods can be mixed in
+	 * a collection, e.g. by the call graph.
 	 */
-	protected final int id = G_ID_COUNTER++;
+	protected final int id = G_ID_COUNTER.getAndIncrement();
+	/**
+	 * Identifier of this unit within the {@link ControlFlowGraph} that it is
+	 * in, allocated densely from zero by the graph when the unit is added to
+	 * one of its blocks. -1 while the unit isn't in a graph.
+	 */
+	private int localId = -1;
 	/**
 	 * Opcode to encode the sort of instruction this unit is.
 	 */
@@ -60,7 +72,15 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 	private BasicBlock block;
 
 	/**
-	 * The children of this unit.
+	 * Shared by all units that have no children yet. Never written to, as
+	 * the children array is grown before the first write.
+	 */
+	private static final Expr[] NO_CHILDREN = new Expr[0];
+
+	/**
+	 * The children of this unit. Sized to the arity of the opcode, or to the
+	 * number of operands for units that take a variable number of them, and
+	 * only grown if a child is written past the end.
 	 */
 	public Expr[] children;
 	/**
@@ -69,8 +89,51 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 	private int ptr;
 
 	public CodeUnit(int opcode) {
+		this(opcode, arity(opcode));
+	}
+
+	/**
+	 * @param opcode The opcode of the unit.
+	 * @param capacity The number of children to make room for.
+	 */
+	protected CodeUnit(int opcode, int capacity) {
 		this.opcode = opcode;
-		children = new Expr[8];
+		children = capacity == 0 ? NO_CHILDREN : new Expr[capacity];
+	}
+
+	/**
+	 * Gets the most number of children that a unit with the given opcode can
+	 * have, or 0 if it takes a variable number of them, like invocations.
+	 * 
+	 * @param opcode The opcode of the unit.
+	 * @return The number of children.
+	 */
+	public static int arity(int opcode) {
+		switch(opcode) {
+			case ARRAY_STORE:
+				return 3;
+			case FIELD_STORE:
+			case ARRAY_LOAD:
+			case ARITHMETIC:
+			case COND_JUMP:
+			case COMPARE:
+				return 2;
+			case LOCAL_STORE:
+			case PHI_STORE:
+			case FIELD_LOAD:
+			case POP:
+			case RETURN:
+			case NEGATE:
+			case SWITCH_JUMP:
+			case ARRAY_LEN:
+			case CAST:
+			case INSTANCEOF:
+			case THROW:
+			case MONITOR:
+				return 1;
+			default:
+				return 0;
+		}
 	}
 
 	protected void setFlag(int flag, boolean val) {
@@ -85,11 +148,25 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 		return ((flags & f) != 0);
 	}
 
+	/**
+	 * @return The global identifier of this unit.
+	 */
 	@Override
 	public int getNumericId() {
 		return id;
 	}
 
+	/**
+	 * Gets the identifier of this unit in its graph. These are dense, i.e.
+	 * less than {@link ControlFlowGraph#getUnitIdCount()}, and so can index
+	 * arrays and bitsets that are local to one method.
+	 * 
+	 * @return The identifier or -1 if this unit is not in a graph.
+	 */
+	public int getLocalId() {
+		return localId;
+	}
+
 	@Override
 	public String getDisplayName() {
 		return Integer.toString(id);
@@ -112,7 +189,23 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 		return block;
 	}
 
+	/**
+	 * Notifies the graph containing this unit, if any, that the unit has been
+	 * modified. Subclasses call this from setters for state that isn't stored
+	 * in the children array.
+	 */
+	protected void markDirty() {
+		if(block != null) {
+			block.getGraph().markDirty();
+		}
+	}
+
 	public void setBlock(BasicBlock block) {
+		if(block == null) {
+			localId = -1;
+		} else if(localId == -1 || this.block == null || this.block.getGraph() != block.getGraph()) {
+			localId = block.getGraph().makeUnitId();
+		}
 		this.block = block;
 		
 		// TODO: may invalidate the statement if block is null
@@ -160,20 +253,11 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 		return children.length;
 	}
 
-	protected boolean shouldExpand() {
-		double max = children.length * 0.50;
-		return (double) size() > max;
-	}
-
-	protected void expand() {
-		if (children.length >= Integer.MAX_VALUE)
-			throw new UnsupportedOperationException();
-		long len = children.length * 2;
-		if (len > Integer.MAX_VALUE)
-			len = Integer.MAX_VALUE;
-		Expr[] newArray = new Expr[(int) len];
-		System.arraycopy(children, 0, newArray, 0, children.length);
-		children = newArray;
+	/* valid indices are those of the children array up to the first empty
+	 * slot, which may be just past the end of the array. */
+	private void checkIndex(int index) {
+		if (index < 0 || index > children.length || (index > 0 && children[index - 1] == null))
+			throw new ArrayIndexOutOfBoundsException(String.format("%s, ptr=%d, len=%d, addr=%d", this.getClass().getSimpleName(), ptr, children.length, index));
 	}
 
 	public int indexOf(Expr s) {
@@ -192,9 +276,8 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 	 * @return The child {@link Expr}.
 	 */
 	public Expr read(int newPtr) {
-		if (newPtr < 0 || newPtr >= children.length || (newPtr > 0 && children[newPtr - 1] == null))
-			throw new ArrayIndexOutOfBoundsException(String.format("%s, ptr=%d, len=%d, addr=%d", this.getClass().getSimpleName(), ptr, children.length, newPtr));
-		return children[newPtr];
+		checkIndex(newPtr);
+		return newPtr < children.length ? children[newPtr] : null;
 	}
 
 	/**
@@ -213,12 +296,8 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 	 * @throws ArrayIndexOutOfBoundsException if the index is 
 	 */
 	public Expr writeAt(Expr s, int index) {
-		if (index < 0 || index >= children.length 
-				|| (index > 0 && children[index - 1] == null)) {
-			throw new ArrayIndexOutOfBoundsException(String.format("ptr=%d, "
-					+ "len=%d, addr=%d", ptr, children.length, index));
-		}
-		Expr prev = children[index];
+		checkIndex(index);
+		Expr prev = index < children.length ? children[index] : null;
 		/* check this before checking if there is a parent for 's' as the
 		 * parent may be this node. */
 		if(prev == s) {
@@ -230,8 +309,11 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 					+ "to %s (new: %s)", s, s.parent, getRootParent0()));
 		}
 		
-		if(shouldExpand()) {
-			expand();
+		if(index == children.length) {
+			/* only happens for units that take a variable number of
+			 * children, grow by one slot at a time as there are rarely more
+			 * than a few. */
+			children = Arrays.copyOf(children, index + 1);
 		}
 		
 		if(prev != null) {
@@ -242,13 +324,13 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 			s.setParent(this);
 		}
 		onChildUpdated(index);
+		markDirty();
 		return prev;
 	}
 
 	public void deleteAt(int _ptr) {
-		if (_ptr < 0 || _ptr >= children.length || (_ptr > 0 && children[_ptr - 1] == null))
-			throw new ArrayIndexOutOfBoundsException(String.format("ptr=%d, len=%d, addr=%d", ptr, children.length, _ptr));
-		if (children[_ptr] == null)
+		checkIndex(_ptr);
+		if (_ptr == children.length || children[_ptr] == null)
 			throw new UnsupportedOperationException("No statement at " + _ptr);
 
 		if ((_ptr + 1) < children.length && children[_ptr + 1] == null) {
@@ -310,8 +392,7 @@ public abstract class CodeUnit implements FastGraphVertex, Opcode {
 	}
 
 	public void setChildPointer(int _ptr) {
-		if (_ptr < 0 || _ptr >= children.length || (_ptr > 0 && children[_ptr - 1] == null))
-			throw new ArrayIndexOutOfBoundsException(String.format("ptr=%d, len=%d, addr=%d", ptr, children.length, _ptr));
+		checkIndex(_ptr);
 		ptr = _ptr;
 	}
 
@@ -38,6 +38,10 @@ public abstract class Expr extends CodeUnit {
 		super(opcode);
 	}
 	
+	protected Expr(int opcode, int capacity) {
+		super(opcode, capacity);
+	}
+	
 	@Override
 	public abstract void onChildUpdated(int ptr);
 	
@@ -29,6 +29,7 @@ public class AllocObjectExpr extends Expr {
 	
 	public void setType(Type type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
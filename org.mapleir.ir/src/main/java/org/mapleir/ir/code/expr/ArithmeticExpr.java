@@ -131,6 +131,7 @@ public class ArithmeticExpr extends Expr {
 
 	public void setOperator(Operator operator) {
 		this.operator = operator;
+		markDirty();
 	}
 
 	@Override
@@ -44,6 +44,7 @@ public class ArrayLoadExpr extends Expr {
 
 	public void setArrayType(ArrayType type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
@@ -40,6 +40,7 @@ public class CastExpr extends Expr {
 
 	public void setType(Type type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
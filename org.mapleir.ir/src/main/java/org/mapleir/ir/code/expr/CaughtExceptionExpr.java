@@ -33,6 +33,7 @@ public class CaughtExceptionExpr extends Expr {
 	
 	public void setType(Type type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
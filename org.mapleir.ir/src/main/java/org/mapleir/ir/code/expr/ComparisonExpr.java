@@ -70,6 +70,7 @@ public class ComparisonExpr extends Expr {
 
 	public void setType(ValueComparisonType type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
@@ -59,6 +59,7 @@ public class ConstantExpr extends Expr {
 	
 	public void setConstant(Object o) {
 		cst = o;
+		markDirty();
 	}
 
 	@Override
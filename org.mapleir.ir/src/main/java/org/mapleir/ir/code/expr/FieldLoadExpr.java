@@ -44,6 +44,7 @@ public class FieldLoadExpr extends Expr implements IUsesJavaDesc {
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		markDirty();
 	}
 
 	@Override
@@ -53,6 +54,7 @@ public class FieldLoadExpr extends Expr implements IUsesJavaDesc {
 
 	public void setName(String name) {
 		this.name = name;
+		markDirty();
 	}
 
 	@Override
@@ -62,6 +64,7 @@ public class FieldLoadExpr extends Expr implements IUsesJavaDesc {
 
 	public void setDesc(String desc) {
 		this.desc = desc;
+		markDirty();
 	}
 
 	@Override
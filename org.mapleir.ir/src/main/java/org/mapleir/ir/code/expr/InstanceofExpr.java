@@ -43,6 +43,7 @@ public class InstanceofExpr extends Expr {
 	
 	public void setCheckType(Type type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
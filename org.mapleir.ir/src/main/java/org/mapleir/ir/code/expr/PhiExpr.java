@@ -44,10 +44,12 @@ public class PhiExpr extends Expr {
 	
 	public void setArgument(BasicBlock b, Expr e) {
 		arguments.put(b, e);
+		markDirty();
 	}
 	
 	public void removeArgument(BasicBlock b) {
 		arguments.remove(b);
+		markDirty();
 	}
 	
 	@Override
@@ -71,6 +73,7 @@ public class PhiExpr extends Expr {
 	
 	public void setType(Type type) {
 		this.type = type;
+		markDirty();
 	}
 	
 	protected char getPhiType() {
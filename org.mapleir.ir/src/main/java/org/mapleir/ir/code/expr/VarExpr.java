@@ -30,6 +30,7 @@ public class VarExpr extends Expr {
 	
 	public void setLocal(Local local) {
 		this.local = local;
+		markDirty();
 	}
 
 	@Override
@@ -39,6 +40,7 @@ public class VarExpr extends Expr {
 	
 	public void setType(Type type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
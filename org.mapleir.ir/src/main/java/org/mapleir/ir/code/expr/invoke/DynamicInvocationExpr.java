@@ -71,6 +71,7 @@ public class DynamicInvocationExpr extends InvocationExpr {
 
 	public void setBoundName(String boundName) {
 		this.boundName = boundName;
+		markDirty();
 	}
 
 	/**
@@ -91,6 +92,7 @@ public class DynamicInvocationExpr extends InvocationExpr {
 
 	public void setBootstrapArgs(Object[] bootstrapArgs) {
 		this.bootstrapArgs = bootstrapArgs;
+		markDirty();
 	}
 
 	// Equivalent to getOwner(), but included for clarity
@@ -22,7 +22,7 @@ public class InitialisedObjectExpr extends Invocation {
 	private Expr[] args;
 	
 	public InitialisedObjectExpr(String owner, String desc, Expr[] args) {
-		super(INIT_OBJ);
+		super(INIT_OBJ, args.length);
 		this.owner = owner;
 		this.desc = desc;
 		this.args = args;
@@ -38,6 +38,7 @@ public class InitialisedObjectExpr extends Invocation {
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		markDirty();
 	}
 
 	@Override
@@ -47,6 +48,7 @@ public class InitialisedObjectExpr extends Invocation {
 
 	public void setDesc(String desc) {
 		this.desc = desc;
+		markDirty();
 	}
 
 	public Expr[] getArgumentExpressions() {
@@ -21,6 +21,10 @@ public abstract class Invocation extends Expr {
 	public Invocation(int opcode) {
 		super(opcode);
 	}
+	
+	protected Invocation(int opcode, int capacity) {
+		super(opcode, capacity);
+	}
 
 	public abstract boolean isStatic();
 	
@@ -20,7 +20,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 	private String desc;
 
 	public InvocationExpr(CallType callType, Expr[] args, String owner, String name, String desc) {
-		super(INVOKE);
+		super(INVOKE, args.length);
 		
 		this.callType = callType;
 		this.args = args;
@@ -39,6 +39,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setCallType(CallType callType) {
 		this.callType = callType;
+		markDirty();
 	}
 
 	@Override
@@ -48,6 +49,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		markDirty();
 	}
 
 	@Override
@@ -57,6 +59,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setName(String name) {
 		this.name = name;
+		markDirty();
 	}
 
 	@Override
@@ -66,6 +69,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setDesc(String desc) {
 		this.desc = desc;
+		markDirty();
 	}
 
 	protected Expr[] copyArgs() {
@@ -209,6 +213,7 @@ public abstract class InvocationExpr extends Invocation implements IUsesJavaDesc
 
 	public void setArgumentExprs(Expr[] args) {
 		this.args = args;
+		markDirty();
 	}
 
 	// @Override
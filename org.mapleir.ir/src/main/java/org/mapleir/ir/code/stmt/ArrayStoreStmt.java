@@ -56,6 +56,7 @@ public class ArrayStoreStmt extends Stmt {
 
 	public void setArrayType(ArrayType type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
@@ -92,6 +92,7 @@ public class ConditionalJumpStmt extends Stmt {
 
 	public void setTrueSuccessor(BasicBlock trueSuccessor) {
 		this.trueSuccessor = trueSuccessor;
+		markDirty();
 	}
 
 	public ComparisonType getComparisonType() {
@@ -100,6 +101,7 @@ public class ConditionalJumpStmt extends Stmt {
 
 	public void setType(ComparisonType type) {
 		this.type = type;
+		markDirty();
 	}
 
 	@Override
@@ -68,6 +68,7 @@ public class FieldStoreStmt extends Stmt implements IUsesJavaDesc {
 
 	public void setOwner(String owner) {
 		this.owner = owner;
+		markDirty();
 	}
 
 	public String getName() {
@@ -76,6 +77,7 @@ public class FieldStoreStmt extends Stmt implements IUsesJavaDesc {
 
 	public void setName(String name) {
 		this.name = name;
+		markDirty();
 	}
 
 	public String getDesc() {
@@ -84,6 +86,7 @@ public class FieldStoreStmt extends Stmt implements IUsesJavaDesc {
 
 	public void setDesc(String desc) {
 		this.desc = desc;
+		markDirty();
 	}
 
 	@Override
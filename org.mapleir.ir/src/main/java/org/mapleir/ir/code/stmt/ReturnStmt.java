@@ -31,6 +31,7 @@ public class ReturnStmt extends Stmt {
 
 	public void setType(Type type) {
 		this.type = type;
+		markDirty();
 	}
 
 	public Expr getExpression() {
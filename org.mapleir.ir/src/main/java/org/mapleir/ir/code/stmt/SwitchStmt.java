@@ -41,6 +41,7 @@ public class SwitchStmt extends Stmt {
 
 	public void setTargets(LinkedHashMap<Integer, BasicBlock> targets) {
 		this.targets = targets;
+		markDirty();
 	}
 
 	public BasicBlock getDefaultTarget() {
@@ -49,6 +50,7 @@ public class SwitchStmt extends Stmt {
 
 	public void setDefaultTarget(BasicBlock defaultTarget) {
 		this.defaultTarget = defaultTarget;
+		markDirty();
 	}
 
 	@Override
@@ -23,6 +23,7 @@ public class UnconditionalJumpStmt extends Stmt {
 	
 	public void setTarget(BasicBlock b) {
 		target = b;
+		markDirty();
 	}
 
 	@Override
@@ -82,6 +82,7 @@ public abstract class AbstractCopyStmt extends Stmt {
 		if(synthetic) {
 			expression = var;
 		}
+		markDirty();
 	}
 	
 	public Expr getExpression() {
@@ -55,13 +55,14 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 		}
 
 		// Linearize
-		linearize();
+		order = computeOrder(cfg);
+		if (!cfg.isStraightLine()) {
+			// Fix edges
+			naturalise();
 
-		// Fix edges
-		naturalise();
-
-		// Sanity check linearization
-		verifyOrdering();
+			// Sanity check linearization
+			verifyOrdering();
+		}
 
 		// Dump code
 		for (BasicBlock b : order) {
@@ -84,7 +85,28 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 		m.node.visitEnd();
 	}
 	
-	private void linearize() {
+	/**
+	 * Computes the order that {@link #dump()} writes the blocks of a graph in,
+	 * starting with the entry. The order only depends on the blocks and edges
+	 * of the graph, so it can be computed ahead of the dump, e.g. to allocate
+	 * the locals over it.
+	 *
+	 * @param cfg The graph.
+	 * @return The blocks in code order.
+	 */
+	public static IndexedList<BasicBlock> computeOrder(ControlFlowGraph cfg) {
+		if (cfg.isStraightLine()) {
+			// The blocks are already in order and there are no edges to fix
+			IndexedList<BasicBlock> order = new IndexedList<>();
+			BasicBlock b = cfg.getEntries().iterator().next();
+			for (; b != null; b = cfg.getImmediate(b))
+				order.add(b);
+			return order;
+		}
+		return linearize(cfg);
+	}
+
+	private static IndexedList<BasicBlock> linearize(ControlFlowGraph cfg) {
 		if (cfg.getEntries().size() != 1)
 			throw new IllegalStateException("CFG doesn't have exactly 1 entry");
 		BasicBlock entry = cfg.getEntries().iterator().next();
@@ -162,14 +184,92 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 			}
 		}
 		
-		// Linearize & flatten
-		order = new IndexedList<>();
+		// Linearize
 		Set<BlockBundle> bundlesSet = new HashSet<>(bundles.values()); // for efficiency
-		ControlFlowGraphDumper.linearize(bundlesSet, bundleGraph, entryBundle).forEach(order::addAll);
+		Map<BlockBundle, Integer> depths = new HashMap<>();
+		List<BlockBundle> sccOrder = ControlFlowGraphDumper.linearize(bundlesSet, bundleGraph, entryBundle, depths, 0);
+		
+		// Chain up to save jumps & flatten
+		IndexedList<BasicBlock> order = new IndexedList<>();
+		layout(cfg, sccOrder, bundles, entryBundle, depths).forEach(order::addAll);
+		return order;
+	}
+	
+	/**
+	 * Places the bundles so that as many gotos as possible jump to the block
+	 * right after them and can be dropped, like the bottom-up positioning of
+	 * Pettis and Hansen. A goto at the end of a bundle to the start of
+	 * another lets the two be chained together. Without a profile, gotos in
+	 * more deeply nested loops are assumed to be taken more often and are
+	 * chained first, then the rest in the SCC order. The chains are placed at
+	 * the position of their first bundle in that order, after the chain that
+	 * starts with the entry. Bundles are never split, so the exception ranges
+	 * stay as contiguous as they were.
+	 */
+	private static List<BlockBundle> layout(ControlFlowGraph cfg, List<BlockBundle> sccOrder,
+			Map<BasicBlock, BlockBundle> bundles, BlockBundle entryBundle, Map<BlockBundle, Integer> depths) {
+		Map<BlockBundle, Integer> ranks = new HashMap<>();
+		for (BlockBundle bundle : sccOrder)
+			ranks.put(bundle, ranks.size());
+		
+		// Find the gotos that could fall through
+		List<FlowEdge<BasicBlock>> candidates = new ArrayList<>();
+		for (BlockBundle bundle : sccOrder) {
+			for (FlowEdge<BasicBlock> e : cfg.getEdges(bundle.getLast())) {
+				BlockBundle dst = bundles.get(e.dst());
+				if (e.getType() == FlowEdges.UNCOND && dst != bundle && dst != entryBundle && dst.getFirst() == e.dst())
+					candidates.add(e);
+			}
+		}
+		candidates.sort(Comparator.<FlowEdge<BasicBlock>>comparingInt(
+				e -> -Math.min(depths.get(bundles.get(e.src())), depths.get(bundles.get(e.dst()))))
+				.thenComparingInt(e -> ranks.get(bundles.get(e.src()))));
+		
+		// Chain greedily, the tail of one chain to the head of another
+		Map<BlockBundle, BlockBundle> next = new HashMap<>();
+		Map<BlockBundle, BlockBundle> prev = new HashMap<>();
+		Map<BlockBundle, BlockBundle> heads = new HashMap<>(); // by tail
+		Map<BlockBundle, BlockBundle> tails = new HashMap<>(); // by head
+		for (FlowEdge<BasicBlock> e : candidates) {
+			BlockBundle src = bundles.get(e.src()), dst = bundles.get(e.dst());
+			if (next.containsKey(src) || prev.containsKey(dst))
+				continue;
+			BlockBundle head = heads.getOrDefault(src, src);
+			BlockBundle tail = tails.getOrDefault(dst, dst);
+			if (head == dst) // Same chain
+				continue;
+			next.put(src, dst);
+			prev.put(dst, src);
+			heads.remove(src);
+			tails.remove(dst);
+			heads.put(tail, head);
+			tails.put(head, tail);
+		}
+		
+		// Place the chains
+		List<BlockBundle> order = new ArrayList<>();
+		Set<BlockBundle> placed = new HashSet<>();
+		for (BlockBundle b = entryBundle; b != null; b = next.get(b)) {
+			order.add(b);
+			placed.add(b);
+		}
+		for (BlockBundle bundle : sccOrder) {
+			if (placed.contains(bundle))
+				continue;
+			BlockBundle b = bundle;
+			while (prev.containsKey(b))
+				b = prev.get(b);
+			for (; b != null; b = next.get(b)) {
+				order.add(b);
+				placed.add(b);
+			}
+		}
+		return order;
 	}
 	
-	// Recursively apply Tarjan's SCC algorithm
-	private static List<BlockBundle> linearize(Collection<BlockBundle> bundles, BundleGraph fullGraph, BlockBundle entryBundle) {
+	// Recursively apply Tarjan's SCC algorithm, recording how deeply each bundle is nested in loops
+	private static List<BlockBundle> linearize(Collection<BlockBundle> bundles, BundleGraph fullGraph, BlockBundle entryBundle,
+			Map<BlockBundle, Integer> depths, int depth) {
 		BundleGraph subgraph = GraphUtils.inducedSubgraph(fullGraph, bundles, BundleGraph::new);
 
 		// Experimental: kill backedges
@@ -189,10 +289,12 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 		// Flatten
 		List<BlockBundle> order = new ArrayList<>();
 		List<List<BlockBundle>> components = sccComputor.getComponents();
-		if (components.size() == 1)
+		if (components.size() == 1) {
 			order.addAll(components.get(0));
-		else for (List<BlockBundle> scc : components) // Recurse
-			order.addAll(linearize(scc, subgraph, chooseEntry(subgraph, scc)));
+			for (BlockBundle b : components.get(0))
+				depths.put(b, depth);
+		} else for (List<BlockBundle> scc : components) // Recurse
+			order.addAll(linearize(scc, subgraph, chooseEntry(subgraph, scc), depths, scc.size() > 1 ? depth + 1 : depth));
 		return order;
 	}
 	
@@ -359,6 +461,10 @@ public class ControlFlowGraphDumper implements BytecodeFrontend {
 			return first;
 		}
 		
+		private BasicBlock getLast() {
+			return get(size() - 1);
+		}
+		
 		@Override
 		public String getDisplayName() {
 			return getFirst().getDisplayName();
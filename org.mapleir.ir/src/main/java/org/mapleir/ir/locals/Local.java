@@ -8,6 +8,8 @@ public abstract class Local implements Comparable<Local> {
 	private final boolean stack;
 	private int index;
 	private boolean tempLocal;
+	/* dense id given by the pool that created this local, for bitsets. */
+	private int poolId = -1;
 	
 	public Local(int index) {
 		this(index, false);
@@ -23,6 +25,19 @@ public abstract class Local implements Comparable<Local> {
 	public boolean isStack() {
 		return stack;
 	}
+	
+	/**
+	 * @return The id of this local in the {@link LocalsPool} that created it,
+	 * which are given out densely from zero, or -1 if it wasn't created by a
+	 * pool.
+	 */
+	public int getPoolId() {
+		return poolId;
+	}
+	
+	void setPoolId(int poolId) {
+		this.poolId = poolId;
+	}
 
 	public int getIndex() {
 		return index;
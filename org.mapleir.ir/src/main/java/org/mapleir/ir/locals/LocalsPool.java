@@ -12,8 +12,8 @@ import org.mapleir.ir.code.stmt.copy.CopyVarStmt;
 import org.mapleir.ir.locals.impl.BasicLocal;
 import org.mapleir.ir.locals.impl.VersionedLocal;
 import org.mapleir.stdlib.collections.bitset.BitSetIndexer;
+import org.mapleir.stdlib.collections.bitset.DenseBitSetIndexer;
 import org.mapleir.stdlib.collections.bitset.GenericBitSet;
-import org.mapleir.stdlib.collections.bitset.IncrementalBitSetIndexer;
 import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 import org.mapleir.stdlib.collections.map.ValueCreator;
 import org.objectweb.asm.Type;
@@ -28,6 +28,7 @@ public abstract class LocalsPool implements ValueCreator<GenericBitSet<Local>> {
 	private final Map<BasicLocal, VersionedLocal> latest;
 	private final BitSetIndexer<Local> indexer;
 	private int maxLocals, maxStack;
+	private int localCount;
 
 	public final Map<VersionedLocal, AbstractCopyStmt> defs;
 	public final NullPermeableHashMap<VersionedLocal, Set<VarExpr>> uses;
@@ -35,7 +36,7 @@ public abstract class LocalsPool implements ValueCreator<GenericBitSet<Local>> {
 	public LocalsPool() {
 		cache = new HashMap<>();
 		latest = new HashMap<>();
-		indexer = new IncrementalBitSetIndexer<>();
+		indexer = new DenseBitSetIndexer<>(Local::getPoolId);
 		maxLocals = maxStack = 0;
 
 		defs = new HashMap<>();
@@ -113,6 +114,7 @@ public abstract class LocalsPool implements ValueCreator<GenericBitSet<Local>> {
 			return (VersionedLocal) cache.get(key);
 		} else {
 			VersionedLocal v = new VersionedLocal(index, subscript, isStack);
+			register(v);
 			cache.put(key, v);
 			
 			BasicLocal bl = get(index, isStack);
@@ -142,11 +144,16 @@ public abstract class LocalsPool implements ValueCreator<GenericBitSet<Local>> {
 			return (BasicLocal) cache.get(key);
 		} else {
 			BasicLocal v = new BasicLocal(index, isStack);
+			register(v);
 			cache.put(key, v);
 			return v;
 		}
 	}
 
+	private void register(Local l) {
+		l.setPoolId(localCount++);
+	}
+
 	public BasicLocal newLocal(int i, boolean isStack) {
 		while(true) {
 			String key = key(i, isStack);
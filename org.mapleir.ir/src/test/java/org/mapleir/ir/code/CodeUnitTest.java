@@ -1,5 +1,10 @@
 package org.mapleir.ir.code;
 
+import org.mapleir.ir.code.expr.ArithmeticExpr;
+import org.mapleir.ir.code.expr.ConstantExpr;
+import org.mapleir.ir.code.expr.invoke.InvocationExpr;
+import org.mapleir.ir.code.expr.invoke.StaticInvocationExpr;
+
 import junit.framework.TestCase;
 
 public class CodeUnitTest extends TestCase {
@@ -102,6 +107,37 @@ public class CodeUnitTest extends TestCase {
 		assertEquals(String.format("at index %d", idx), testExpr, stmt.read(idx));
 	}
 	
+	public void testCapacityMatchesArity() {
+		ConstantExpr c = new ConstantExpr(1);
+		assertEquals(0, c.capacity());
+		assertNull(c.read(0));
+		
+		ArithmeticExpr a = new ArithmeticExpr(new ConstantExpr(1), new ConstantExpr(2), ArithmeticExpr.Operator.ADD);
+		assertEquals(2, a.capacity());
+		assertEquals(2, a.size());
+		
+		Expr[] args = { new ConstantExpr(1), new ConstantExpr(2), new ConstantExpr(3) };
+		InvocationExpr invoke = new StaticInvocationExpr(args, "A", "m", "(III)V");
+		assertEquals(3, invoke.capacity());
+		assertEquals(4, invoke.deepSize());
+	}
+	
+	public void testGrowAndDelete() {
+		FakeStmt stmt = new FakeStmt();
+		assertEquals(0, stmt.capacity());
+		populateFakeCodeUnit(stmt, 0, 3);
+		assertEquals(3, stmt.capacity());
+		assertNull(stmt.read(3));
+		
+		Expr second = stmt.read(1);
+		Expr third = stmt.read(2);
+		stmt.deleteAt(1);
+		assertEquals(2, stmt.size());
+		assertSame(third, stmt.read(1));
+		assertNull(second.getParent());
+		assertSame(stmt, third.getParent());
+	}
+	
 	private static void populateFakeCodeUnit(CodeUnit u, int offset, int numChilds) {
 		for(int i=0; i < numChilds; i++) {
 			u.writeAt(new FakeExpr(), offset + i);
@@ -89,15 +89,17 @@ public class Boot {
 		// 	tracer.trace(m);
 		// }
 
+		List<MethodNode> methods = new ArrayList<>();
 		for (ClassNode cn : cxt.getApplication().iterate()) {
 //			 if (!cn.getName().equals("android/support/v4/media/session/MediaSessionCompat$MediaSessionImplApi18"))
 //			 	continue;
 			for (MethodNode m : cn.getMethods()) {
 //				 if (!m.getName().equals("setRccState"))
 //				 	continue;
-				cxt.getIRCache().getFor(m);
+				methods.add(m);
 			}
 		}
+		cxt.getIRCache().buildAll(methods, Runtime.getRuntime().availableProcessors());
 		section0("...generated " + cxt.getIRCache().size() + " cfgs in %fs.%n", "Preparing to transform.");
 
 		// do passes
@@ -26,7 +26,7 @@ public class CleanBoot {
             // if (mn.getName().equals("merge"))
             //     System.out.println(InsnListUtils.insnListToString(mn.node.instructions));
 
-            ControlFlowGraph cfg = irFactory.getNonNull(mn);
+            ControlFlowGraph cfg = irFactory.getFor(mn);
 
             // if (mn.getName().equals("merge"))
             //     System.out.println(cfg);
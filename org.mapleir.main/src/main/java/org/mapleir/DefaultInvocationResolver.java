@@ -2,6 +2,7 @@ package org.mapleir;
 
 import org.apache.log4j.Logger;
 import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.ClassTree;
 import org.mapleir.app.service.InvocationResolver;
 import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 import org.objectweb.asm.Opcodes;
@@ -12,6 +13,9 @@ import org.mapleir.asm.MethodNode;
 import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class DefaultInvocationResolver implements InvocationResolver {
 	
@@ -25,34 +29,177 @@ public class DefaultInvocationResolver implements InvocationResolver {
 	
 	private final ApplicationClassSource app;
 	
-	private final Map<ClassNode, Map<Selector, MethodNode>> concreteVTables = new HashMap<>();
-	private final Map<ClassNode, Map<Selector, MethodNode>> abstractVTables = new HashMap<>();
+	/* a class shares the table of its super class if it doesn't change
+	 * it, so the tables must not be modified after they are put here. */
+	private final Map<ClassNode, Map<Selector, MethodNode>> concreteVTables = new ConcurrentHashMap<>();
+	private final Map<ClassNode, Map<Selector, MethodNode>> abstractVTables = new ConcurrentHashMap<>();
 	
 	// TODO: migrate to cleaner system
 	private final HierarchyMethods hierarchyMethodsHelper;
 	
 	public DefaultInvocationResolver(ApplicationClassSource app) {
+		this(app, 1);
+	}
+	
+	/**
+	 * @param app The classes to resolve in.
+	 * @param parallelism The number of threads the vtables of the classes in
+	 * the class tree are built with.
+	 */
+	public DefaultInvocationResolver(ApplicationClassSource app, int parallelism) {
 		this.app = app;
 		hierarchyMethodsHelper = new HierarchyMethods(app);
 		
-		computeVTables();
+		long start = System.nanoTime();
+		computeVTables(parallelism);
 		
-		LOGGER.info(String.format("built vtables for %s classes", concreteVTables.size()));
+		LOGGER.info(String.format("built vtables for %s classes (%s distinct tables) in %dms", concreteVTables.size(),
+				getDistinctTableCount(), (System.nanoTime() - start) / 1_000_000L));
 	}
 	
 	protected boolean hasVisited(ClassNode c) {
 		return concreteVTables.containsKey(c) && abstractVTables.containsKey(c);
 	}
 	
-	private void computeVTables() {
-		for(ClassNode c : app.getClassTree().vertices()) {
-			if(app.getClassTree().getChildren(c).size() == 0) {
-				// also implies getAllChildren.size() == 0
-				computeVTable(c);
+	/**
+	 * @return The number of different concrete and abstract tables, which
+	 * is less than twice the number of classes as classes that don't
+	 * change the tables of their super class share them.
+	 */
+	public int getDistinctTableCount() {
+		Set<Map<Selector, MethodNode>> tables = Collections.newSetFromMap(new IdentityHashMap<>());
+		tables.addAll(concreteVTables.values());
+		tables.addAll(abstractVTables.values());
+		return tables.size();
+	}
+	
+	/* builds the tables of every class in the tree a level at a time, the
+	 * classes of a level only depend on the classes of the levels before
+	 * it and so are built in parallel. */
+	private void computeVTables(int parallelism) {
+		ClassTree tree = app.getClassTree();
+		ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		try {
+			for(List<ClassNode> level : tree.getIndex().getLevels()) {
+				/* find the parents on this thread, the tasks only read the
+				 * tables of the previous levels. */
+				List<ClassFrame> frames = new ArrayList<>(level.size());
+				for(ClassNode c : level) {
+					if(!hasVisited(c)) {
+						frames.add(new ClassFrame(c));
+					}
+				}
+				
+				if(pool == null || frames.size() <= 1) {
+					for(ClassFrame f : frames) {
+						buildVTable(f);
+					}
+				} else {
+					pool.invoke(new BuildTask(frames, 0, frames.size()));
+				}
+			}
+		} finally {
+			if(pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+	
+	private class ClassFrame {
+		final ClassNode c;
+		final ClassNode superKlass;
+		final List<ClassNode> interfaces;
+		
+		ClassFrame(ClassNode c) {
+			this.c = c;
+			/* if the super class is null it means we're at object and so
+			 * we don't even have to consider interfaces: as we stop
+			 * here */
+			if(c.node.superName != null) {
+				superKlass = app.findClassNode(c.node.superName);
+				interfaces = new ArrayList<>(c.node.interfaces.size());
+				for(String i : c.node.interfaces) {
+					interfaces.add(app.findClassNode(i));
+				}
+			} else {
+				superKlass = null;
+				interfaces = Collections.emptyList();
 			}
 		}
 	}
 	
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/* below this many classes a task builds its range directly. */
+		private static final int THRESHOLD = 8;
+		
+		private final List<ClassFrame> frames;
+		private final int start, end;
+		
+		BuildTask(List<ClassFrame> frames, int start, int end) {
+			this.frames = frames;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if((end - start) <= THRESHOLD) {
+				for(int i=start; i < end; i++) {
+					buildVTable(frames.get(i));
+				}
+			} else {
+				int mid = (start + end) >>> 1;
+				invokeAll(new BuildTask(frames, start, mid),
+						new BuildTask(frames, mid, end));
+			}
+		}
+	}
+	
+	/* a table that starts as the table of the super class and is only copied
+	 * when it is first changed. */
+	private static final class InheritedTable {
+		private Map<Selector, MethodNode> map;
+		private boolean shared;
+		
+		InheritedTable(Map<Selector, MethodNode> parent) {
+			map = parent;
+			shared = true;
+		}
+		
+		MethodNode get(Selector s) {
+			return map.get(s);
+		}
+		
+		boolean containsKey(Selector s) {
+			return map.containsKey(s);
+		}
+		
+		void put(Selector s, MethodNode m) {
+			if(map.get(s) != m) {
+				own().put(s, m);
+			}
+		}
+		
+		void remove(Selector s) {
+			if(map.containsKey(s)) {
+				own().remove(s);
+			}
+		}
+		
+		Map<Selector, MethodNode> toMap() {
+			return map;
+		}
+		
+		private Map<Selector, MethodNode> own() {
+			if(shared) {
+				map = new HashMap<>(map);
+				shared = false;
+			}
+			return map;
+		}
+	}
+	
 	static class CompFrame {
 		final ClassNode c;
 		final Map<Selector, MethodNode> thisMethodSet;
@@ -83,16 +230,19 @@ public class DefaultInvocationResolver implements InvocationResolver {
 		}
 		
 		/* ensure parents loaded */
-		ClassNode superKlass = null;
-		/* if the super class is null it means we're at object and so
-		 * we don't even have to consider interfaces: as we stop
-		 * here */
+		ClassFrame frame = new ClassFrame(c);
 		if(c.node.superName != null) {
-			computeVTable(superKlass = app.findClassNode(c.node.superName));
-			for(String i : c.node.interfaces) {
-				computeVTable(app.findClassNode(i));
+			computeVTable(frame.superKlass);
+			for(ClassNode i : frame.interfaces) {
+				computeVTable(i);
 			}
 		}
+		buildVTable(frame);
+	}
+	
+	private void buildVTable(ClassFrame frame) {
+		ClassNode c = frame.c;
+		ClassNode superKlass = frame.superKlass;
 
 		/* the general plan of attack here is:
 		 *  1. add our own methods.
@@ -142,8 +292,10 @@ public class DefaultInvocationResolver implements InvocationResolver {
 		 * for a given class while processing that class; the local
 		 * maps/vtable values are used but not the field
 		 * references. */
-		concreteVTables.put(c, thisMethodSet);
-		abstractVTables.put(c, thisAbstractSet);
+		if(superKlass == null) {
+			concreteVTables.put(c, thisMethodSet);
+			abstractVTables.put(c, thisAbstractSet);
+		}
 		
 		/* now we consider the super class which we have previously
 		 * completely resolved. now we have to propagate information
@@ -166,11 +318,10 @@ public class DefaultInvocationResolver implements InvocationResolver {
 				throw new IllegalStateException(String.format("Parent of %s, %s is not initialised", c, superKlass));
 			}
 
-			Map<Selector, MethodNode> globalCVT = new HashMap<>();
-			Map<Selector, MethodNode> globalAVT = new HashMap<>();
-			/* inherit all super class methods */
-			globalCVT.putAll(concreteVTables.get(superKlass));
-			globalAVT.putAll(abstractVTables.get(superKlass));
+			/* inherit all super class methods, the tables are only
+			 * copied if we change them. */
+			InheritedTable globalCVT = new InheritedTable(concreteVTables.get(superKlass));
+			InheritedTable globalAVT = new InheritedTable(abstractVTables.get(superKlass));
 			
 			assertIntersection(thisAbstractSet.entrySet(), thisMethodSet.entrySet(), Collections.emptySet());
 			/* (1) and (2) 
@@ -186,23 +337,24 @@ public class DefaultInvocationResolver implements InvocationResolver {
 			/* we shouldn't ever get merge errors from considering the
 			 * current class with it's super. (this can happen with
 			 * interfaces, however) */
-			assertIntersection(globalAVT.entrySet(), globalCVT.entrySet(), Collections.emptySet());
+			assertIntersection(globalAVT.toMap().entrySet(), globalCVT.toMap().entrySet(), Collections.emptySet());
 			
 			/* add our own declarations to the tables. this could possibly
 			 * override methods from the super class and we're happy
 			 * about this. */
-			globalCVT.putAll(thisMethodSet);
-			globalAVT.putAll(thisAbstractSet);
-			assertIntersection(globalAVT.entrySet(), globalCVT.entrySet(), Collections.emptySet());
-			
-			concreteVTables.put(c, globalCVT);
-			abstractVTables.put(c, globalAVT);
+			for(Entry<Selector, MethodNode> e : thisMethodSet.entrySet()) {
+				globalCVT.put(e.getKey(), e.getValue());
+			}
+			for(Entry<Selector, MethodNode> e : thisAbstractSet.entrySet()) {
+				globalAVT.put(e.getKey(), e.getValue());
+			}
+			assertIntersection(globalAVT.toMap().entrySet(), globalCVT.toMap().entrySet(), Collections.emptySet());
 			
 			if(debugLevel >= 3) {
 				LOGGER.debug(" globalCVT: ");
-				print(globalCVT);
+				print(globalCVT.toMap());
 				LOGGER.debug(" globalAVT: ");
-				print(globalAVT);
+				print(globalAVT.toMap());
 			}
 
 			NullPermeableHashMap<Selector, Set<MethodNode>> mergeMap = new NullPermeableHashMap<>(HashSet::new);
@@ -211,11 +363,10 @@ public class DefaultInvocationResolver implements InvocationResolver {
 				LOGGER.debug(" process interfaces:");
 			}
 			
-			for(String i : c.node.interfaces) {
+			for(ClassNode interfaceKlass : frame.interfaces) {
 				if(debugLevel >= 2) {
-					LOGGER.debug("  " + i);
+					LOGGER.debug("  " + interfaceKlass);
 				}
-				ClassNode interfaceKlass = app.findClassNode(i);
 				/* An abstract interface method cannot kill
 				 * a concrete class implementation of the method
 				 * from the super class. However, if the reaching
@@ -375,10 +526,6 @@ public class DefaultInvocationResolver implements InvocationResolver {
 					}
 				}
 				
-				/* delete from both so we can do a clean add after. */
-				globalAVT.remove(selector);
-				globalCVT.remove(selector);
-				
 				if(resolve == null && !Modifier.isAbstract(c.node.access)) {
 					throw new IllegalStateException(String.format("Miranda %s in non abstract class %s", conflictingMethods, c));
 				}
@@ -396,16 +543,23 @@ public class DefaultInvocationResolver implements InvocationResolver {
 					}
 				}
 				
+				/* remove from the other table and replace in the one it
+				 * belongs in. */
 				if(Modifier.isAbstract(resolve.node.access)) {
+					globalCVT.remove(selector);
 					globalAVT.put(selector, resolve);
 				} else {
+					globalAVT.remove(selector);
 					globalCVT.put(selector, resolve);
 				}
 			}
 			
-			assertIntersection(concreteVTables.get(c).entrySet(), abstractVTables.get(c).entrySet(), Collections.emptySet());
+			assertIntersection(globalCVT.toMap().entrySet(), globalAVT.toMap().entrySet(), Collections.emptySet());
 //			validateTables();
 			
+			concreteVTables.put(c, globalCVT.toMap());
+			abstractVTables.put(c, globalAVT.toMap());
+			
 			if(debugLevel >= 2) {
 				LOGGER.debug(" cvtable: ");
 				print(concreteVTables.get(c));
@@ -526,7 +680,7 @@ public class DefaultInvocationResolver implements InvocationResolver {
 	
 	private boolean isSuperOf(ClassNode subKlass, ClassNode superKlass) {
 		// return true iff n2 is a superclass or interface of n1
-		return app.getClassTree().getAllParents(subKlass).contains(superKlass);
+		return app.getClassTree().isSubtype(subKlass, superKlass);
 	}
 	
 	private void add(Map<Selector, MethodNode> map,
@@ -547,7 +701,11 @@ public class DefaultInvocationResolver implements InvocationResolver {
 			if(app.getClassTree().getChildren(receiver).size() > 0) {
 				throw new UnsupportedOperationException(String.format("No table for %s", receiver));
 			}
-			computeVTable(receiver);
+			/* classes loaded after the tables were built are done on
+			 * demand, one at a time. */
+			synchronized (this) {
+				computeVTable(receiver);
+			}
 
 		}
 
@@ -0,0 +1,106 @@
+package org.mapleir;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.function.Consumer;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.SreedharDestructor;
+import org.mapleir.ir.algorithms.TrollDestructor;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.topdank.byteengineer.commons.data.JarInfo;
+import org.topdank.byteio.in.SingleJarDownloader;
+
+/**
+ * Compares the time taken and the memory allocated by the out-of-SSA
+ * translations of {@link BoissinotDestructor}, {@link SreedharDestructor} and
+ * {@link TrollDestructor} on every method of a jar. The jar is read and the
+ * graphs are built again for every destructor since the translation modifies
+ * them, but only the translation itself is measured. Methods that a
+ * destructor fails on are counted and left out of its results.
+ *
+ * <p> Usage: {@code DestructorBenchmark <jar> [rounds]}
+ */
+public class DestructorBenchmark {
+
+	private static final String[] NAMES = { "BoissinotDestructor", "SreedharDestructor", "TrollDestructor" };
+	@SuppressWarnings("unchecked")
+	private static final Consumer<ControlFlowGraph>[] DESTRUCTORS = new Consumer[] {
+			(Consumer<ControlFlowGraph>) BoissinotDestructor::leaveSSA,
+			(Consumer<ControlFlowGraph>) SreedharDestructor::leaveSSA,
+			(Consumer<ControlFlowGraph>) TrollDestructor::leaveSSA,
+	};
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/* [destructor][time, bytes, methods, failures] */
+	private static long[][] results;
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Usage: DestructorBenchmark <jar> [rounds]");
+			System.exit(1);
+		}
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		File jar = new File(args[0]);
+
+		/* the first rounds warm up the jit. */
+		for(int r=0; r < rounds * 2; r++) {
+			if(r == rounds) {
+				results = new long[NAMES.length][4];
+			}
+			for(int d=0; d < NAMES.length; d++) {
+				run(jar, d);
+			}
+		}
+
+		System.out.printf("averages over %d rounds%n", rounds);
+		System.out.printf("%-22s %10s %10s %10s %10s%n", "", "methods", "failed", "ms", "MB");
+		for(int d=0; d < NAMES.length; d++) {
+			long[] res = results[d];
+			System.out.printf("%-22s %10d %10d %10.1f %10.1f%n", NAMES[d], res[2] / rounds, res[3] / rounds,
+					res[0] / (rounds * 1e6), res[1] / (rounds * 1024.0 * 1024.0));
+		}
+	}
+
+	private static void run(File jar, int d) throws Exception {
+		SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new JarInfo(jar));
+		dl.download();
+
+		long tid = Thread.currentThread().getId();
+		for(ClassNode cn : dl.getJarContents().getClassContents()) {
+			for(MethodNode m : cn.getMethods()) {
+				if(m.node.instructions.size() == 0) {
+					continue;
+				}
+				ControlFlowGraph cfg;
+				try {
+					cfg = ControlFlowGraphBuilder.build(m);
+				} catch(RuntimeException e) {
+					// not what we're measuring.
+					continue;
+				}
+
+				long bytes = THREADS.getThreadAllocatedBytes(tid);
+				long start = System.nanoTime();
+				try {
+					DESTRUCTORS[d].accept(cfg);
+				} catch(RuntimeException e) {
+					if(results != null) {
+						results[d][3]++;
+					}
+					continue;
+				}
+				if(results != null) {
+					results[d][0] += System.nanoTime() - start;
+					results[d][1] += THREADS.getThreadAllocatedBytes(tid) - bytes;
+					results[d][2]++;
+				}
+			}
+		}
+	}
+}
@@ -123,8 +123,8 @@ public class HierarchyMethods {
 		ClassNode cnB = app.findClassNode(b.getInternalName());
 		
 		ClassTree tree = app.getClassTree();
-		return tree.getAllParents(cnB).contains(cnA) ||
-               tree.getAllParents(cnA).contains(cnB);
+		return tree.isSubtype(cnB, cnA) ||
+               tree.isSubtype(cnA, cnB);
 	}
 	
 	/**
@@ -0,0 +1,111 @@
+package org.mapleir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Stmt;
+import org.topdank.byteengineer.commons.data.JarInfo;
+import org.topdank.byteio.in.SingleJarDownloader;
+
+/**
+ * Builds the IR of every method in a jar and reports how much heap it takes,
+ * along with the memory used by the children arrays of the code units
+ * compared to the old layout, in which every unit started with 8 slots that
+ * were doubled whenever more than half of them were used.
+ *
+ * <p> Usage: {@code IRFootprintBenchmark <jar>}
+ */
+public class IRFootprintBenchmark {
+
+	/* estimates for a 64 bit vm with compressed oops. */
+	private static final int ARRAY_HEADER = 16;
+	private static final int REF_SIZE = 4;
+
+	public static void main(String[] args) throws Exception {
+		if(args.length != 1) {
+			System.err.println("Usage: IRFootprintBenchmark <jar>");
+			System.exit(1);
+		}
+
+		SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new JarInfo(new File(args[0])));
+		dl.download();
+
+		long before = usedHeap();
+		long start = System.nanoTime();
+		List<ControlFlowGraph> graphs = new ArrayList<>();
+		int failed = 0;
+		for(ClassNode cn : dl.getJarContents().getClassContents()) {
+			for(MethodNode m : cn.getMethods()) {
+				if(m.node.instructions.size() == 0) {
+					continue;
+				}
+				try {
+					graphs.add(ControlFlowGraphBuilder.build(m));
+				} catch(RuntimeException e) {
+					failed++;
+				}
+			}
+		}
+		long buildTime = (System.nanoTime() - start) / 1_000_000L;
+		long after = usedHeap();
+
+		long units = 0, slots = 0, legacySlots = 0, bytes = 0, legacyBytes = 0;
+		for(ControlFlowGraph cfg : graphs) {
+			for(BasicBlock b : cfg.vertices()) {
+				for(Stmt stmt : b) {
+					for(CodeUnit u : stmt.enumerateExecutionOrder()) {
+						units++;
+						int cap = u.capacity();
+						int legacy = legacyCapacity(u.size());
+						slots += cap;
+						legacySlots += legacy;
+						/* units without children share one empty array. */
+						bytes += cap == 0 ? 0 : arrayBytes(cap);
+						legacyBytes += arrayBytes(legacy);
+					}
+				}
+			}
+		}
+
+		System.out.printf("Built %d graphs (%d failed) in %dms%n", graphs.size(), failed, buildTime);
+		System.out.printf("Retained heap: %.1f MB%n", (after - before) / (1024.0 * 1024.0));
+		System.out.printf("Code units: %d%n", units);
+		System.out.printf("Child slots: %d (was %d)%n", slots, legacySlots);
+		System.out.printf("Child arrays: %.1f MB (was %.1f MB, saved %.1f MB)%n", bytes / (1024.0 * 1024.0),
+				legacyBytes / (1024.0 * 1024.0), (legacyBytes - bytes) / (1024.0 * 1024.0));
+
+		/* keep the graphs reachable until they have been measured. */
+		if(graphs.isEmpty()) {
+			System.out.println("No methods with code.");
+		}
+	}
+
+	private static int legacyCapacity(int size) {
+		int cap = 8;
+		while(size > cap / 2) {
+			cap *= 2;
+		}
+		return cap;
+	}
+
+	private static long arrayBytes(int len) {
+		long size = ARRAY_HEADER + (long) len * REF_SIZE;
+		return (size + 7) & ~7L;
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime rt = Runtime.getRuntime();
+		for(int i=0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
@@ -0,0 +1,123 @@
+package org.mapleir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.algorithms.SSABlockLivenessAnalyser;
+import org.mapleir.ir.algorithms.SSADefUseMap;
+import org.mapleir.ir.algorithms.SparseLivenessAnalyser;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.locals.Local;
+import org.topdank.byteengineer.commons.data.JarInfo;
+import org.topdank.byteio.in.SingleJarDownloader;
+
+/**
+ * Compares the cost of answering liveness queries on the large methods of a
+ * jar with the fixed-point {@link SSABlockLivenessAnalyser} against the path
+ * exploring {@link SparseLivenessAnalyser}, with and without its cache. The
+ * queries ask whether each local is live in and out of the blocks that define
+ * and use it, which is what the interference checks of the SSA destructors
+ * look at. The times include computing the def-use chains or the fixed point.
+ *
+ * <p> Usage: {@code LivenessBenchmark <jar> [min blocks] [rounds]}
+ */
+public class LivenessBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1 || args.length > 3) {
+			System.err.println("Usage: LivenessBenchmark <jar> [min blocks] [rounds]");
+			System.exit(1);
+		}
+		int minBlocks = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new JarInfo(new File(args[0])));
+		dl.download();
+
+		List<ControlFlowGraph> graphs = new ArrayList<>();
+		for(ClassNode cn : dl.getJarContents().getClassContents()) {
+			for(MethodNode m : cn.getMethods()) {
+				if(m.node.instructions.size() == 0) {
+					continue;
+				}
+				try {
+					ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+					if(cfg.size() >= minBlocks) {
+						graphs.add(cfg);
+					}
+				} catch(RuntimeException e) {
+					// not what we're measuring.
+				}
+			}
+		}
+
+		long queries = 0;
+		for(ControlFlowGraph cfg : graphs) {
+			SSADefUseMap defuse = new SSADefUseMap(cfg);
+			defuse.compute();
+			for(Local l : defuse.defs.keySet()) {
+				queries += 2 * (defuse.uses.getNonNull(l).size() + 1);
+			}
+		}
+		System.out.printf("%d methods with at least %d blocks, %d queries per round%n", graphs.size(), minBlocks,
+				queries);
+
+		/* the first rounds warm up the jit. */
+		long[] times = new long[3];
+		int live = 0;
+		for(int r=0; r < rounds * 2; r++) {
+			boolean measure = r >= rounds;
+			for(int mode=0; mode < 3; mode++) {
+				long start = System.nanoTime();
+				for(ControlFlowGraph cfg : graphs) {
+					live += run(cfg, mode);
+				}
+				if(measure) {
+					times[mode] += System.nanoTime() - start;
+				}
+			}
+		}
+
+		System.out.printf("Fixed point:       %7.2f ms/round%n", times[0] / (rounds * 1e6));
+		System.out.printf("Sparse, cached:    %7.2f ms/round%n", times[1] / (rounds * 1e6));
+		System.out.printf("Sparse, uncached:  %7.2f ms/round%n", times[2] / (rounds * 1e6));
+		if(live == 0) {
+			System.out.println("Nothing was live.");
+		}
+	}
+
+	private static int run(ControlFlowGraph cfg, int mode) {
+		SSADefUseMap defuse = new SSADefUseMap(cfg);
+		defuse.compute();
+
+		int live = 0;
+		if(mode == 0) {
+			SSABlockLivenessAnalyser liveness = new SSABlockLivenessAnalyser(cfg);
+			liveness.compute();
+			for(Local l : defuse.defs.keySet()) {
+				live += query(liveness.in(defuse.defs.get(l)).contains(l), liveness.out(defuse.defs.get(l)).contains(l));
+				for(BasicBlock b : defuse.uses.getNonNull(l)) {
+					live += query(liveness.in(b).contains(l), liveness.out(b).contains(l));
+				}
+			}
+		} else {
+			SparseLivenessAnalyser liveness = new SparseLivenessAnalyser(cfg, defuse, mode == 1);
+			for(Local l : defuse.defs.keySet()) {
+				live += query(liveness.isLiveIn(defuse.defs.get(l), l), liveness.isLiveOut(defuse.defs.get(l), l));
+				for(BasicBlock b : defuse.uses.getNonNull(l)) {
+					live += query(liveness.isLiveIn(b, l), liveness.isLiveOut(b, l));
+				}
+			}
+		}
+		return live;
+	}
+
+	private static int query(boolean in, boolean out) {
+		return (in ? 1 : 0) + (out ? 1 : 0);
+	}
+}
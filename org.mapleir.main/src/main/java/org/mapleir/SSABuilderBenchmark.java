@@ -0,0 +1,126 @@
+package org.mapleir;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.builder.BraunControlFlowGraphBuilder;
+import org.mapleir.ir.cfg.builder.BraunSSAGenPass;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.cfg.builder.DeadBlocksPass;
+import org.mapleir.ir.cfg.builder.GenerationPass;
+import org.mapleir.ir.cfg.builder.NaturalisationPass;
+import org.mapleir.ir.cfg.builder.SSAGenPass;
+import org.topdank.byteengineer.commons.data.JarInfo;
+import org.topdank.byteio.in.SingleJarDownloader;
+
+/**
+ * Builds the IR of every method in a jar with the default
+ * {@link ControlFlowGraphBuilder}, with and without its optimisations, and
+ * with the {@link BraunControlFlowGraphBuilder}, and reports the time taken
+ * and the memory allocated by the whole build and by the pass that constructs
+ * SSA form. The jar is read again for every build since building a graph
+ * modifies its method.
+ *
+ * <p> Usage: {@code SSABuilderBenchmark <jar> [rounds]}
+ */
+public class SSABuilderBenchmark {
+
+	private static final String[] NAMES = { "SSAGenPass", "SSAGenPass (no optimise)", "BraunSSAGenPass" };
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/* [mode][total time, total bytes, ssa time, ssa bytes] */
+	private static long[][] results;
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Usage: SSABuilderBenchmark <jar> [rounds]");
+			System.exit(1);
+		}
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		File jar = new File(args[0]);
+
+		/* the first rounds warm up the jit. */
+		int methods = 0;
+		for(int r=0; r < rounds * 2; r++) {
+			if(r == rounds) {
+				results = new long[NAMES.length][4];
+			}
+			for(int mode=0; mode < NAMES.length; mode++) {
+				methods = run(jar, mode);
+			}
+		}
+
+		System.out.printf("%d methods, averages over %d rounds%n", methods, rounds);
+		System.out.printf("%-26s %10s %12s %10s %12s%n", "", "build ms", "build MB", "ssa ms", "ssa MB");
+		for(int mode=0; mode < NAMES.length; mode++) {
+			long[] res = results[mode];
+			System.out.printf("%-26s %10.1f %12.1f %10.1f %12.1f%n", NAMES[mode], res[0] / (rounds * 1e6),
+					res[1] / (rounds * 1024.0 * 1024.0), res[2] / (rounds * 1e6), res[3] / (rounds * 1024.0 * 1024.0));
+		}
+	}
+
+	private static int run(File jar, int mode) throws Exception {
+		SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new JarInfo(jar));
+		dl.download();
+
+		int count = 0;
+		long tid = Thread.currentThread().getId();
+		for(ClassNode cn : dl.getJarContents().getClassContents()) {
+			for(MethodNode m : cn.getMethods()) {
+				if(m.node.instructions.size() == 0) {
+					continue;
+				}
+				long bytes = THREADS.getThreadAllocatedBytes(tid);
+				long start = System.nanoTime();
+				try {
+					new Builder(m, mode).buildImpl();
+					count++;
+				} catch(RuntimeException e) {
+					// not what we're measuring.
+				}
+				if(results != null) {
+					results[mode][0] += System.nanoTime() - start;
+					results[mode][1] += THREADS.getThreadAllocatedBytes(tid) - bytes;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static class Builder extends ControlFlowGraphBuilder {
+		private final int mode;
+
+		Builder(MethodNode method, int mode) {
+			super(method, mode == 0);
+			this.mode = mode;
+		}
+
+		@Override
+		protected BuilderPass[] resolvePasses() {
+			BuilderPass ssa = mode == 2 ? new BraunSSAGenPass(this) : new SSAGenPass(this, optimise);
+			BuilderPass timed = new BuilderPass(this) {
+				@Override
+				public void run() {
+					long tid = Thread.currentThread().getId();
+					long bytes = THREADS.getThreadAllocatedBytes(tid);
+					long start = System.nanoTime();
+					ssa.run();
+					if(results != null) {
+						results[mode][2] += System.nanoTime() - start;
+						results[mode][3] += THREADS.getThreadAllocatedBytes(tid) - bytes;
+					}
+				}
+			};
+			return new BuilderPass[] {
+					new GenerationPass(this),
+					new DeadBlocksPass(this),
+					new NaturalisationPass(this),
+					timed,
+			};
+		}
+	}
+}
@@ -6,14 +6,18 @@ import org.mapleir.DefaultInvocationResolver;
 import org.mapleir.Main;
 import org.mapleir.app.client.SimpleApplicationContext;
 import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.ClassSource;
 import org.mapleir.app.service.CompleteResolvingJarDumper;
+import org.mapleir.app.service.IndexedLibraryClassSource;
 import org.mapleir.app.service.LibraryClassSource;
+import org.mapleir.app.service.ModularRuntimeClassSource;
 import org.mapleir.asm.ClassNode;
 import org.mapleir.asm.MethodNode;
 import org.mapleir.cli.CliLog;
 import org.mapleir.context.AnalysisContext;
 import org.mapleir.context.BasicAnalysisContext;
 import org.mapleir.context.IRCache;
+import org.mapleir.context.IRVerifier;
 import org.mapleir.deob.IPass;
 import org.mapleir.deob.PassContext;
 import org.mapleir.deob.PassGroup;
@@ -22,11 +26,13 @@ import org.mapleir.deob.dataflow.LiveDataFlowAnalysisImpl;
 import org.mapleir.deob.passes.fixer.ExceptionFixerPass;
 import org.mapleir.deob.passes.rename.ClassRenamerPass;
 import org.mapleir.deob.util.RenamingHeuristic;
-import org.mapleir.ir.algorithms.BoissinotDestructor;
 import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.AnalysisManager;
 import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.BraunControlFlowGraphBuilder;
 import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
-import org.mapleir.ir.codegen.ControlFlowGraphDumper;
+import org.mapleir.stdlib.collections.map.KeyedValueCreator;
+import org.topdank.byteengineer.commons.asm.DefaultASMFactory;
 import org.topdank.byteengineer.commons.data.JarInfo;
 import org.topdank.byteio.in.SingleJarDownloader;
 import picocli.CommandLine;
@@ -51,16 +57,76 @@ public class RunCommand implements Callable<Integer> {
 
     @CommandLine.Option(
             names = {"-rt", "--runtime"},
-            description = "Path to the runtime jar"
+            description = "Path to the runtime jar or to a JDK 9+ home (default: the running JDK)"
     )
     private File runtime;
 
+    @CommandLine.Option(
+            names = {"-l", "--library"},
+            description = "Path to a library jar, may be given more than once"
+    )
+    private List<File> libraries = new ArrayList<>();
+
+    @CommandLine.Option(
+            names = {"--index-cache"},
+            description = "Directory in which the class headers of runtime and library jars are cached"
+    )
+    private File indexCache;
+
+    @CommandLine.Option(
+            names = {"--library-tier"},
+            description = "Parse runtime and library classes only when they are first needed, either as HEADER (no code) or FULL"
+    )
+    private ClassSource.Tier libraryTier;
+
     @CommandLine.Option(
             names = {"-o", "--output"},
             description = "Path to the output jar location"
     )
     private File output;
 
+    @CommandLine.Option(
+            names = {"-t", "--threads"},
+            description = "Number of threads used to load jars, build vtables, build and lower cfgs and write classes (default: 1)"
+    )
+    private int threads = 1;
+
+    @CommandLine.Option(
+            names = {"--cache-entries"},
+            description = "Maximum number of cfgs kept in memory, 0 for no limit (default: 0)"
+    )
+    private int cacheEntries = 0;
+
+    @CommandLine.Option(
+            names = {"--cache-stmts"},
+            description = "Maximum number of statements kept in memory across all cfgs, 0 for no limit (default: 0)"
+    )
+    private long cacheStmts = 0;
+
+    @CommandLine.Option(
+            names = {"--braun-ssa"},
+            description = "Construct ssa form while the cfgs are built instead of in a separate pass, without copy propagation"
+    )
+    private boolean braunSSA;
+
+    @CommandLine.Option(
+            names = {"--verify"},
+            description = "When to verify the cfgs: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})"
+    )
+    private IRVerifier.Level verify = IRVerifier.Level.BOUNDARIES;
+
+    @CommandLine.Option(
+            names = {"--verify-sample"},
+            description = "Fraction of methods verified with --verify SAMPLED (default: ${DEFAULT-VALUE})"
+    )
+    private double verifySample = 0.1;
+
+    @CommandLine.Option(
+            names = {"--verify-seed"},
+            description = "Seed used to pick the methods verified with --verify SAMPLED (default: ${DEFAULT-VALUE})"
+    )
+    private long verifySeed = 0;
+
     private final CliLog logger = new CliLog();
 
     @Override
@@ -74,8 +140,11 @@ public class RunCommand implements Callable<Integer> {
 
         // Initialization
         logger.section("Preparing to run on " + input.getAbsolutePath());
-        SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new JarInfo(input));
+        SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new DefaultASMFactory(), new JarInfo(input), threads);
         dl.download();
+        if (!dl.getDuplicates().isEmpty()) {
+            logger.print("Skipped " + dl.getDuplicates().size() + " duplicate classes in " + input.getName());
+        }
         String appName = input.getName().substring(0, input.getName().length() - 4);
         ApplicationClassSource app = new ApplicationClassSource(appName, dl.getJarContents().getClassContents());
 
@@ -84,29 +153,42 @@ public class RunCommand implements Callable<Integer> {
         }
 
         logger.section("Importing runtime...");
-        if (runtime == null) {
-            runtime = new File(System.getProperty("java.home"), "lib/rt.jar");
-        }
         app.addLibraries(rt(app, runtime));
+        for (File lib : libraries) {
+            app.addLibraries(library(app, lib));
+        }
 
 
         logger.section("Initialising context.");
-        IRCache irFactory = new IRCache(ControlFlowGraphBuilder::build);
+        KeyedValueCreator<MethodNode, ControlFlowGraph> builder = braunSSA ? BraunControlFlowGraphBuilder::build
+                : ControlFlowGraphBuilder::build;
+        IRCache irFactory = new IRCache(m -> {
+            // the class may be from a library that was parsed without its code
+            app.loadCode(m.owner);
+            return builder.create(m);
+        }, cacheEntries, cacheStmts, new IRVerifier(verify, verifySample, verifySeed));
         AnalysisContext cxt = new BasicAnalysisContext.BasicContextBuilder()
                 .setApplication(app)
-                .setInvocationResolver(new DefaultInvocationResolver(app))
+                .setInvocationResolver(new DefaultInvocationResolver(app, threads))
                 .setCache(irFactory)
                 .setApplicationContext(new SimpleApplicationContext(app))
                 .setDataFlowAnalysis(new LiveDataFlowAnalysisImpl(irFactory))
                 .build();
 
         logger.section("Expanding callgraph and generating cfgs.");
+        List<MethodNode> methods = new ArrayList<>();
         for (ClassNode cn : cxt.getApplication().iterate()) {
-            for (MethodNode m : cn.getMethods()) {
-                cxt.getIRCache().getFor(m);
+            methods.addAll(cn.getMethods());
+        }
+        cxt.getIRCache().buildAll(methods, threads);
+        int straightLine = 0;
+        for (ControlFlowGraph cfg : cxt.getIRCache().values()) {
+            if (cfg.isStraightLine()) {
+                straightLine++;
             }
         }
-        logger.section0("...generated " + cxt.getIRCache().size() + " cfgs in %fs.%n", "Preparing to transform.");
+        logger.section0("...generated " + cxt.getIRCache().size() + " cfgs (" + straightLine
+                + " straight-line) in %fs.%n", "Preparing to transform.");
 
         // do passes
         PassGroup masterGroup = new PassGroup("MasterController");
@@ -115,55 +197,90 @@ public class RunCommand implements Callable<Integer> {
         }
         run(cxt, masterGroup);
         logger.section0("...done transforming in %fs.%n", "Preparing to transform.");
-
-
-        for(Map.Entry<MethodNode, ControlFlowGraph> e : cxt.getIRCache().entrySet()) {
-            MethodNode mn = e.getKey();
-            ControlFlowGraph cfg = e.getValue();
-            cfg.verify();
+        if (irFactory.isBounded()) {
+            logger.print(irFactory.toString());
         }
 
+
         logger.section("Retranslating SSA IR to standard flavour.");
-        for(Map.Entry<MethodNode, ControlFlowGraph> e : cxt.getIRCache().entrySet()) {
-            MethodNode mn = e.getKey();
-            // if (!mn.getName().equals("openFiles"))
-            // 	continue;
-            ControlFlowGraph cfg = e.getValue();
-
-            // System.out.println(cfg);
-            //  CFGUtils.easyDumpCFG(cfg, "pre-destruct");
-            cfg.verify();
-
-            BoissinotDestructor.leaveSSA(cfg);
-
-            // CFGUtils.easyDumpCFG(cfg, "pre-reaalloc");
-            LocalsReallocator.realloc(cfg);
-            // CFGUtils.easyDumpCFG(cfg, "post-reaalloc");
-            // System.out.println(cfg);
-            cfg.verify();
-            // System.out.println("Rewriting " + mn.getName());
-            (new ControlFlowGraphDumper(cfg, mn)).dump();
-            // System.out.println(InsnListUtils.insnListToString(mn.instructions));
+        int failed = irFactory.getFailedCount();
+        int lowered = irFactory.lowerAll(threads);
+        failed = irFactory.getFailedCount() - failed;
+        straightLine = 0;
+        for (ControlFlowGraph cfg : irFactory.values()) {
+            if (cfg.isStraightLine()) {
+                straightLine++;
+            }
         }
+        logger.print(String.format("Lowered %d cfgs, %d straight-line, %d failed and kept their original code",
+                lowered, straightLine, failed));
+        logger.print(String.format("Locals: %d slots allocated, %d saved by sharing slots",
+                LocalsReallocator.getTotalSlotCount(), LocalsReallocator.getTotalSlotsSaved()));
+        long codeIn = irFactory.getInputCodeSize(), codeOut = irFactory.getOutputCodeSize();
+        logger.print(String.format("Code size: %d bytes in, %d bytes out (%+d)", codeIn, codeOut, codeOut - codeIn));
+        IRVerifier verifier = irFactory.getVerifier();
+        logger.print(String.format("Verification (%s): %d checks in %.1fms", verifier.getLevel(),
+                verifier.getCheckCount(), verifier.getTime() / 1e6));
 
         logger.section("Rewriting jar.");
         dumpJar(app, dl, masterGroup, output.getPath());
 
+        logger.print(String.format("Analyses: %d computed, %d reused from cache",
+                AnalysisManager.getTotalMissCount(), AnalysisManager.getTotalHitCount()));
+
+        for (LibraryClassSource lib : app.getLibraries()) {
+            logger.print(String.format("%s: %d classes, %d parsed on demand, %d deferred, code loaded for %d",
+                    lib, lib.size(), lib.getInflatedCount(), lib.getDeferredCount(), lib.getCodeLoadedCount()));
+            if (lib instanceof Closeable) {
+                ((Closeable) lib).close();
+            }
+        }
+
         logger.section("Finished.");
 
         return 0;
     }
 
     private LibraryClassSource rt(ApplicationClassSource app, File rtjar) throws IOException {
-        logger.section("Loading " + rtjar.getName() + " from " + rtjar.getAbsolutePath());
-        SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new JarInfo(rtjar));
+        if (rtjar == null) {
+            rtjar = new File(System.getProperty("java.home"), "lib/rt.jar");
+            if (!rtjar.exists()) {
+                // jdk 9+ has no rt.jar, the classes are in the module image instead
+                ModularRuntimeClassSource lib = new ModularRuntimeClassSource(app);
+                logger.section("Indexed " + lib.getPackageCount() + " packages of " + lib);
+                return lib;
+            }
+        } else if (rtjar.isDirectory()) {
+            ModularRuntimeClassSource lib = new ModularRuntimeClassSource(app, rtjar.toPath());
+            logger.section("Indexed " + lib.getPackageCount() + " packages of " + lib);
+            return lib;
+        }
+
+        return library(app, rtjar);
+    }
+
+    private LibraryClassSource library(ApplicationClassSource app, File jar) throws IOException {
+        if (indexCache != null) {
+            long start = System.nanoTime();
+            IndexedLibraryClassSource lib = IndexedLibraryClassSource.load(app, jar, indexCache);
+            logger.section(String.format("Loaded %d class headers of %s in %dms", lib.size(), jar.getName(), (System.nanoTime() - start) / 1000000L));
+            return lib;
+        }
+
+        if (libraryTier != null) {
+            logger.section("Deferring " + jar.getName() + " from " + jar.getAbsolutePath());
+            return LibraryClassSource.deferred(app, jar, libraryTier);
+        }
+
+        logger.section("Loading " + jar.getName() + " from " + jar.getAbsolutePath());
+        SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new DefaultASMFactory(), new JarInfo(jar), threads);
         dl.download();
 
         return new LibraryClassSource(app, dl.getJarContents().getClassContents());
     }
 
     private void dumpJar(ApplicationClassSource app, SingleJarDownloader<ClassNode> dl, PassGroup masterGroup, String outputFile) throws IOException {
-        (new CompleteResolvingJarDumper(dl.getJarContents(), app) {
+        (new CompleteResolvingJarDumper(dl.getJarContents(), app, threads) {
             @Override
             public int dumpResource(JarOutputStream out, String name, byte[] file) throws IOException {
 //				if(name.startsWith("META-INF")) {
@@ -1,35 +1,468 @@
 package org.mapleir.context;
 
+import org.apache.log4j.Logger;
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.BasicBlock;
 import org.mapleir.ir.cfg.ControlFlowGraph;
 import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
 import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.codegen.ControlFlowGraphDumper;
 import org.mapleir.stdlib.collections.map.KeyedValueCreator;
-import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
 import org.mapleir.stdlib.util.JavaDesc;
+import org.mapleir.asm.InsnListUtils;
 import org.mapleir.asm.MethodNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.TryCatchBlockNode;
 
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
-public class IRCache extends NullPermeableHashMap<MethodNode, ControlFlowGraph> {
-	private static final long serialVersionUID = 1L;
-	
+/**
+ * A thread safe cache of the graphs of methods, building them on demand with
+ * the given creator.<br>
+ * By default every graph is kept for the lifetime of the cache. A bounded
+ * cache instead holds at most a given number of graphs and/or statements and
+ * evicts the least recently used graphs when it goes over budget. Graphs that
+ * were not modified since they were built are simply dropped and are rebuilt
+ * from their method when next requested; modified graphs are first taken out
+ * of SSA and written back to their method with a
+ * {@link ControlFlowGraphDumper}.
+ *
+ * <p> A bounded cache only evicts at pass boundaries, i.e. when
+ * {@link #evictOverBudget()} is called, which {@link #buildAll(Iterable, int)}
+ * and {@link org.mapleir.deob.PassGroup} do between methods and passes. A
+ * graph returned by {@link #getFor(MethodNode)} must not be used after the
+ * next boundary, unless it was taken with {@link #checkout(MethodNode)}, which
+ * keeps it resident until it is released. Graphs are lowered outside of the
+ * cache's locks; a request for a method whose graph is being lowered waits
+ * for it to finish and then rebuilds the graph from the written back code.
+ * The map views only contain the graphs that are currently resident.
+ *
+ * <p> Graphs are built outside of the map's locks, so a build may itself
+ * request other graphs or take other locks. Concurrent requests for a method
+ * that is being built wait for that build.
+ */
+public class IRCache extends AbstractMap<MethodNode, ControlFlowGraph> {
+	private static final Logger LOGGER = Logger.getLogger(IRCache.class);
+
+	private final KeyedValueCreator<MethodNode, ControlFlowGraph> creator;
+	private final IRVerifier verifier;
+	private final ConcurrentHashMap<MethodNode, ControlFlowGraph> graphs;
+	/* methods whose graphs are being built, completed with the graph. */
+	private final ConcurrentHashMap<MethodNode, CompletableFuture<ControlFlowGraph>> building;
+
+	private final int maxEntries;
+	private final long maxStmts;
+	/* resident graphs in access order, only used when bounded. guarded by
+	 * itself along with residentStmts and pins. */
+	private final LinkedHashMap<MethodNode, Residency> residents;
+	private long residentStmts;
+	/* the number of outstanding checkouts of each method. */
+	private final Map<MethodNode, Integer> pins;
+	/* methods whose graphs are being evicted, completed once the method has
+	 * its final code. */
+	private final ConcurrentHashMap<MethodNode, CompletableFuture<Void>> evicting;
+	/* methods whose graphs have been evicted at least once. */
+	private final Set<MethodNode> evicted;
+
+	private final AtomicInteger builtCount = new AtomicInteger();
+	private final AtomicInteger rebuiltCount = new AtomicInteger();
+	private final AtomicInteger evictedCount = new AtomicInteger();
+	private final AtomicInteger loweredCount = new AtomicInteger();
+	private final AtomicInteger failedCount = new AtomicInteger();
+	private final AtomicLong inputCodeSize = new AtomicLong();
+	private final AtomicLong outputCodeSize = new AtomicLong();
+
 	public IRCache(KeyedValueCreator<MethodNode, ControlFlowGraph> creator) {
-		super(creator);
+		this(creator, 0, 0);
 	}
-	
+
 	public IRCache() {
 		this(ControlFlowGraphBuilder::build);
 	}
-	
+
+	public IRCache(KeyedValueCreator<MethodNode, ControlFlowGraph> creator, int maxEntries, long maxStmts) {
+		this(creator, maxEntries, maxStmts, new IRVerifier(IRVerifier.Level.BOUNDARIES));
+	}
+
+	/**
+	 * @param creator The function used to build graphs.
+	 * @param maxEntries The maximum number of resident graphs or 0 for no
+	 * limit.
+	 * @param maxStmts The maximum number of statements in all resident graphs
+	 * or 0 for no limit. This stands in for the memory used by the graphs.
+	 * @param verifier Verifies the graphs as they are built and lowered.
+	 */
+	public IRCache(KeyedValueCreator<MethodNode, ControlFlowGraph> creator, int maxEntries, long maxStmts,
+			IRVerifier verifier) {
+		if(maxEntries < 0 || maxStmts < 0) {
+			throw new IllegalArgumentException("negative budget: " + maxEntries + ", " + maxStmts);
+		}
+		this.creator = creator;
+		this.verifier = verifier;
+		this.maxEntries = maxEntries;
+		this.maxStmts = maxStmts;
+		graphs = new ConcurrentHashMap<>();
+		building = new ConcurrentHashMap<>();
+		residents = new LinkedHashMap<>(16, 0.75F, true);
+		pins = new HashMap<>();
+		evicting = new ConcurrentHashMap<>();
+		evicted = ConcurrentHashMap.newKeySet();
+	}
+
+	public IRVerifier getVerifier() {
+		return verifier;
+	}
+
+	public boolean isBounded() {
+		return maxEntries > 0 || maxStmts > 0;
+	}
+
 	public ControlFlowGraph getFor(MethodNode m) {
-		return getNonNull(m);
+		ControlFlowGraph cfg = graphs.get(m);
+		if(cfg == null) {
+			awaitEviction(m);
+			cfg = buildOnce(m);
+		}
+		if(isBounded()) {
+			touch(m, cfg);
+		}
+		return cfg;
+	}
+
+	/**
+	 * Gets the graph of the method like {@link #getFor(MethodNode)} and keeps
+	 * it resident until {@link #release(MethodNode)} is called for the method
+	 * as many times as it was checked out.
+	 */
+	public ControlFlowGraph checkout(MethodNode m) {
+		if(isBounded()) {
+			synchronized (residents) {
+				pins.merge(m, 1, Integer::sum);
+			}
+		}
+		return getFor(m);
+	}
+
+	/**
+	 * Releases a graph taken with {@link #checkout(MethodNode)}. It may be
+	 * evicted at the next boundary once all of its checkouts are released.
+	 */
+	public void release(MethodNode m) {
+		if(isBounded()) {
+			synchronized (residents) {
+				Integer count = pins.get(m);
+				if(count == null) {
+					throw new IllegalStateException(m + " is not checked out");
+				} else if(count == 1) {
+					pins.remove(m);
+				} else {
+					pins.put(m, count - 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the graphs for all of the given methods that are not already in
+	 * the cache. With a parallelism greater than one the graphs are built on a
+	 * fork-join pool of that size, otherwise they are built on the calling
+	 * thread.
+	 *
+	 * @param methods The methods to build graphs for.
+	 * @param parallelism The number of threads to build with.
+	 * @return The number of graphs that were built.
+	 */
+	public int buildAll(Iterable<MethodNode> methods, int parallelism) {
+		List<MethodNode> todo = new ArrayList<>();
+		for(MethodNode m : methods) {
+			if(!containsKey(m)) {
+				todo.add(m);
+			}
+		}
+
+		if(parallelism <= 1 || todo.size() <= 1) {
+			for(MethodNode m : todo) {
+				getFor(m);
+				evictOverBudget();
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new BuildTask(todo, 0, todo.size()));
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return todo.size();
+	}
+
+	/* builds the graph of the method unless another thread already is, in
+	 * which case its graph is waited for. */
+	private ControlFlowGraph buildOnce(MethodNode m) {
+		for(;;) {
+			ControlFlowGraph cfg = graphs.get(m);
+			if(cfg != null) {
+				return cfg;
+			}
+			CompletableFuture<ControlFlowGraph> done = new CompletableFuture<>();
+			CompletableFuture<ControlFlowGraph> other = building.putIfAbsent(m, done);
+			if(other != null) {
+				try {
+					return other.join();
+				} catch(CompletionException e) {
+					/* that build failed, try it ourselves so that the error
+					 * is thrown on this thread too. */
+					continue;
+				}
+			}
+			try {
+				/* it may have been put in between the lookup and claiming
+				 * the build. */
+				cfg = graphs.get(m);
+				if(cfg == null) {
+					cfg = build(m);
+					ControlFlowGraph prev = graphs.putIfAbsent(m, cfg);
+					if(prev != null) {
+						cfg = prev;
+					}
+				}
+				done.complete(cfg);
+				return cfg;
+			} catch(RuntimeException | Error e) {
+				done.completeExceptionally(e);
+				throw e;
+			} finally {
+				building.remove(m, done);
+			}
+		}
+	}
+
+	private ControlFlowGraph build(MethodNode m) {
+		builtCount.incrementAndGet();
+		if(evicted.contains(m)) {
+			rebuiltCount.incrementAndGet();
+		}
+		ControlFlowGraph cfg = creator.create(m);
+		verifier.afterBuild(m, cfg);
+		return cfg;
+	}
+
+	private void touch(MethodNode m, ControlFlowGraph cfg) {
+		synchronized (residents) {
+			if(graphs.get(m) != cfg) {
+				/* evicted or replaced since it was looked up. */
+				return;
+			}
+			Residency r = residents.get(m);
+			if(r == null || r.cfg != cfg) {
+				if(r != null) {
+					residentStmts -= r.stmts;
+				}
+				r = new Residency(m, cfg);
+				residents.put(m, r);
+				residentStmts += r.stmts;
+			} else {
+				residentStmts += r.refresh();
+			}
+		}
+	}
+
+	private boolean isOverBudget() {
+		return (maxEntries > 0 && residents.size() > maxEntries)
+				|| (maxStmts > 0 && residentStmts > maxStmts);
+	}
+
+	/**
+	 * Evicts the least recently used graphs that are not checked out until
+	 * the cache is within its budget. Modified graphs are lowered into their
+	 * methods first, on the calling thread and without holding any of the
+	 * cache's locks. This must only be called where no graph taken with
+	 * {@link #getFor(MethodNode)} is still in use, e.g. between passes.
+	 *
+	 * @return The number of graphs that were evicted.
+	 */
+	public int evictOverBudget() {
+		if(!isBounded()) {
+			return 0;
+		}
+		List<Residency> victims = new ArrayList<>();
+		synchronized (residents) {
+			for(Residency r : residents.values()) {
+				residentStmts += r.refresh();
+			}
+			Iterator<Residency> it = residents.values().iterator();
+			while(isOverBudget() && it.hasNext()) {
+				Residency r = it.next();
+				if(pins.containsKey(r.method)) {
+					continue;
+				}
+				it.remove();
+				residentStmts -= r.stmts;
+				/* requests for the method wait from here on, so it can't be
+				 * rebuilt while its code is being rewritten. */
+				CompletableFuture<Void> done = new CompletableFuture<>();
+				evicting.put(r.method, done);
+				if(graphs.remove(r.method, r.cfg)) {
+					victims.add(r);
+				} else {
+					evicting.remove(r.method);
+					done.complete(null);
+				}
+			}
+		}
+
+		for(Residency r : victims) {
+			try {
+				if(r.isDirty()) {
+					lower(r.method, r.cfg);
+				}
+				evicted.add(r.method);
+				evictedCount.incrementAndGet();
+			} finally {
+				evicting.remove(r.method).complete(null);
+			}
+		}
+		return victims.size();
+	}
+
+	private void awaitEviction(MethodNode m) {
+		CompletableFuture<Void> done = evicting.get(m);
+		if(done != null) {
+			done.join();
+		}
+	}
+
+	/**
+	 * Takes all of the resident graphs out of SSA and writes them back to
+	 * their methods. With a parallelism greater than one the graphs are
+	 * lowered on a fork-join pool of that size, otherwise they are lowered on
+	 * the calling thread.<br>
+	 * A graph that fails to lower or to verify does not stop the others: its
+	 * method keeps the code it had before lowering was attempted and the
+	 * graph, which may have been partially destroyed, is removed from the
+	 * cache.
+	 *
+	 * @param parallelism The number of threads to lower with.
+	 * @return The number of graphs that were lowered successfully.
+	 */
+	public int lowerAll(int parallelism) {
+		List<Map.Entry<MethodNode, ControlFlowGraph>> todo = new ArrayList<>(entrySet());
+		AtomicInteger count = new AtomicInteger();
+
+		if(parallelism <= 1 || todo.size() <= 1) {
+			for(Map.Entry<MethodNode, ControlFlowGraph> e : todo) {
+				lowerAndCount(e, count);
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new LowerTask(todo, 0, todo.size(), count));
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return count.get();
+	}
+
+	private void lowerAndCount(Map.Entry<MethodNode, ControlFlowGraph> e, AtomicInteger count) {
+		if(lower(e.getKey(), e.getValue())) {
+			count.incrementAndGet();
+		} else {
+			remove(e.getKey());
+		}
+	}
+
+	/* lowers the graph into its method. on failure the method's previous code
+	 * is put back and false is returned. */
+	private boolean lower(MethodNode m, ControlFlowGraph cfg) {
+		InsnList insns = m.node.instructions;
+		List<TryCatchBlockNode> tryCatchBlocks = m.node.tryCatchBlocks;
+		m.node.instructions = new InsnList();
+		m.node.tryCatchBlocks = new ArrayList<>();
+		try {
+			verifier.beforeLower(m, cfg);
+			BoissinotDestructor.leaveSSA(cfg);
+			LocalsReallocator.realloc(cfg);
+			verifier.afterLower(m, cfg);
+			(new ControlFlowGraphDumper(cfg, m)).dump();
+			loweredCount.incrementAndGet();
+			inputCodeSize.addAndGet(InsnListUtils.codeSize(insns));
+			outputCodeSize.addAndGet(InsnListUtils.codeSize(m.node.instructions));
+			return true;
+		} catch(RuntimeException e) {
+			LOGGER.error("Failed to lower " + m + ", keeping its original code", e);
+			m.node.instructions = insns;
+			m.node.tryCatchBlocks = tryCatchBlocks;
+			failedCount.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * @return The number of graphs that have been built by this cache,
+	 * including rebuilds.
+	 */
+	public int getBuiltCount() {
+		return builtCount.get();
+	}
+
+	/**
+	 * @return The number of graphs that were built again after having been
+	 * evicted.
+	 */
+	public int getRebuiltCount() {
+		return rebuiltCount.get();
+	}
+
+	public int getEvictedCount() {
+		return evictedCount.get();
+	}
+
+	/**
+	 * @return The number of graphs that were written back to their methods,
+	 * either on eviction or by {@link #lowerAll(int)}.
+	 */
+	public int getLoweredCount() {
+		return loweredCount.get();
+	}
+
+	/**
+	 * @return The number of graphs that failed to lower and whose methods
+	 * kept their original code.
+	 */
+	public int getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return The size in bytes of the code that the lowered methods had
+	 * before they were lowered.
+	 */
+	public long getInputCodeSize() {
+		return inputCodeSize.get();
+	}
+
+	/**
+	 * @return The size in bytes of the code that was written to the lowered
+	 * methods.
+	 */
+	public long getOutputCodeSize() {
+		return outputCodeSize.get();
 	}
 
 	public MethodNode findMethod(JavaDesc jd) {
 		return getActiveMethods().stream().filter(mn -> mn.getJavaDesc().equals(jd)).findFirst().orElseGet(null);
 	}
-	
+
 	public Set<MethodNode> getActiveMethods() {
 		return keySet();
 	}
@@ -37,4 +470,175 @@ public class IRCache extends NullPermeableHashMap<MethodNode, ControlFlowGraph>
 	public Stream<CodeUnit> allExprStream() {
 		return values().stream().flatMap(ControlFlowGraph::allExprStream);
 	}
+
+	@Override
+	public ControlFlowGraph get(Object key) {
+		return graphs.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return graphs.containsKey(key);
+	}
+
+	@Override
+	public ControlFlowGraph put(MethodNode key, ControlFlowGraph value) {
+		ControlFlowGraph prev = graphs.put(key, value);
+		if(isBounded()) {
+			touch(key, value);
+		}
+		return prev;
+	}
+
+	@Override
+	public ControlFlowGraph remove(Object key) {
+		ControlFlowGraph prev = graphs.remove(key);
+		if(prev != null && isBounded()) {
+			synchronized (residents) {
+				Residency r = residents.remove(key);
+				if(r != null) {
+					residentStmts -= r.stmts;
+				}
+			}
+		}
+		return prev;
+	}
+
+	@Override
+	public void clear() {
+		graphs.clear();
+		synchronized (residents) {
+			residents.clear();
+			residentStmts = 0;
+		}
+	}
+
+	@Override
+	public int size() {
+		return graphs.size();
+	}
+
+	@Override
+	public Set<MethodNode> keySet() {
+		return graphs.keySet();
+	}
+
+	@Override
+	public Collection<ControlFlowGraph> values() {
+		return graphs.values();
+	}
+
+	@Override
+	public Set<Map.Entry<MethodNode, ControlFlowGraph>> entrySet() {
+		return graphs.entrySet();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("IRCache[resident=%d, built=%d, rebuilt=%d, evicted=%d, lowered=%d, failed=%d]", size(),
+				getBuiltCount(), getRebuiltCount(), getEvictedCount(), getLoweredCount(), getFailedCount());
+	}
+
+	private static class Residency {
+		final MethodNode method;
+		final ControlFlowGraph cfg;
+		/* the modcount of the graph when it was last looked at. if it ever
+		 * changes the graph has to be written back on eviction. */
+		int modCount;
+		boolean dirty;
+		int stmts;
+
+		Residency(MethodNode method, ControlFlowGraph cfg) {
+			this.method = method;
+			this.cfg = cfg;
+			modCount = cfg.getModCount();
+			stmts = countStmts();
+		}
+
+		/* updates the snapshot if the graph was modified and returns the
+		 * change in the number of statements. */
+		int refresh() {
+			int mc = cfg.getModCount();
+			if(mc == modCount) {
+				return 0;
+			}
+			modCount = mc;
+			dirty = true;
+			int old = stmts;
+			stmts = countStmts();
+			return stmts - old;
+		}
+
+		boolean isDirty() {
+			return dirty || cfg.getModCount() != modCount;
+		}
+
+		private int countStmts() {
+			int count = 0;
+			for(BasicBlock b : cfg.vertices()) {
+				count += b.size();
+			}
+			return count;
+		}
+	}
+
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/* below this many methods a task builds its range directly. */
+		private static final int THRESHOLD = 16;
+
+		private final List<MethodNode> methods;
+		private final int start, end;
+
+		BuildTask(List<MethodNode> methods, int start, int end) {
+			this.methods = methods;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if((end - start) <= THRESHOLD) {
+				for(int i=start; i < end; i++) {
+					getFor(methods.get(i));
+				}
+				/* nobody else has seen the graphs that were just built. */
+				evictOverBudget();
+			} else {
+				int mid = (start + end) >>> 1;
+				invokeAll(new BuildTask(methods, start, mid),
+						new BuildTask(methods, mid, end));
+			}
+		}
+	}
+
+	private class LowerTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/* below this many graphs a task lowers its range directly. */
+		private static final int THRESHOLD = 16;
+
+		private final List<Map.Entry<MethodNode, ControlFlowGraph>> entries;
+		private final int start, end;
+		private final AtomicInteger count;
+
+		LowerTask(List<Map.Entry<MethodNode, ControlFlowGraph>> entries, int start, int end, AtomicInteger count) {
+			this.entries = entries;
+			this.start = start;
+			this.end = end;
+			this.count = count;
+		}
+
+		@Override
+		protected void compute() {
+			if((end - start) <= THRESHOLD) {
+				for(int i=start; i < end; i++) {
+					lowerAndCount(entries.get(i), count);
+				}
+			} else {
+				int mid = (start + end) >>> 1;
+				invokeAll(new LowerTask(entries, start, mid, count),
+						new LowerTask(entries, mid, end, count));
+			}
+		}
+	}
 }
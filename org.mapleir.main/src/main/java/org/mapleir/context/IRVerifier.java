@@ -0,0 +1,142 @@
+package org.mapleir.context;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.DefUseVerifier;
+
+/**
+ * Verifies the graphs of an {@link IRCache} at the points that its
+ * {@link Level} asks for, and records how many checks were run and how long
+ * they took. Checks throw on the first problem found, like
+ * {@link ControlFlowGraph#verify()}.
+ */
+public class IRVerifier {
+
+	public enum Level {
+		/** Nothing is verified. */
+		OFF,
+		/** A sample of the methods is verified at the boundaries. */
+		SAMPLED,
+		/** Every graph is verified before it is lowered and again once its
+		 * locals have been reallocated. */
+		BOUNDARIES,
+		/** As with boundaries, and every graph is also verified when it is
+		 * built. The def-use information of the locals is checked while the
+		 * graph is in SSA form. */
+		PARANOID
+	}
+
+	private final Level level;
+	private final double sampleRate;
+	private final long seed;
+
+	private final LongAdder checks = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+
+	public IRVerifier(Level level) {
+		this(level, 0.1D, 0L);
+	}
+
+	/**
+	 * @param level When to verify.
+	 * @param sampleRate The fraction of methods to verify in sampled mode.
+	 * @param seed The seed for choosing the sample. The same seed picks the
+	 * same methods on every run.
+	 */
+	public IRVerifier(Level level, double sampleRate, long seed) {
+		if(sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("sample rate out of range: " + sampleRate);
+		}
+		this.level = level;
+		this.sampleRate = sampleRate;
+		this.seed = seed;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return Whether the graph of the method is verified at the boundaries.
+	 */
+	public boolean isSelected(MethodNode m) {
+		switch(level) {
+			case OFF:
+				return false;
+			case SAMPLED:
+				/* keyed by the method's name rather than its identity so that
+				 * the choice doesn't change between runs. */
+				String key = m.getOwner() + "." + m.getName() + m.getDesc();
+				return new SplittableRandom(seed ^ key.hashCode()).nextDouble() < sampleRate;
+			default:
+				return true;
+		}
+	}
+
+	public void afterBuild(MethodNode m, ControlFlowGraph cfg) {
+		if(level == Level.PARANOID) {
+			long start = System.nanoTime();
+			try {
+				cfg.verify();
+				DefUseVerifier.verify0(cfg);
+			} finally {
+				record(start);
+			}
+		}
+	}
+
+	public void beforeLower(MethodNode m, ControlFlowGraph cfg) {
+		if(isSelected(m)) {
+			long start = System.nanoTime();
+			try {
+				cfg.verify();
+				if(level == Level.PARANOID) {
+					DefUseVerifier.verify0(cfg);
+				}
+			} finally {
+				record(start);
+			}
+		}
+	}
+
+	/* the def-use verifier only understands ssa locals, so the lowered graph
+	 * is only checked structurally. */
+	public void afterLower(MethodNode m, ControlFlowGraph cfg) {
+		if(isSelected(m)) {
+			long start = System.nanoTime();
+			try {
+				cfg.verify();
+			} finally {
+				record(start);
+			}
+		}
+	}
+
+	private void record(long start) {
+		nanos.add(System.nanoTime() - start);
+		checks.increment();
+	}
+
+	/**
+	 * @return The number of times a graph was verified.
+	 */
+	public long getCheckCount() {
+		return checks.sum();
+	}
+
+	/**
+	 * @return The total time spent verifying, in nanoseconds, summed over all
+	 * threads.
+	 */
+	public long getTime() {
+		return nanos.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("IRVerifier[level=%s, checks=%d, time=%.1fms]", level, getCheckCount(), getTime() / 1e6);
+	}
+}
@@ -92,6 +92,11 @@ public class PassGroup implements IPass {
 
 				redoRound |= (newResult.shouldRepeat() && newResult.shouldContinue());
 
+				// the graphs handed out during the pass are no longer in use
+				if(pcxt.getAnalysis() != null) {
+					pcxt.getAnalysis().getIRCache().evictOverBudget();
+				}
+
 				completed.add(p);
 				last = p;
 			}
@@ -31,6 +31,8 @@ public class SensitiveCallGraphBuilder implements Worklist.Worker<MethodNode> {
 	public CallSiteSensitiveCallGraph build(Collection<MethodNode> entries) {
 		getWorklist().queueData(entries);
 		worklist.processQueue();
+		// the finished graph is only traversed
+		callGraph.freeze();
 		return callGraph;
 	}
 
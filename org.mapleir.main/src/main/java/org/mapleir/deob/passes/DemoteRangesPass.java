@@ -8,6 +8,7 @@ import org.mapleir.deob.PassResult;
 import org.mapleir.deob.intraproc.ExceptionAnalysis;
 import org.mapleir.flowgraph.ExceptionRange;
 import org.mapleir.ir.TypeUtils;
+import org.mapleir.ir.cfg.Analysis;
 import org.mapleir.ir.cfg.BasicBlock;
 import org.mapleir.ir.cfg.ControlFlowGraph;
 import org.mapleir.ir.code.Stmt;
@@ -40,12 +41,7 @@ public class DemoteRangesPass implements IPass {
 	}
 
 	private void process(ApplicationClassSource app, ControlFlowGraph cfg, ExceptionAnalysis analysis) {
-		TarjanSCC<BasicBlock> sccComputor = new TarjanSCC<>(cfg);
-		for(BasicBlock b : cfg.vertices()) {
-			if(sccComputor.low(b) == -1) {
-				sccComputor.search(b);
-			}
-		}
+		TarjanSCC<BasicBlock> sccComputor = cfg.getAnalyses().get(Analysis.SCCS);
 		
 		Map<BasicBlock, List<BasicBlock>> sccs = new HashMap<>();
 		for(List<BasicBlock> l : sccComputor.getComponents()) {
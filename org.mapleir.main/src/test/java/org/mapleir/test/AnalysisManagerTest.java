@@ -0,0 +1,71 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.mapleir.ir.cfg.Analysis;
+import org.mapleir.ir.cfg.AnalysisManager;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+
+import junit.framework.TestCase;
+
+public class AnalysisManagerTest extends TestCase {
+
+	private ControlFlowGraph cfg;
+
+	@Override
+	public void setUp() throws IOException {
+		cfg = ControlFlowGraphBuilder.build(IRFixtures.method(ArrayList.class, "indexOf", null));
+	}
+
+	public void testCached() {
+		AnalysisManager am = cfg.getAnalyses();
+		Object dom = am.get(Analysis.DOMINATORS);
+		int hits = am.getHitCount(), misses = am.getMissCount();
+		assertSame(dom, am.get(Analysis.DOMINATORS));
+		assertSame(dom, cfg.getDominators(cfg.getEntries().iterator().next()));
+		assertEquals(misses, am.getMissCount());
+		assertEquals(hits + 2, am.getHitCount());
+	}
+
+	public void testStructureChangeInvalidates() {
+		AnalysisManager am = cfg.getAnalyses();
+		Object dom = am.get(Analysis.DOMINATORS);
+		Object liveness = am.get(Analysis.LIVENESS);
+
+		cfg.addVertex(new BasicBlock(cfg));
+		assertNull(am.getIfCached(Analysis.DOMINATORS));
+		assertNotSame(dom, am.get(Analysis.DOMINATORS));
+		assertNotSame(liveness, am.get(Analysis.LIVENESS));
+	}
+
+	public void testCodeChangeKeepsStructuralResults() {
+		AnalysisManager am = cfg.getAnalyses();
+		Object dom = am.get(Analysis.DOMINATORS);
+		Object liveness = am.get(Analysis.LIVENESS);
+
+		cfg.markDirty();
+		assertSame(dom, am.get(Analysis.DOMINATORS));
+		assertNotSame(liveness, am.get(Analysis.LIVENESS));
+
+		am.invalidate(Analysis.DOMINATORS);
+		assertNotSame(dom, am.get(Analysis.DOMINATORS));
+	}
+
+	public void testStaleResultsAreDropped() {
+		AnalysisManager am = cfg.getAnalyses();
+		am.get(Analysis.DOMINATORS);
+		am.get(Analysis.LIVENESS);
+		assertEquals(2, am.size());
+
+		/* the liveness is dropped without being asked for again. */
+		cfg.markDirty();
+		assertEquals(1, am.size());
+		assertNotNull(am.getIfCached(Analysis.DOMINATORS));
+
+		cfg.addVertex(new BasicBlock(cfg));
+		assertEquals(0, am.size());
+	}
+}
@@ -0,0 +1,46 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.copy.CopyVarStmt;
+
+import junit.framework.TestCase;
+
+public class BoissinotDestructorTest extends TestCase {
+
+	public void testLeavesSSA() throws IOException {
+		int phis = 0;
+		for(ControlFlowGraph cfg : IRFixtures.graphs(ArrayList.class, HashMap.class, TreeMap.class, String.class)) {
+			for(Stmt stmt : cfg.stmts()) {
+				if(stmt.getOpcode() == Opcode.PHI_STORE) {
+					phis++;
+				}
+			}
+
+			BoissinotDestructor.leaveSSA(cfg);
+			for(BasicBlock b : cfg.vertices()) {
+				for(Stmt stmt : b) {
+					assertTrue(cfg.toString(), stmt.getOpcode() != Opcode.PHI_STORE);
+					if(stmt.getOpcode() == Opcode.LOCAL_STORE) {
+						CopyVarStmt copy = (CopyVarStmt) stmt;
+						if(!copy.isSynthetic() && copy.getExpression() instanceof VarExpr) {
+							// coalesced copies are dropped
+							assertNotSame(copy.toString(), copy.getVariable().getLocal(),
+									((VarExpr) copy.getExpression()).getLocal());
+						}
+					}
+				}
+			}
+		}
+		assertTrue(phis > 0);
+	}
+}
@@ -0,0 +1,75 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.IRCache;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.BraunControlFlowGraphBuilder;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.cfg.builder.DefUseVerifier;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+
+import junit.framework.TestCase;
+
+public class BraunSSAGenPassTest extends TestCase {
+
+	/* both builders are given a freshly parsed copy. */
+	private static List<MethodNode> parseMethods() throws IOException {
+		return IRFixtures.methods(ArrayList.class, HashMap.class, TreeMap.class);
+	}
+
+	/* [blocks, stmts, phis] */
+	private static int[] shape(ControlFlowGraph cfg) {
+		int[] res = new int[] { cfg.size(), 0, 0 };
+		for(BasicBlock b : cfg.vertices()) {
+			for(Stmt stmt : b) {
+				res[1]++;
+				if(stmt.getOpcode() == Opcode.PHI_STORE) {
+					res[2]++;
+				}
+			}
+		}
+		return res;
+	}
+
+	public void testMatchesUnoptimisedBuilder() throws IOException {
+		List<MethodNode> classic = parseMethods();
+		List<MethodNode> braun = parseMethods();
+		assertEquals(classic.size(), braun.size());
+
+		for(int i=0; i < classic.size(); i++) {
+			ControlFlowGraph expected = new ControlFlowGraphBuilder(classic.get(i), false).buildImpl();
+			ControlFlowGraph actual = BraunControlFlowGraphBuilder.build(braun.get(i));
+			DefUseVerifier.verify(actual);
+
+			int[] e = shape(expected), a = shape(actual);
+			String name = braun.get(i).toString();
+			assertEquals(name, e[0], a[0]);
+			assertEquals(name, e[1], a[1]);
+			assertEquals(name, e[2], a[2]);
+		}
+	}
+
+	public void testLowering() throws IOException {
+		for(MethodNode m : parseMethods()) {
+			IRFixtures.lower(BraunControlFlowGraphBuilder.build(m), m);
+			assertTrue(m.toString(), m.node.instructions.size() > 0);
+		}
+	}
+
+	public void testSelectedPerCache() throws IOException {
+		List<MethodNode> methods = parseMethods();
+		IRCache cache = new IRCache(BraunControlFlowGraphBuilder::build, 0, 0);
+		assertEquals(methods.size(), cache.buildAll(methods, 2));
+		for(MethodNode m : methods) {
+			DefUseVerifier.verify(cache.get(m));
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package org.mapleir.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.ClassHeaderIndex;
+import org.mapleir.app.service.ClassHeaderIndex.ClassHeader;
+import org.mapleir.app.service.IndexedLibraryClassSource;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+
+import junit.framework.TestCase;
+
+public class ClassHeaderIndexTest extends TestCase {
+
+	private static final Class<?>[] CLASSES = { ArrayList.class, HashMap.class, List.class };
+
+	private File jar;
+	private File cacheDir;
+
+	@Override
+	public void setUp() throws IOException {
+		jar = File.createTempFile("library", ".jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (Class<?> c : CLASSES) {
+				String name = c.getName().replace('.', '/') + ".class";
+				out.putNextEntry(new JarEntry(name));
+				try (InputStream in = ClassLoader.getSystemResourceAsStream(name)) {
+					out.write(in.readAllBytes());
+				}
+				out.closeEntry();
+			}
+		}
+		cacheDir = Files.createTempDirectory("index").toFile();
+	}
+
+	@Override
+	public void tearDown() {
+		for (File f : cacheDir.listFiles()) {
+			f.delete();
+		}
+		cacheDir.delete();
+		jar.delete();
+	}
+
+	public void testCachedByHash() throws IOException {
+		ClassHeaderIndex built = ClassHeaderIndex.load(jar, cacheDir);
+		File file = new File(cacheDir, ClassHeaderIndex.hash(jar) + ".idx");
+		assertTrue(file.exists());
+
+		ClassHeaderIndex read = ClassHeaderIndex.read(file.toPath());
+		assertEquals(CLASSES.length, built.size());
+		assertEquals(built.size(), read.size());
+		for (int i = 0; i < built.size(); i++) {
+			ClassHeader expected = built.getHeaders().get(i);
+			ClassHeader actual = read.getHeaders().get(i);
+			assertEquals(expected.getName(), actual.getName());
+			assertEquals(expected.getSuperName(), actual.getSuperName());
+			assertEquals(expected.getEntryName(), actual.getEntryName());
+		}
+	}
+
+	public void testHeadersMatchClasses() throws IOException {
+		ClassHeaderIndex.load(jar, cacheDir);
+		ClassHeaderIndex index = ClassHeaderIndex.load(jar, cacheDir);
+
+		for (int i = 0; i < CLASSES.length; i++) {
+			ClassNode expected = ClassHelper.create(CLASSES[i].getName());
+			ClassNode actual = index.getHeaders().get(i).toClassNode();
+			assertEquals(expected.getName(), actual.getName());
+			assertEquals(expected.node.access, actual.node.access);
+			assertEquals(expected.node.superName, actual.node.superName);
+			assertEquals(expected.node.interfaces, actual.node.interfaces);
+			assertEquals(expected.getFields().size(), actual.getFields().size());
+			assertEquals(expected.getMethods().size(), actual.getMethods().size());
+			for (int j = 0; j < expected.getMethods().size(); j++) {
+				assertEquals(expected.getMethods().get(j).toString(), actual.getMethods().get(j).toString());
+			}
+		}
+	}
+
+	public void testLoadCode() throws IOException {
+		ApplicationClassSource app = new ApplicationClassSource("test", new ArrayList<>());
+		IndexedLibraryClassSource lib = IndexedLibraryClassSource.load(app, jar, cacheDir);
+		app.addLibraries(lib, new InstalledRuntimeClassSource(app));
+
+		ClassNode cn = app.findClassNode("java/util/ArrayList");
+		assertNotNull(cn);
+		assertFalse(lib.hasCode(cn));
+		assertEquals(1, lib.getInflatedCount());
+		assertEquals(CLASSES.length - 1, lib.getDeferredCount());
+		assertTrue(app.getClassTree().containsVertex(cn));
+
+		MethodNode size = null;
+		for (MethodNode m : cn.getMethods()) {
+			assertEquals(0, m.node.instructions.size());
+			if (m.getName().equals("size")) {
+				size = m;
+			}
+		}
+
+		assertSame(cn, lib.loadCode(cn));
+		assertTrue(lib.hasCode(cn));
+		assertEquals(1, lib.getCodeLoadedCount());
+		assertTrue(size.node.instructions.size() > 0);
+		lib.close();
+	}
+}
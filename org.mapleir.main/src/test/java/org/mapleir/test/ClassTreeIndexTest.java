@@ -0,0 +1,121 @@
+package org.mapleir.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.ClassTree;
+import org.mapleir.app.service.ClassTreeIndex;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.asm.ClassNode;
+
+import junit.framework.TestCase;
+
+public class ClassTreeIndexTest extends TestCase {
+
+	private ApplicationClassSource app;
+	private ClassTree tree;
+
+	@Override
+	public void setUp() {
+		app = new ApplicationClassSource("test", new ArrayList<>());
+		app.addLibraries(new InstalledRuntimeClassSource(app));
+		tree = app.getClassTree();
+	}
+
+	private ClassNode find(String name) {
+		ClassNode cn = app.findClassNode(name);
+		assertNotNull(name, cn);
+		return cn;
+	}
+
+	public void testSubtype() {
+		ClassNode arrayList = find("java/util/ArrayList");
+		ClassNode list = find("java/util/List");
+		ClassNode object = tree.getRootNode();
+
+		assertTrue(tree.isSubtype(arrayList, list));
+		assertTrue(tree.isSubtype(arrayList, object));
+		assertTrue(tree.isSubtype(list, list));
+		assertFalse(tree.isSubtype(list, arrayList));
+		assertFalse(tree.isSubtype(arrayList, find("java/util/Map")));
+	}
+
+	public void testTopologicalIds() {
+		ClassTreeIndex index = tree.getIndex();
+		assertEquals(tree.size(), index.size());
+		for(ClassNode cn : tree.vertices()) {
+			int id = index.getId(cn);
+			assertSame(cn, index.getNode(id));
+			for(ClassNode p : tree.getParents(cn)) {
+				assertTrue(index.getId(p) < id);
+				assertTrue(index.getLevel(p) < index.getLevel(cn));
+			}
+		}
+		assertEquals(0, index.getLevel(tree.getRootNode()));
+	}
+
+	public void testAllParentsOrder() {
+		ClassNode arrayList = find("java/util/ArrayList");
+		List<ClassNode> parents = tree.getAllParents(arrayList);
+		assertSame(arrayList, parents.get(0));
+		assertTrue(parents.contains(find("java/util/Collection")));
+		/* every class comes before its own parents. */
+		for(int i=0; i < parents.size(); i++) {
+			for(ClassNode p : tree.getParents(parents.get(i))) {
+				assertTrue(parents.indexOf(p) > i);
+			}
+		}
+
+		ClassNode collection = find("java/util/Collection");
+		List<ClassNode> children = tree.getAllChildren(collection);
+		assertSame(collection, children.get(children.size() - 1));
+		assertTrue(children.contains(arrayList));
+	}
+
+	public void testAppend() {
+		ClassTreeIndex index = tree.getIndex();
+		ClassNode list = find("java/util/List");
+		int descendants = index.getDescendantCount(list);
+		int size = index.size();
+
+		/* loads the class and adds it to the tree after the index was built. */
+		ClassNode cowList = find("java/util/concurrent/CopyOnWriteArrayList");
+		assertSame(index, tree.getIndex());
+		assertTrue(index.size() > size);
+		assertTrue(index.contains(cowList));
+		assertTrue(tree.isSubtype(cowList, list));
+		assertEquals(descendants + 1, index.getDescendantCount(list));
+		assertTrue(tree.getAllChildren(list).contains(cowList));
+		assertTrue(tree.getChildren(list).contains(cowList));
+	}
+
+	public void testAppendWithMissingParent() {
+		ClassNode list = find("java/util/List");
+		ClassNode object = tree.getRootNode();
+		ClassTreeIndex index = new ClassTreeIndex(tree);
+		int descendants = index.getDescendantCount(list);
+
+		ClassNode parent = new ClassNode();
+		ClassNode child = new ClassNode();
+		Map<ClassNode, List<ClassNode>> supers = new HashMap<>();
+		supers.put(parent, Arrays.asList(object, list));
+		supers.put(child, Arrays.asList(parent));
+
+		assertTrue(index.append(child, supers::get));
+		assertTrue(index.contains(parent));
+		assertTrue(index.getId(parent) < index.getId(child));
+		assertTrue(index.isSubtype(child, list));
+		assertEquals(Arrays.asList(child, parent), index.getDescendants(parent));
+		assertEquals(descendants + 2, index.getDescendantCount(list));
+		assertEquals(index.getLevel(parent) + 1, index.getLevel(child));
+
+		/* an ancestor that isn't in the tree at all can't be indexed. */
+		ClassNode orphan = new ClassNode();
+		assertFalse(index.append(orphan, c -> c == orphan ? Arrays.asList(new ClassNode()) : null));
+		assertFalse(index.contains(orphan));
+	}
+}
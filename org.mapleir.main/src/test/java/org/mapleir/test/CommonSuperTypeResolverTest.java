@@ -0,0 +1,73 @@
+package org.mapleir.test;
+
+import java.util.ArrayList;
+
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.ClassTreeIndex;
+import org.mapleir.app.service.CommonSuperTypeResolver;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.asm.ClassNode;
+
+import junit.framework.TestCase;
+
+public class CommonSuperTypeResolverTest extends TestCase {
+
+	private ApplicationClassSource app;
+	private CommonSuperTypeResolver resolver;
+
+	@Override
+	public void setUp() {
+		app = new ApplicationClassSource("test", new ArrayList<>());
+		app.addLibraries(new InstalledRuntimeClassSource(app));
+		resolver = app.getClassTree().getCommonSuperTypeResolver();
+	}
+
+	public void testCommonSuperClass() {
+		assertEquals("java/util/AbstractList", resolver.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"));
+		assertEquals("java/lang/Exception", resolver.getCommonSuperClass("java/io/IOException", "java/lang/RuntimeException"));
+		assertEquals("java/lang/Object", resolver.getCommonSuperClass("java/lang/String", "java/lang/Integer"));
+		/* either argument can be the super class. */
+		assertEquals("java/util/AbstractList", resolver.getCommonSuperClass("java/util/AbstractList", "java/util/ArrayList"));
+		assertEquals("java/util/AbstractList", resolver.getCommonSuperClass("java/util/ArrayList", "java/util/AbstractList"));
+		/* interfaces are merged to Object unless one implements the other. */
+		assertEquals("java/lang/Object", resolver.getCommonSuperClass("java/util/List", "java/util/Set"));
+		assertEquals("java/util/Collection", resolver.getCommonSuperClass("java/util/Collection", "java/util/List"));
+		assertEquals("java/lang/Object", resolver.getCommonSuperClass("does/not/Exist", "java/lang/String"));
+	}
+
+	public void testCommonSuperType() {
+		assertEquals("java/util/Collection", resolver.getCommonSuperType("java/util/List", "java/util/Set").getName());
+		assertEquals("java/lang/Exception", resolver.getCommonSuperType("java/io/IOException", "java/lang/RuntimeException").getName());
+		assertNull(resolver.getCommonSuperType("does/not/Exist", "java/lang/String"));
+	}
+
+	public void testCommonSuperTypeIsLeast() {
+		ClassTreeIndex index = app.getClassTree().getIndex();
+		String[][] pairs = {
+				{ "java/util/ArrayList", "java/util/LinkedList" },
+				{ "java/util/HashMap", "java/util/TreeMap" },
+				{ "java/lang/Integer", "java/lang/Long" } };
+		for (String[] p : pairs) {
+			ClassNode c = app.findClassNode(p[0]), d = app.findClassNode(p[1]);
+			ClassNode sup = resolver.getCommonSuperType(c, d);
+			assertTrue(index.isSubtype(c, sup));
+			assertTrue(index.isSubtype(d, sup));
+			/* no common super type of the two is below the one chosen. */
+			for (ClassNode other : index.getAncestors(c)) {
+				if (other != sup && index.isSubtype(d, other)) {
+					assertFalse(p[0] + " " + other, index.isSubtype(other, sup));
+				}
+			}
+		}
+	}
+
+	public void testCached() {
+		resolver.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList");
+		long misses = resolver.getMissCount();
+		for (int i = 0; i < 10; i++) {
+			resolver.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList");
+		}
+		assertEquals(misses, resolver.getMissCount());
+		assertEquals(11, resolver.getQueryCount());
+	}
+}
@@ -0,0 +1,141 @@
+package org.mapleir.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.ClassTree;
+import org.mapleir.app.service.CompleteResolvingJarDumper;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.objectweb.asm.ClassWriter;
+import org.topdank.byteengineer.commons.data.JarContents;
+import org.topdank.byteengineer.commons.data.JarResource;
+
+import junit.framework.TestCase;
+
+public class CompleteResolvingJarDumperTest extends TestCase {
+
+	private JarContents<ClassNode> contents;
+	private ApplicationClassSource app;
+
+	@Override
+	public void setUp() throws IOException {
+		contents = new JarContents<>();
+		contents.getClassContents().addAll(ClassHelper.parseClasses(ArrayList.class, HashMap.class, TreeMap.class, Vector.class, LinkedHashMap.class));
+		contents.getResourceContents().add(new JarResource("META-INF/a.txt", "a".getBytes()));
+
+		app = new ApplicationClassSource("test", contents.getClassContents());
+		app.addLibraries(new InstalledRuntimeClassSource(app));
+	}
+
+	private static Map<String, byte[]> read(File file) throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		try (JarFile jar = new JarFile(file)) {
+			Enumeration<JarEntry> it = jar.entries();
+			while (it.hasMoreElements()) {
+				JarEntry e = it.nextElement();
+				entries.put(e.getName(), jar.getInputStream(e).readAllBytes());
+			}
+		}
+		return entries;
+	}
+
+	private Map<String, byte[]> dump(CompleteResolvingJarDumper dumper) throws IOException {
+		File file = File.createTempFile("dumper", ".jar");
+		try {
+			dumper.dump(file);
+			return read(file);
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testParallelMatchesSerial() throws IOException {
+		Map<String, byte[]> serial = dump(new CompleteResolvingJarDumper(contents, app));
+		/* fewer slots than threads so that the writers have to wait. */
+		Map<String, byte[]> parallel = dump(new CompleteResolvingJarDumper(contents, app, 4, 2));
+
+		List<String> expected = new ArrayList<>();
+		for (ClassNode cn : contents.getClassContents()) {
+			expected.add(cn.getName() + ".class");
+		}
+		expected.add("META-INF/a.txt");
+
+		assertEquals(expected, new ArrayList<>(serial.keySet()));
+		assertEquals(expected, new ArrayList<>(parallel.keySet()));
+		for (String name : expected) {
+			assertTrue(name, Arrays.equals(serial.get(name), parallel.get(name)));
+		}
+	}
+
+	public void testReportsSlowestClasses() throws IOException {
+		CompleteResolvingJarDumper dumper = new CompleteResolvingJarDumper(contents, app, 2);
+		dump(dumper);
+
+		List<CompleteResolvingJarDumper.ClassTiming> slowest = dumper.getSlowestClasses();
+		assertEquals(contents.getClassContents().size(), slowest.size());
+		for (int i = 1; i < slowest.size(); i++) {
+			assertTrue(slowest.get(i - 1).getNanos() >= slowest.get(i).getNanos());
+		}
+	}
+
+	public void testReusedDumperReportsOnlyTheLastDump() throws IOException {
+		CompleteResolvingJarDumper dumper = new CompleteResolvingJarDumper(contents, app, 2);
+		dump(dumper);
+		dump(dumper);
+
+		List<CompleteResolvingJarDumper.ClassTiming> slowest = dumper.getSlowestClasses();
+		assertEquals(contents.getClassContents().size(), slowest.size());
+		for (CompleteResolvingJarDumper.ClassTiming t : slowest) {
+			assertEquals(t.getName(), CompleteResolvingJarDumper.WriteMode.FRAMES, t.getWriteMode());
+		}
+	}
+
+	public void testWriteClassIsUsedByBothModes() throws IOException {
+		String target = contents.getClassContents().get(0).getName();
+		byte[] custom = { 1, 2, 3 };
+		for (int threads : new int[] { 1, 4 }) {
+			CompleteResolvingJarDumper dumper = new CompleteResolvingJarDumper(contents, app, threads) {
+				@Override
+				protected byte[] writeClass(ClassNode cn) {
+					return cn.getName().equals(target) ? custom : super.writeClass(cn);
+				}
+			};
+			Map<String, byte[]> entries = dump(dumper);
+			assertTrue(Arrays.equals(custom, entries.get(target + ".class")));
+		}
+	}
+
+	public void testFailedClassesAreStillWritten() throws IOException {
+		for (int threads : new int[] { 1, 4 }) {
+			CompleteResolvingJarDumper dumper = new CompleteResolvingJarDumper(contents, app, threads) {
+				@Override
+				public ClassWriter buildClassWriter(ClassTree tree, int flags) {
+					throw new IllegalStateException();
+				}
+			};
+			Map<String, byte[]> entries = dump(dumper);
+			for (ClassNode cn : contents.getClassContents()) {
+				byte[] bytes = entries.get(cn.getName() + ".class");
+				assertNotNull(cn.getName(), bytes);
+				assertEquals(cn.getName(), ClassHelper.create(bytes).getName());
+			}
+			for (CompleteResolvingJarDumper.ClassTiming t : dumper.getSlowestClasses()) {
+				assertEquals(t.getName(), CompleteResolvingJarDumper.WriteMode.NONE, t.getWriteMode());
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.codegen.ControlFlowGraphDumper;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+
+import junit.framework.TestCase;
+
+public class ControlFlowGraphDumperTest extends TestCase {
+
+	public void testOrderStartsWithEntry() throws IOException {
+		for(ClassNode cn : ClassHelper.parseClasses(ArrayList.class, HashMap.class, TreeMap.class, String.class)) {
+			for(MethodNode m : cn.getMethods()) {
+				if(m.node.instructions.size() == 0) {
+					continue;
+				}
+				ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+				BoissinotDestructor.leaveSSA(cfg);
+				List<BasicBlock> order = ControlFlowGraphDumper.computeOrder(cfg);
+				assertSame(m.toString(), cfg.getEntries().iterator().next(), order.get(0));
+				assertEquals(m.toString(), cfg.size(), new HashSet<>(order).size());
+				assertEquals(m.toString(), cfg.size(), order.size());
+			}
+		}
+	}
+
+	public void testLayoutSavesGotos() throws IOException {
+		int before = 0, after = 0;
+		for(ClassNode cn : ClassHelper.parseClasses(ArrayList.class, HashMap.class, TreeMap.class, String.class)) {
+			for(MethodNode m : cn.getMethods()) {
+				if(m.node.instructions.size() == 0) {
+					continue;
+				}
+				before += countGotos(m.node.instructions);
+				ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+				BoissinotDestructor.leaveSSA(cfg);
+				LocalsReallocator.realloc(cfg);
+				new ControlFlowGraphDumper(cfg, m).dump();
+				after += countGotos(m.node.instructions);
+			}
+		}
+		/* javac only emits the gotos it needs, so not having more than it
+		 * means the fall-throughs were mostly recovered. */
+		assertTrue(before + " < " + after, after <= before);
+	}
+
+	private static int countGotos(InsnList insns) {
+		int count = 0;
+		for(AbstractInsnNode insn : insns) {
+			if(insn.getOpcode() == Opcodes.GOTO) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
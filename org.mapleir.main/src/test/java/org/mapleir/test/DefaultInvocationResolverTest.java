@@ -0,0 +1,64 @@
+package org.mapleir.test;
+
+import java.util.ArrayList;
+
+import org.mapleir.DefaultInvocationResolver;
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+
+import junit.framework.TestCase;
+
+public class DefaultInvocationResolverTest extends TestCase {
+
+	private static final String[] CLASSES = {
+			"java/util/ArrayList", "java/util/LinkedList", "java/util/HashMap",
+			"java/util/TreeMap", "java/util/concurrent/CopyOnWriteArrayList",
+			"java/io/BufferedInputStream", "java/lang/StringBuilder"
+	};
+
+	private ApplicationClassSource app;
+
+	@Override
+	public void setUp() {
+		app = new ApplicationClassSource("test", new ArrayList<>());
+		app.addLibraries(new InstalledRuntimeClassSource(app));
+		app.getClassTree();
+		for(String name : CLASSES) {
+			assertNotNull(name, app.findClassNode(name));
+		}
+	}
+
+	private void assertResolves(DefaultInvocationResolver resolver, String receiver, String name, String desc, String owner) {
+		MethodNode m = resolver.resolve(app.findClassNode(receiver), name, desc, false);
+		assertNotNull(receiver + "." + name + desc, m);
+		assertEquals(owner, m.owner.getName());
+	}
+
+	private void check(DefaultInvocationResolver resolver) {
+		assertResolves(resolver, "java/util/ArrayList", "toString", "()Ljava/lang/String;", "java/util/AbstractCollection");
+		assertResolves(resolver, "java/util/ArrayList", "add", "(Ljava/lang/Object;)Z", "java/util/ArrayList");
+		assertResolves(resolver, "java/util/LinkedList", "iterator", "()Ljava/util/Iterator;", "java/util/AbstractSequentialList");
+		assertResolves(resolver, "java/util/TreeMap", "getClass", "()Ljava/lang/Class;", "java/lang/Object");
+		assertResolves(resolver, "java/io/BufferedInputStream", "read", "([B)I", "java/io/FilterInputStream");
+	}
+
+	public void testSequential() {
+		check(new DefaultInvocationResolver(app));
+	}
+
+	public void testParallel() {
+		DefaultInvocationResolver resolver = new DefaultInvocationResolver(app, 4);
+		check(resolver);
+		for(ClassNode cn : app.getClassTree().vertices()) {
+			assertNotNull(cn.getName(), resolver.resolve(cn, "hashCode", "()I", false));
+		}
+	}
+
+	public void testTablesShared() {
+		DefaultInvocationResolver resolver = new DefaultInvocationResolver(app, 2);
+		/* interfaces without methods of their own inherit Object's tables. */
+		assertTrue(resolver.getDistinctTableCount() < 2 * app.getClassTree().size());
+	}
+}
@@ -0,0 +1,106 @@
+package org.mapleir.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.ClassSource;
+import org.mapleir.app.service.InstalledRuntimeClassSource;
+import org.mapleir.app.service.LibraryClassSource;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+
+import junit.framework.TestCase;
+
+public class DeferredClassSourceTest extends TestCase {
+
+	private static final Class<?>[] CLASSES = { ArrayList.class, HashMap.class, List.class };
+
+	private File jar;
+	private ApplicationClassSource app;
+
+	@Override
+	public void setUp() throws IOException {
+		jar = File.createTempFile("library", ".jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (Class<?> c : CLASSES) {
+				String name = c.getName().replace('.', '/') + ".class";
+				out.putNextEntry(new JarEntry(name));
+				try (InputStream in = ClassLoader.getSystemResourceAsStream(name)) {
+					out.write(in.readAllBytes());
+				}
+				out.closeEntry();
+			}
+		}
+		app = new ApplicationClassSource("test", new ArrayList<>());
+	}
+
+	@Override
+	public void tearDown() {
+		jar.delete();
+	}
+
+	private static int instructions(ClassNode cn) {
+		int count = 0;
+		for (MethodNode m : cn.getMethods()) {
+			count += m.node.instructions.size();
+		}
+		return count;
+	}
+
+	public void testParsedOnDemand() throws IOException {
+		LibraryClassSource lib = LibraryClassSource.deferred(app, jar, ClassSource.Tier.FULL);
+		app.addLibraries(lib);
+
+		assertEquals(CLASSES.length, lib.size());
+		assertEquals(CLASSES.length, lib.getDeferredCount());
+		assertTrue(lib.contains("java/util/HashMap"));
+		assertEquals(0, lib.getInflatedCount());
+
+		ClassNode cn = app.findClassNode("java/util/HashMap");
+		assertNotNull(cn);
+		assertSame(cn, app.findClassNode("java/util/HashMap"));
+		assertEquals(1, lib.getInflatedCount());
+		assertTrue(lib.hasCode(cn));
+		assertTrue(instructions(cn) > 0);
+
+		int count = 0;
+		for (ClassNode c : lib.iterate()) {
+			count++;
+		}
+		assertEquals(CLASSES.length, count);
+		assertEquals(CLASSES.length, lib.getInflatedCount());
+		assertEquals(0, lib.getDeferredCount());
+	}
+
+	public void testHeaderTier() throws IOException {
+		LibraryClassSource lib = LibraryClassSource.deferred(app, jar, ClassSource.Tier.HEADER);
+		app.addLibraries(lib, new InstalledRuntimeClassSource(app));
+
+		/* building the tree parses every library class. */
+		app.getClassTree();
+		assertEquals(CLASSES.length, lib.getInflatedCount());
+
+		ClassNode cn = app.findClassNode("java/util/ArrayList");
+		assertFalse(lib.hasCode(cn));
+		assertEquals(0, instructions(cn));
+
+		/* the application loads the code from the library the class is in. */
+		assertTrue(app.hasCode(cn));
+		assertSame(cn, app.loadCode(cn));
+		assertTrue(lib.hasCode(cn));
+		assertTrue(instructions(cn) > 0);
+		assertEquals(1, lib.getCodeLoadedCount());
+
+		/* loading twice is a no-op. */
+		lib.loadCode(cn);
+		assertEquals(1, lib.getCodeLoadedCount());
+	}
+}
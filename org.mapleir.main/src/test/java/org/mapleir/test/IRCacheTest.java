@@ -0,0 +1,243 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.IRCache;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.expr.ConstantExpr;
+import org.mapleir.ir.code.stmt.PopStmt;
+import org.objectweb.asm.tree.InsnList;
+
+import junit.framework.TestCase;
+
+public class IRCacheTest extends TestCase {
+
+	private List<MethodNode> methods;
+
+	@Override
+	public void setUp() throws IOException {
+		methods = parseMethods();
+	}
+
+	/* every cache is given a freshly parsed copy. */
+	private static List<MethodNode> parseMethods() throws IOException {
+		return IRFixtures.methods(ArrayList.class, HashMap.class, TreeMap.class);
+	}
+
+	public void testParallelBuild() throws IOException {
+		List<MethodNode> other = parseMethods();
+
+		IRCache serial = new IRCache();
+		assertEquals(methods.size(), serial.buildAll(methods, 1));
+
+		IRCache parallel = new IRCache();
+		assertEquals(other.size(), parallel.buildAll(other, 4));
+
+		assertEquals(serial.size(), parallel.size());
+		for(int i=0; i < methods.size(); i++) {
+			/* the builder's ssa naming and copy propagation depend on
+			 * identity hash iteration order, so the graphs are only
+			 * compared by shape. */
+			ControlFlowGraph expected = serial.get(methods.get(i));
+			ControlFlowGraph actual = parallel.get(other.get(i));
+			assertNotNull(actual);
+			actual.verify();
+			assertEquals(methods.get(i).toString(), expected.size(), actual.size());
+		}
+	}
+
+	public void testBuildAllSkipsCached() {
+		IRCache cache = new IRCache();
+		cache.getFor(methods.get(0));
+		assertEquals(methods.size() - 1, cache.buildAll(methods, 4));
+		assertEquals(0, cache.buildAll(methods, 4));
+	}
+
+	public void testConcurrentRequestsBuildOnce() throws Exception {
+		MethodNode m = methods.get(0);
+		IRCache cache = new IRCache(mn -> {
+			try {
+				Thread.sleep(50);
+			} catch(InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return ControlFlowGraphBuilder.build(mn);
+		});
+
+		List<Future<ControlFlowGraph>> results = new ArrayList<>();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			for(int i=0; i < 4; i++) {
+				results.add(pool.submit(() -> cache.getFor(m)));
+			}
+			ControlFlowGraph cfg = results.get(0).get();
+			for(Future<ControlFlowGraph> f : results) {
+				assertSame(cfg, f.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1, cache.getBuiltCount());
+	}
+
+	public void testBuildMayRequestOtherGraphs() {
+		MethodNode first = methods.get(0), second = methods.get(1);
+		IRCache[] holder = new IRCache[1];
+		IRCache cache = new IRCache(mn -> {
+			/* this used to run inside the map's lock. */
+			if(mn == first) {
+				assertNotNull(holder[0].getFor(second));
+			}
+			return ControlFlowGraphBuilder.build(mn);
+		});
+		holder[0] = cache;
+		assertNotNull(cache.getFor(first));
+		assertEquals(2, cache.size());
+	}
+
+	public void testBoundedEvictsLeastRecentlyUsed() {
+		IRCache cache = new IRCache(ControlFlowGraphBuilder::build, 4, 0);
+		cache.buildAll(methods, 1);
+
+		assertEquals(4, cache.size());
+		assertEquals(methods.size() - 4, cache.getEvictedCount());
+		assertEquals(0, cache.getLoweredCount());
+		for(MethodNode m : methods.subList(methods.size() - 4, methods.size())) {
+			assertTrue(cache.containsKey(m));
+		}
+
+		/* clean graphs are rebuilt from the method and only evicted again at
+		 * the next boundary. */
+		MethodNode first = methods.get(0);
+		assertFalse(cache.containsKey(first));
+		assertNotNull(cache.getFor(first));
+		assertEquals(1, cache.getRebuiltCount());
+		assertEquals(5, cache.size());
+		assertEquals(1, cache.evictOverBudget());
+		assertEquals(4, cache.size());
+		assertTrue(cache.containsKey(first));
+	}
+
+	public void testBoundedLowersDirtyGraphs() {
+		IRCache cache = new IRCache(ControlFlowGraphBuilder::build, 1, 0);
+		MethodNode first = methods.get(0);
+		ControlFlowGraph cfg = cache.getFor(first);
+		cfg.markDirty();
+
+		/* a graph that is in use is never evicted by a lookup. */
+		cache.getFor(methods.get(1));
+		assertTrue(cache.containsKey(first));
+		assertEquals(0, cache.getEvictedCount());
+
+		assertEquals(1, cache.evictOverBudget());
+		assertFalse(cache.containsKey(first));
+		assertEquals(1, cache.getEvictedCount());
+		assertEquals(1, cache.getLoweredCount());
+
+		/* the lowered code can be lifted again. */
+		cache.getFor(first).verify();
+	}
+
+	public void testCheckedOutGraphsStayResident() {
+		IRCache cache = new IRCache(ControlFlowGraphBuilder::build, 1, 0);
+		MethodNode first = methods.get(0);
+		ControlFlowGraph cfg = cache.checkout(first);
+		cfg.markDirty();
+
+		/* the budget can't be met while the graph is checked out. */
+		cache.getFor(methods.get(1));
+		cache.getFor(methods.get(2));
+		assertEquals(2, cache.evictOverBudget());
+		assertSame(cfg, cache.get(first));
+		assertEquals(0, cache.getLoweredCount());
+
+		cache.release(first);
+		cache.getFor(methods.get(1));
+		assertEquals(1, cache.evictOverBudget());
+		assertFalse(cache.containsKey(first));
+		assertEquals(1, cache.getLoweredCount());
+
+		try {
+			cache.release(first);
+			fail();
+		} catch(IllegalStateException e) {
+		}
+	}
+
+	public void testStmtBudgetFollowsEdits() {
+		IRCache cache = new IRCache(ControlFlowGraphBuilder::build, 0, 1000);
+		MethodNode first = methods.get(0);
+		ControlFlowGraph cfg = cache.getFor(first);
+		cache.getFor(methods.get(1));
+		assertEquals(0, cache.evictOverBudget());
+
+		/* once the graph grows past the budget it is written back at the next
+		 * boundary, even though it was not looked up again. */
+		BasicBlock entry = cfg.getEntries().iterator().next();
+		for(int i=0; i < 1000; i++) {
+			entry.add(0, new PopStmt(new ConstantExpr(0)));
+		}
+		assertEquals(1, cache.evictOverBudget());
+		assertFalse(cache.containsKey(first));
+		assertTrue(cache.containsKey(methods.get(1)));
+		assertEquals(1, cache.getLoweredCount());
+	}
+
+	public void testParallelLower() throws IOException {
+		List<MethodNode> other = parseMethods();
+
+		IRCache serial = new IRCache();
+		serial.buildAll(methods, 1);
+		assertEquals(serial.size(), serial.lowerAll(1));
+
+		IRCache parallel = new IRCache();
+		parallel.buildAll(other, 4);
+		assertEquals(parallel.size(), parallel.lowerAll(4));
+		assertEquals(0, parallel.getFailedCount());
+
+		for(int i=0; i < methods.size(); i++) {
+			MethodNode expected = methods.get(i);
+			MethodNode actual = other.get(i);
+			assertEquals(expected.toString(), expected.node.tryCatchBlocks.size(), actual.node.tryCatchBlocks.size());
+			/* the lowered code can be lifted again. */
+			if(actual.node.instructions.size() > 0) {
+				ControlFlowGraphBuilder.build(actual).verify();
+			}
+		}
+	}
+
+	public void testFailedLowerKeepsCode() {
+		IRCache cache = new IRCache();
+		cache.buildAll(methods, 1);
+
+		MethodNode broken = null;
+		for(MethodNode m : methods) {
+			if(m.node.instructions.size() > 0) {
+				broken = m;
+				break;
+			}
+		}
+		InsnList insns = broken.node.instructions;
+		int size = insns.size();
+		/* an unreachable block fails verification. */
+		ControlFlowGraph cfg = cache.get(broken);
+		cfg.addVertex(new BasicBlock(cfg));
+
+		int resident = cache.size();
+		assertEquals(resident - 1, cache.lowerAll(4));
+		assertEquals(1, cache.getFailedCount());
+		assertFalse(cache.containsKey(broken));
+		assertSame(insns, broken.node.instructions);
+		assertEquals(size, broken.node.instructions.size());
+	}
+}
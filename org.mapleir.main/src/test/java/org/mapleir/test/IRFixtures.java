@@ -0,0 +1,77 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapleir.asm.ClassHelper;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.codegen.ControlFlowGraphDumper;
+
+/**
+ * Methods and graphs of real classes for the tests that run the IR over
+ * them. Building a graph modifies the method it was built from, so the
+ * classes are parsed again on every call.
+ */
+final class IRFixtures {
+
+	private IRFixtures() {
+	}
+
+	/**
+	 * @return The methods of the classes that have code.
+	 */
+	static List<MethodNode> methods(Class<?>... classes) throws IOException {
+		List<MethodNode> methods = new ArrayList<>();
+		for(ClassNode cn : ClassHelper.parseClasses(classes)) {
+			for(MethodNode m : cn.getMethods()) {
+				if(m.node.instructions.size() > 0) {
+					methods.add(m);
+				}
+			}
+		}
+		return methods;
+	}
+
+	/**
+	 * @return The graphs of the methods of the classes that have code.
+	 */
+	static List<ControlFlowGraph> graphs(Class<?>... classes) throws IOException {
+		List<ControlFlowGraph> graphs = new ArrayList<>();
+		for(MethodNode m : methods(classes)) {
+			graphs.add(ControlFlowGraphBuilder.build(m));
+		}
+		return graphs;
+	}
+
+	/**
+	 * @param desc The descriptor of the method or null to take the first
+	 * method with the name.
+	 * @return The method of the class with the name.
+	 */
+	static MethodNode method(Class<?> c, String name, String desc) throws IOException {
+		for(MethodNode m : methods(c)) {
+			if(m.getName().equals(name) && (desc == null || m.getDesc().equals(desc))) {
+				return m;
+			}
+		}
+		throw new IllegalArgumentException(c.getName() + "." + name);
+	}
+
+	/**
+	 * Takes the graph out of SSA form and writes it back to its method.
+	 *
+	 * @return The number of local slots that the method uses.
+	 */
+	static int lower(ControlFlowGraph cfg, MethodNode m) {
+		BoissinotDestructor.leaveSSA(cfg);
+		int slots = LocalsReallocator.realloc(cfg);
+		new ControlFlowGraphDumper(cfg, m).dump();
+		return slots;
+	}
+}
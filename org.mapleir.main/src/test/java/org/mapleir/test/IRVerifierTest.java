@@ -0,0 +1,79 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.context.IRCache;
+import org.mapleir.context.IRVerifier;
+import org.mapleir.context.IRVerifier.Level;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+
+import junit.framework.TestCase;
+
+public class IRVerifierTest extends TestCase {
+
+	private List<MethodNode> methods;
+
+	@Override
+	public void setUp() throws IOException {
+		methods = IRFixtures.methods(ArrayList.class, HashMap.class, TreeMap.class);
+	}
+
+	public void testSampleIsDeterministic() {
+		IRVerifier a = new IRVerifier(Level.SAMPLED, 0.25D, 42L);
+		IRVerifier b = new IRVerifier(Level.SAMPLED, 0.25D, 42L);
+		IRVerifier other = new IRVerifier(Level.SAMPLED, 0.25D, 43L);
+
+		int selected = 0;
+		boolean differs = false;
+		for(MethodNode m : methods) {
+			assertEquals(m.toString(), a.isSelected(m), b.isSelected(m));
+			if(a.isSelected(m)) {
+				selected++;
+			}
+			differs |= a.isSelected(m) != other.isSelected(m);
+		}
+		assertTrue(selected > 0 && selected < methods.size());
+		assertTrue(differs);
+	}
+
+	public void testChecksPerLevel() {
+		for(Level level : Level.values()) {
+			IRVerifier verifier = new IRVerifier(level);
+			IRCache cache = new IRCache(ControlFlowGraphBuilder::build, 0, 0, verifier);
+			cache.buildAll(methods, 1);
+			int graphs = cache.size();
+			int sampled = 0;
+			for(MethodNode m : cache.keySet()) {
+				if(verifier.isSelected(m)) {
+					sampled++;
+				}
+			}
+			assertEquals(graphs, cache.lowerAll(1));
+
+			long expected;
+			switch(level) {
+				case OFF:
+					expected = 0;
+					break;
+				case SAMPLED:
+					expected = 2 * sampled;
+					break;
+				case BOUNDARIES:
+					expected = 2 * graphs;
+					break;
+				default:
+					expected = 3 * graphs;
+					break;
+			}
+			assertEquals(level.toString(), expected, verifier.getCheckCount());
+			if(expected == 0) {
+				assertEquals(0, verifier.getTime());
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.algorithms.BoissinotDestructor;
+import org.mapleir.ir.algorithms.LocalsReallocator;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.stmt.copy.CopyVarStmt;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+
+import junit.framework.TestCase;
+
+public class LocalsReallocatorTest extends TestCase {
+
+	public void testLoweredCodeFitsFrame() throws IOException, AnalyzerException {
+		long saved = LocalsReallocator.getTotalSlotsSaved();
+		for(MethodNode m : IRFixtures.methods(ArrayList.class, HashMap.class, TreeMap.class, String.class,
+				Long.class, Math.class, LocalsReallocatorTest.class)) {
+			int slots = IRFixtures.lower(ControlFlowGraphBuilder.build(m), m);
+
+			/* the analyzer rejects any slot outside of the frame and any
+			 * read of a slot that was last written with another kind of
+			 * value. */
+			m.node.maxLocals = slots;
+			m.node.maxStack = 256;
+			new Analyzer<BasicValue>(new BasicVerifier()).analyze(m.getOwner(), m.node);
+		}
+		assertTrue(LocalsReallocator.getTotalSlotsSaved() > saved);
+	}
+
+	public void testParametersKeepTheirSlots() throws IOException {
+		ControlFlowGraph cfg = lower("params");
+		int[] slots = new int[3];
+		int i = 0;
+		for(Stmt stmt : cfg.getEntries().iterator().next()) {
+			if(stmt.getOpcode() == Opcode.LOCAL_STORE && ((CopyVarStmt) stmt).isSynthetic()) {
+				slots[i++] = ((CopyVarStmt) stmt).getVariable().getLocal().getCodeIndex();
+			}
+		}
+		assertEquals(3, i);
+		assertEquals(0, slots[0]);
+		assertEquals(1, slots[1]);
+		assertEquals(3, slots[2]);
+	}
+
+	public void testDisjointLocalsShareSlots() throws IOException {
+		MethodNode m = find("sequential");
+		int before = m.node.maxLocals;
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+		BoissinotDestructor.leaveSSA(cfg);
+		long saved = LocalsReallocator.getTotalSlotsSaved();
+		/* javac reuses the slots of the loop counters, so should we. */
+		assertTrue(LocalsReallocator.realloc(cfg) <= before);
+		assertTrue(LocalsReallocator.getTotalSlotsSaved() > saved);
+	}
+
+	private static MethodNode find(String name) throws IOException {
+		return IRFixtures.method(LocalsReallocatorTest.class, name, null);
+	}
+
+	private static ControlFlowGraph lower(String name) throws IOException {
+		ControlFlowGraph cfg = ControlFlowGraphBuilder.build(find(name));
+		BoissinotDestructor.leaveSSA(cfg);
+		LocalsReallocator.realloc(cfg);
+		return cfg;
+	}
+
+	static long params(int a, long b, Object c) {
+		long r = 0;
+		for(int i=0; i < a; i++) {
+			r += b * i + c.hashCode();
+		}
+		return r;
+	}
+
+	static long sequential(int n) {
+		long total = 0;
+		for(int i=0; i < n; i++) {
+			total += i * 3;
+		}
+		for(long j=0; j < n; j++) {
+			total ^= j;
+		}
+		for(double d=0; d < n; d += 0.5) {
+			total += (long) d;
+		}
+		return total;
+	}
+}
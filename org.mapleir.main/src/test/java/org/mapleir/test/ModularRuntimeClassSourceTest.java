@@ -0,0 +1,68 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import org.mapleir.app.service.ApplicationClassSource;
+import org.mapleir.app.service.ModularRuntimeClassSource;
+import org.mapleir.asm.ClassNode;
+import org.mapleir.asm.MethodNode;
+
+import junit.framework.TestCase;
+
+public class ModularRuntimeClassSourceTest extends TestCase {
+
+	private ApplicationClassSource app;
+	private ModularRuntimeClassSource lib;
+
+	@Override
+	public void setUp() throws IOException {
+		app = new ApplicationClassSource("test", new ArrayList<>());
+		lib = new ModularRuntimeClassSource(app);
+		app.addLibraries(lib);
+		app.getClassTree();
+	}
+
+	public void testIndexesPackages() {
+		assertTrue(lib.getPackageCount() > 100);
+	}
+
+	public void testLoadsHeaders() {
+		ClassNode cn = app.findClassNode("java/util/ArrayList");
+		assertNotNull(cn);
+		assertTrue(app.isLibraryClass("java/util/ArrayList"));
+		assertEquals("java/util/AbstractList", cn.node.superName);
+		assertFalse(cn.getMethods().isEmpty());
+		for (MethodNode m : cn.getMethods()) {
+			assertEquals(0, m.node.instructions.size());
+		}
+		assertSame(cn, app.findClassNode("java/util/ArrayList"));
+		assertTrue(app.getClassTree().containsVertex(cn));
+	}
+
+	public void testOtherModules() {
+		assertNotNull(app.findClassNode("java/sql/Connection"));
+		assertNotNull(app.findClassNode("java/util/logging/Logger"));
+	}
+
+	public void testMissingClasses() {
+		assertFalse(lib.contains("does/not/Exist"));
+		assertFalse(lib.contains("java/lang/DoesNotExist"));
+		assertNull(app.findClassNode("java/lang/DoesNotExist"));
+	}
+
+	public void testClose() throws IOException {
+		/* the running runtime's image is shared and stays open. */
+		lib.close();
+		assertNotNull(app.findClassNode("java/util/HashMap"));
+
+		ApplicationClassSource other = new ApplicationClassSource("other", new ArrayList<>());
+		ModularRuntimeClassSource home = new ModularRuntimeClassSource(other, Paths.get(System.getProperty("java.home")));
+		other.addLibraries(home);
+		other.getClassTree();
+		assertNotNull(other.findClassNode("java/util/ArrayList"));
+		home.close();
+		home.close();
+	}
+}
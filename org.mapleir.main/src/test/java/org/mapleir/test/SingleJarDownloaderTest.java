@@ -0,0 +1,91 @@
+package org.mapleir.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.mapleir.asm.ClassNode;
+import org.topdank.byteengineer.commons.asm.DefaultASMFactory;
+import org.topdank.byteengineer.commons.data.JarInfo;
+import org.topdank.byteengineer.commons.data.JarResource;
+import org.topdank.byteio.in.SingleJarDownloader;
+
+import junit.framework.TestCase;
+
+public class SingleJarDownloaderTest extends TestCase {
+
+	private static final Class<?>[] CLASSES = { ArrayList.class, HashMap.class, String.class, Integer.class };
+
+	private File jar;
+
+	@Override
+	public void setUp() throws IOException {
+		jar = File.createTempFile("downloader", ".jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (Class<?> c : CLASSES) {
+				write(out, c.getName().replace('.', '/') + ".class", bytes(c));
+			}
+			write(out, "res/a.txt", "hello".getBytes());
+			/* the same class again under a different entry. */
+			write(out, "copy/String.class", bytes(String.class));
+			for (int i = 0; i < 100; i++) {
+				write(out, "res/" + i + ".txt", new byte[i]);
+			}
+		}
+	}
+
+	@Override
+	public void tearDown() {
+		jar.delete();
+	}
+
+	private static byte[] bytes(Class<?> c) throws IOException {
+		try (InputStream in = ClassLoader.getSystemResourceAsStream(c.getName().replace('.', '/') + ".class")) {
+			return in.readAllBytes();
+		}
+	}
+
+	private static void write(JarOutputStream out, String name, byte[] bytes) throws IOException {
+		out.putNextEntry(new JarEntry(name));
+		out.write(bytes);
+		out.closeEntry();
+	}
+
+	private SingleJarDownloader<ClassNode> download(int parallelism) throws IOException {
+		SingleJarDownloader<ClassNode> dl = new SingleJarDownloader<>(new DefaultASMFactory(), new JarInfo(jar), parallelism);
+		dl.download();
+		return dl;
+	}
+
+	public void testContentsInEntryOrder() throws IOException {
+		for (int parallelism : new int[] { 1, 4 }) {
+			SingleJarDownloader<ClassNode> dl = download(parallelism);
+
+			List<ClassNode> classes = dl.getJarContents().getClassContents();
+			assertEquals(CLASSES.length, classes.size());
+			for (int i = 0; i < CLASSES.length; i++) {
+				assertEquals(CLASSES[i].getName().replace('.', '/'), classes.get(i).getName());
+			}
+
+			List<JarResource> resources = dl.getJarContents().getResourceContents();
+			assertEquals(101, resources.size());
+			assertEquals("res/a.txt", resources.get(0).getName());
+			assertEquals("hello", new String(resources.get(0).getData()));
+			for (int i = 0; i < 100; i++) {
+				assertEquals(i, resources.get(i + 1).getData().length);
+			}
+		}
+	}
+
+	public void testReportsDuplicates() throws IOException {
+		SingleJarDownloader<ClassNode> dl = download(4);
+		assertEquals(1, dl.getDuplicates().size());
+		assertEquals("copy/String.class", dl.getDuplicates().get(0));
+	}
+}
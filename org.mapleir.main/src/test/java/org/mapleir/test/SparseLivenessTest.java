@@ -0,0 +1,100 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.mapleir.flowgraph.edges.FlowEdge;
+import org.mapleir.ir.algorithms.SSABlockLivenessAnalyser;
+import org.mapleir.ir.algorithms.SSADefUseMap;
+import org.mapleir.ir.algorithms.SparseLivenessAnalyser;
+import org.mapleir.ir.cfg.Analysis;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.Expr;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.expr.VarExpr;
+import org.mapleir.ir.code.stmt.copy.CopyPhiStmt;
+import org.mapleir.ir.locals.Local;
+
+import junit.framework.TestCase;
+
+public class SparseLivenessTest extends TestCase {
+
+	private List<ControlFlowGraph> graphs;
+
+	@Override
+	public void setUp() throws IOException {
+		graphs = IRFixtures.graphs(ArrayList.class, HashMap.class);
+	}
+
+	public void testMatchesFixedPointAnalyser() throws IOException {
+		List<ControlFlowGraph> all = new ArrayList<>(graphs);
+		all.addAll(IRFixtures.graphs(TreeMap.class, String.class));
+		for(ControlFlowGraph cfg : all) {
+			SSADefUseMap defuse = cfg.getAnalyses().get(Analysis.DEF_USE);
+			SSABlockLivenessAnalyser expected = new SSABlockLivenessAnalyser(cfg);
+			expected.compute();
+			SparseLivenessAnalyser cached = new SparseLivenessAnalyser(cfg, defuse, true);
+			SparseLivenessAnalyser uncached = new SparseLivenessAnalyser(cfg, defuse, false);
+			for(BasicBlock b : cfg.vertices()) {
+				for(Local l : defuse.defs.keySet()) {
+					String where = cfg.getJavaDesc() + " " + b + " " + l;
+					assertEquals(where, expected.in(b).contains(l), cached.isLiveIn(b, l));
+					assertEquals(where, expected.in(b).contains(l), uncached.isLiveIn(b, l));
+					assertEquals(where, expected.out(b).contains(l), cached.isLiveOut(b, l));
+					assertEquals(where, expected.out(b).contains(l), uncached.isLiveOut(b, l));
+				}
+			}
+		}
+	}
+
+	public void testLiveRangesAreDominated() {
+		for(ControlFlowGraph cfg : graphs) {
+			SparseLivenessAnalyser liveness = cfg.getAnalyses().get(Analysis.SPARSE_LIVENESS);
+			SSADefUseMap defuse = cfg.getAnalyses().get(Analysis.DEF_USE);
+			for(Local l : defuse.defs.keySet()) {
+				BasicBlock def = defuse.defs.get(l);
+				for(BasicBlock b : liveness.liveInBlocks(l)) {
+					assertTrue(cfg.getAnalyses().get(Analysis.DOMINATORS).dominates(def, b));
+				}
+				for(BasicBlock u : defuse.uses.getNonNull(l)) {
+					if(u != def) {
+						assertTrue(liveness.isLiveIn(u, l));
+					}
+				}
+			}
+		}
+	}
+
+	public void testLiveOutMeansLiveIntoSuccessor() {
+		for(ControlFlowGraph cfg : graphs) {
+			SparseLivenessAnalyser liveness = cfg.getAnalyses().get(Analysis.SPARSE_LIVENESS);
+			SSADefUseMap defuse = cfg.getAnalyses().get(Analysis.DEF_USE);
+			for(Local l : defuse.defs.keySet()) {
+				BasicBlock def = defuse.defs.get(l);
+				for(BasicBlock b : cfg.vertices()) {
+					if(b == def) {
+						continue;
+					}
+					/* a phi target is live into its own block but not out of the
+					 * predecessors, which pass the arguments on the edges instead. */
+					boolean succLive = false;
+					for(FlowEdge<BasicBlock> e : cfg.getEdges(b)) {
+						succLive |= e.dst() != def && liveness.isLiveIn(e.dst(), l);
+						for(Stmt stmt : e.dst()) {
+							if(stmt.getOpcode() == Opcode.PHI_STORE) {
+								Expr arg = ((CopyPhiStmt) stmt).getExpression().getArgument(b);
+								succLive |= arg instanceof VarExpr && ((VarExpr) arg).getLocal() == l;
+							}
+						}
+					}
+					assertEquals(succLive, liveness.isLiveOut(b, l));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.mapleir.asm.MethodNode;
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.cfg.builder.ControlFlowGraphBuilder;
+import org.mapleir.ir.cfg.builder.DefUseVerifier;
+import org.mapleir.ir.code.Opcode;
+import org.mapleir.ir.code.Stmt;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+
+import junit.framework.TestCase;
+
+public class StraightLineTest extends TestCase {
+
+	public void testStraightLineMethods() throws IOException {
+		int straightLine = 0;
+		for(MethodNode m : IRFixtures.methods(ArrayList.class, HashMap.class)) {
+			ControlFlowGraph cfg = ControlFlowGraphBuilder.build(m);
+			if(!cfg.isStraightLine()) {
+				continue;
+			}
+			straightLine++;
+
+			DefUseVerifier.verify(cfg);
+			BasicBlock b = cfg.vertices().iterator().next();
+			for(Stmt stmt : b) {
+				assertTrue(m.toString(), stmt.getOpcode() != Opcode.PHI_STORE);
+			}
+
+			IRFixtures.lower(cfg, m);
+			assertTrue(m.node.tryCatchBlocks.isEmpty());
+			for(AbstractInsnNode ain : m.node.instructions) {
+				assertFalse(m.toString(), ain instanceof JumpInsnNode);
+			}
+		}
+		// getters, setters and the like
+		assertTrue(straightLine > 10);
+	}
+
+	public void testBranchingMethodIsNotStraightLine() throws IOException {
+		MethodNode m = IRFixtures.method(HashMap.class, "hash", "(Ljava/lang/Object;)I");
+		assertFalse(ControlFlowGraphBuilder.build(m).isStraightLine());
+	}
+}
@@ -0,0 +1,87 @@
+package org.mapleir.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mapleir.ir.cfg.BasicBlock;
+import org.mapleir.ir.cfg.ControlFlowGraph;
+import org.mapleir.ir.code.CodeUnit;
+import org.mapleir.ir.code.Stmt;
+import org.mapleir.ir.code.stmt.NopStmt;
+
+import junit.framework.TestCase;
+
+public class UnitIdTest extends TestCase {
+
+	private List<ControlFlowGraph> graphs;
+
+	@Override
+	public void setUp() throws IOException {
+		graphs = IRFixtures.graphs(ArrayList.class);
+	}
+
+	private static List<CodeUnit> units(ControlFlowGraph cfg) {
+		List<CodeUnit> units = new ArrayList<>();
+		for(BasicBlock b : cfg.vertices()) {
+			for(Stmt stmt : b) {
+				units.addAll(stmt.enumerateExecutionOrder());
+			}
+		}
+		return units;
+	}
+
+	public void testDenseLocalIds() {
+		for(ControlFlowGraph cfg : graphs) {
+			BitSet used = new BitSet();
+			for(CodeUnit u : units(cfg)) {
+				int id = u.getLocalId();
+				assertTrue(id >= 0 && id < cfg.getUnitIdCount());
+				assertFalse("duplicate id " + id, used.get(id));
+				used.set(id);
+			}
+		}
+	}
+
+	public void testGlobalIdsUnique() {
+		Set<Integer> ids = new HashSet<>();
+		for(ControlFlowGraph cfg : graphs) {
+			for(CodeUnit u : units(cfg)) {
+				assertTrue(ids.add(u.getNumericId()));
+			}
+		}
+	}
+
+	public void testAddAndRemove() {
+		ControlFlowGraph cfg = graphs.get(0);
+		BasicBlock b = cfg.getEntries().iterator().next();
+		NopStmt nop = new NopStmt();
+		assertEquals(-1, nop.getLocalId());
+
+		int count = cfg.getUnitIdCount();
+		b.add(0, nop);
+		assertEquals(count, nop.getLocalId());
+		assertEquals(count + 1, cfg.getUnitIdCount());
+
+		b.remove(nop);
+		assertEquals(-1, nop.getLocalId());
+	}
+
+	public void testCopyKeepsIds() {
+		ControlFlowGraph cfg = graphs.get(0);
+		List<CodeUnit> units = units(cfg);
+		int[] ids = new int[units.size()];
+		for(int i = 0; i < ids.length; i++) {
+			ids[i] = units.get(i).getLocalId();
+		}
+
+		ControlFlowGraph copy = cfg.copy();
+		assertEquals(0, copy.getUnitIdCount());
+		for(int i = 0; i < ids.length; i++) {
+			assertEquals(ids[i], units.get(i).getLocalId());
+		}
+	}
+}
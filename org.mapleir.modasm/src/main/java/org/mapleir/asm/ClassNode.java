@@ -5,10 +5,11 @@ import org.objectweb.asm.Opcodes;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClassNode implements FastGraphVertex {
-    private static int ID_COUNTER = 1;
-   	private final int numericId = ID_COUNTER++;
+    private static final AtomicInteger ID_COUNTER = new AtomicInteger(1);
+   	private final int numericId = ID_COUNTER.getAndIncrement();
 
     public final org.objectweb.asm.tree.ClassNode node;
     private final List<MethodNode> methods;
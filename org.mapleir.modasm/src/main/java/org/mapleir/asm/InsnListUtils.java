@@ -1,7 +1,14 @@
 package org.mapleir.asm;
 
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
 import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
 import org.objectweb.asm.util.Printer;
 import org.objectweb.asm.util.Textifier;
 import org.objectweb.asm.util.TraceMethodVisitor;
@@ -26,6 +33,71 @@ public class InsnListUtils {
 		return sw.toString();
 	}
 
+	/**
+	 * Computes the number of bytes the instructions take up in a Code
+	 * attribute. This is exact except that every ldc is assumed to have a one
+	 * byte constant pool index and no jump to need a wide offset.
+	 *
+	 * @param insns The instructions.
+	 * @return The size of the code in bytes.
+	 */
+	public static int codeSize(InsnList insns) {
+		int size = 0;
+		for (AbstractInsnNode insn : insns) {
+			size += insnSize(insn, size);
+		}
+		return size;
+	}
+
+	private static int insnSize(AbstractInsnNode insn, int offset) {
+		switch (insn.getType()) {
+			case AbstractInsnNode.LABEL:
+			case AbstractInsnNode.LINE:
+			case AbstractInsnNode.FRAME:
+				return 0;
+			case AbstractInsnNode.INSN:
+				return 1;
+			case AbstractInsnNode.INT_INSN:
+				return ((IntInsnNode) insn).getOpcode() == Opcodes.SIPUSH ? 3 : 2;
+			case AbstractInsnNode.VAR_INSN: {
+				int var = ((VarInsnNode) insn).var;
+				if (var <= 3 && insn.getOpcode() != Opcodes.RET)
+					return 1;
+				return var <= 0xFF ? 2 : 4;
+			}
+			case AbstractInsnNode.IINC_INSN: {
+				IincInsnNode iinc = (IincInsnNode) insn;
+				return iinc.var <= 0xFF && iinc.incr == (byte) iinc.incr ? 3 : 6;
+			}
+			case AbstractInsnNode.LDC_INSN: {
+				Object cst = ((LdcInsnNode) insn).cst;
+				return cst instanceof Long || cst instanceof Double ? 3 : 2;
+			}
+			case AbstractInsnNode.TYPE_INSN:
+			case AbstractInsnNode.FIELD_INSN:
+			case AbstractInsnNode.JUMP_INSN:
+				return 3;
+			case AbstractInsnNode.METHOD_INSN:
+				return insn.getOpcode() == Opcodes.INVOKEINTERFACE ? 5 : 3;
+			case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+				return 5;
+			case AbstractInsnNode.MULTIANEWARRAY_INSN:
+				return 4;
+			case AbstractInsnNode.TABLESWITCH_INSN: {
+				// opcode, padding to 4 bytes, default, low, high, offsets
+				int padding = 3 - (offset & 3);
+				return 1 + padding + 12 + 4 * ((TableSwitchInsnNode) insn).labels.size();
+			}
+			case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+				// opcode, padding to 4 bytes, default, npairs, pairs
+				int padding = 3 - (offset & 3);
+				return 1 + padding + 8 + 8 * ((LookupSwitchInsnNode) insn).labels.size();
+			}
+			default:
+				throw new IllegalArgumentException("Unknown instruction type " + insn.getType());
+		}
+	}
+
 	private static Printer printer = new Textifier();
 	private static TraceMethodVisitor mp = new TraceMethodVisitor(printer);
 }
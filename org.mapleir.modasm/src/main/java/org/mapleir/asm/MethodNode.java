@@ -5,9 +5,11 @@ import org.mapleir.stdlib.util.IHasJavaDesc;
 import org.mapleir.stdlib.util.JavaDesc;
 import org.objectweb.asm.Opcodes;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class MethodNode implements FastGraphVertex, IHasJavaDesc {
-    private static int ID_COUNTER = 1;
-   	private final int numericId = ID_COUNTER++;
+    private static final AtomicInteger ID_COUNTER = new AtomicInteger(1);
+   	private final int numericId = ID_COUNTER.getAndIncrement();
 
    	public final ClassNode owner;
     public final org.objectweb.asm.tree.MethodNode node;
@@ -0,0 +1,52 @@
+package org.mapleir.stdlib.collections.bitset;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * An indexer for objects that carry their own index, e.g. an id that is
+ * handed out densely from zero by the graph or pool that owns the objects.
+ * Finding the index of an object is a field read rather than a hash lookup
+ * and the objects are kept in an array by index for iteration. As the
+ * indices are dense the bitsets stay as small as the owner.
+ */
+public class DenseBitSetIndexer<N> implements BitSetIndexer<N> {
+
+	private final ToIntFunction<N> indexFunction;
+	private Object[] nodes;
+
+	public DenseBitSetIndexer(ToIntFunction<N> indexFunction) {
+		this(indexFunction, 16);
+	}
+
+	public DenseBitSetIndexer(ToIntFunction<N> indexFunction, int capacity) {
+		this.indexFunction = indexFunction;
+		nodes = new Object[Math.max(capacity, 1)];
+	}
+
+	@Override
+	public int getIndex(N n) {
+		int index = indexFunction.applyAsInt(n);
+		if(index < 0) {
+			throw new IllegalArgumentException("No index for " + n);
+		}
+		if(index >= nodes.length) {
+			nodes = Arrays.copyOf(nodes, Math.max(index + 1, nodes.length * 2));
+		}
+		if(nodes[index] == null) {
+			nodes[index] = n;
+		}
+		return index;
+	}
+
+	@Override @SuppressWarnings("unchecked")
+	public N get(int index) {
+		return index < nodes.length ? (N) nodes[index] : null;
+	}
+
+	@Override
+	public boolean isIndexed(N n) {
+		int index = indexFunction.applyAsInt(n);
+		return index >= 0 && index < nodes.length && nodes[index] != null;
+	}
+}
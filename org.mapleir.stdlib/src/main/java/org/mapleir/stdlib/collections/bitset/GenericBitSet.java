@@ -3,6 +3,7 @@ package org.mapleir.stdlib.collections.bitset;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Spliterator;
 
@@ -39,14 +40,9 @@ public class GenericBitSet<N> implements Set<N> {
 	public boolean add(N n) {
 		if (n == null)
 			throw new IllegalArgumentException();
-		boolean ret = !contains(n);
-		if (n != null && indexer.getIndex(n) > 100000) {
-			System.err.println("Probable bitset memory leak");
-			System.err.println(indexer.getIndex(n) + " " + n.getClass().getName());
-			System.err.println(indexer.getClass().getName());
-			new Throwable().printStackTrace();
-		}
-		bitset.set(indexer.getIndex(n));
+		int index = indexer.getIndex(n);
+		boolean ret = !bitset.get(index);
+		bitset.set(index);
 		return ret;
 	}
 
@@ -59,9 +55,20 @@ public class GenericBitSet<N> implements Set<N> {
 	}
 
 	public boolean containsAll(GenericBitSet<N> other) {
-		BitSet temp = (BitSet) other.bitset.clone(); // if contains all, set.bitset will be a subset of our bitset
-		temp.and(bitset);
-		return temp.equals(other.bitset);
+		checkIndexer(other);
+		BitSet o = other.bitset;
+		for (int i = o.nextSetBit(0); i >= 0; i = o.nextSetBit(i + 1)) {
+			if (!bitset.get(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether every element of this set is in the other set.
+	 */
+	public boolean isSubsetOf(GenericBitSet<N> other) {
+		return other.containsAll(this);
 	}
 
 	@Override
@@ -73,21 +80,118 @@ public class GenericBitSet<N> implements Set<N> {
 	}
 
 	public boolean containsNone(GenericBitSet<N> other) {
-		BitSet temp = (BitSet) bitset.clone();
-		temp.and(other.bitset);
-		return temp.isEmpty();
+		return !intersects(other);
 	}
 
 	public boolean containsAny(GenericBitSet<N> other) {
-		return !containsNone(other);
+		return intersects(other);
+	}
+
+	/**
+	 * @return Whether this set and the other set have any element in common.
+	 */
+	public boolean intersects(GenericBitSet<N> other) {
+		checkIndexer(other);
+		return bitset.intersects(other.bitset);
+	}
+
+	/**
+	 * @return The number of elements in both this set and the other set,
+	 * computed without creating the intersection.
+	 */
+	public int intersectionSize(GenericBitSet<N> other) {
+		checkIndexer(other);
+		BitSet small = bitset, large = other.bitset;
+		if (small.length() > large.length()) {
+			small = other.bitset;
+			large = bitset;
+		}
+		int count = 0;
+		for (int i = small.nextSetBit(0); i >= 0; i = small.nextSetBit(i + 1)) {
+			if (large.get(i))
+				count++;
+		}
+		return count;
 	}
 
 	public void addAll(GenericBitSet<N> n) {
-		if (indexer != n.indexer)
-			throw new IllegalArgumentException("Fast addAll operands must share the same BitSetIndexer");
+		checkIndexer(n);
 		bitset.or(n.bitset);
 	}
 
+	/**
+	 * Adds the elements of {@code a} that aren't in {@code b} to this set,
+	 * i.e. {@code this = this U (a - b)}, without creating the difference.
+	 */
+	public void addAllExcept(GenericBitSet<N> a, GenericBitSet<N> b) {
+		checkIndexer(a);
+		checkIndexer(b);
+		BitSet ab = a.bitset, bb = b.bitset;
+		for (int i = ab.nextSetBit(0); i >= 0; i = ab.nextSetBit(i + 1)) {
+			if (!bb.get(i))
+				bitset.set(i);
+		}
+	}
+
+	/**
+	 * Removes the elements of {@code a} that aren't in {@code b} from this
+	 * set, i.e. {@code this = this - (a - b)}, without creating the
+	 * difference.
+	 */
+	public void removeAllExcept(GenericBitSet<N> a, GenericBitSet<N> b) {
+		checkIndexer(a);
+		checkIndexer(b);
+		BitSet ab = a.bitset, bb = b.bitset;
+		for (int i = ab.nextSetBit(0); i >= 0; i = ab.nextSetBit(i + 1)) {
+			if (!bb.get(i))
+				bitset.clear(i);
+		}
+	}
+
+	/**
+	 * Replaces the contents of this set with those of the other set, reusing
+	 * the storage of this set.
+	 */
+	public void copyFrom(GenericBitSet<N> other) {
+		checkIndexer(other);
+		bitset.clear();
+		bitset.or(other.bitset);
+	}
+
+	/**
+	 * Gets the index of the first element of this set at or after the given
+	 * index, for iterating over the set without an iterator:
+	 * <pre>
+	 * for (int i = set.nextIndex(0); i >= 0; i = set.nextIndex(i + 1)) {
+	 *     N n = set.get(i);
+	 * }</pre>
+	 * 
+	 * @param fromIndex The index to start from.
+	 * @return The index or -1 if there is no such element.
+	 */
+	public int nextIndex(int fromIndex) {
+		return bitset.nextSetBit(fromIndex);
+	}
+
+	/**
+	 * @return Whether the element with the given index is in this set.
+	 */
+	public boolean containsIndex(int index) {
+		return bitset.get(index);
+	}
+
+	/**
+	 * @return The element with the given index.
+	 */
+	public N get(int index) {
+		return indexer.get(index);
+	}
+
+	private void checkIndexer(GenericBitSet<N> other) {
+		if (indexer != other.indexer)
+			throw new IllegalArgumentException("Fast operands must share the same BitSetIndexer");
+	}
+
 	public GenericBitSet<N> union(GenericBitSet<N> other) {
 		GenericBitSet<N> copy = copy();
 		copy.addAll(other);
@@ -103,6 +207,7 @@ public class GenericBitSet<N> implements Set<N> {
 	}
 
 	public void retainAll(GenericBitSet<N> other) {
+		checkIndexer(other);
 		bitset.and(other.bitset);
 	}
 
@@ -126,6 +231,7 @@ public class GenericBitSet<N> implements Set<N> {
 	}
 
 	public void removeAll(GenericBitSet<N> other) {
+		checkIndexer(other);
 		bitset.andNot(other.bitset);
 	}
 
@@ -191,15 +297,20 @@ public class GenericBitSet<N> implements Set<N> {
 	public Iterator<N> iterator() {
 		return new Iterator<N> () {
 			int index = -1;
+			int next = bitset.nextSetBit(0);
 
 			@Override
 			public boolean hasNext() {
-				return bitset.nextSetBit(index + 1) != -1;
+				return next != -1;
 			}
 
 			@Override
 			public N next() {
-				return indexer.get(index = bitset.nextSetBit(index + 1));
+				if (next == -1)
+					throw new NoSuchElementException();
+				index = next;
+				next = bitset.nextSetBit(index + 1);
+				return indexer.get(index);
 			}
 
 			@Override
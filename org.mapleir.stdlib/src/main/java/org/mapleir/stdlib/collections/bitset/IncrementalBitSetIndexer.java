@@ -1,35 +1,40 @@
 package org.mapleir.stdlib.collections.bitset;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
-import org.mapleir.stdlib.collections.map.ValueCreator;
-
+/**
+ * An indexer for objects that don't have an index of their own, such as
+ * value objects that are created on the fly. Objects are numbered from zero
+ * in the order they are first seen. Prefer {@link DenseBitSetIndexer} when
+ * the objects can carry an index.
+ */
 public class IncrementalBitSetIndexer<N> implements BitSetIndexer<N> {
 
-	private final NullPermeableHashMap<N, Integer> map;
-	private final HashMap<Integer, N> reverseMap;
+	private final Map<N, Integer> map;
+	private final List<N> reverseMap;
 	
 	public IncrementalBitSetIndexer() {
-		map = new NullPermeableHashMap<>(new ValueCreator<Integer>() {
-			@Override
-			public Integer create() {
-				return map.size() + 1;
-			}
-		});
-		reverseMap = new HashMap<>();
+		map = new HashMap<>();
+		reverseMap = new ArrayList<>();
 	}
 	
 	@Override
 	public int getIndex(N n) {
-		int index = map.getNonNull(n);
-		reverseMap.put(index, n);
+		Integer index = map.get(n);
+		if(index == null) {
+			index = reverseMap.size();
+			map.put(n, index);
+			reverseMap.add(n);
+		}
 		return index;
 	}
 	
 	@Override
 	public N get(int index) {
-		return reverseMap.get(index);
+		return index < reverseMap.size() ? reverseMap.get(index) : null;
 	}
 	
 	@Override
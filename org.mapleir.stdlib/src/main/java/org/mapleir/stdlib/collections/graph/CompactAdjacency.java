@@ -0,0 +1,235 @@
+package org.mapleir.stdlib.collections.graph;
+
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The immutable, compressed form of the adjacency maps of a
+ * {@link FastDirectedGraph}. The vertices are stored in an array, in the
+ * iteration order of the maps, and the successor and predecessor edges of
+ * vertex {@code i} are the slices {@code [start[i], start[i + 1])} of two
+ * edge arrays. Vertices are found by their numeric id through a table
+ * covering the range of ids in the graph. If the ids are too sparse for a
+ * table, or a vertex isn't where the table says, it is looked up in a hash
+ * map of the vertices instead, which is built on first use. The map also
+ * finds vertices whose ids changed after the graph was frozen.
+ */
+final class CompactAdjacency<N extends FastGraphVertex, E extends FastGraphEdge<N>> {
+
+	/* don't make the id table much larger than the graph itself. */
+	private static final int MAX_TABLE_FACTOR = 4;
+
+	private final Object[] vertices;
+	private final int baseId;
+	/* position + 1 of the vertex with id baseId + i, or 0. null if the ids
+	 * are too sparse. */
+	private final int[] table;
+	/* vertex -> position, for the lookups that the table can't answer. */
+	private volatile Map<Object, Integer> positions;
+
+	private final Object[] succs;
+	private final int[] succStart;
+	private final Object[] preds;
+	private final int[] predStart;
+
+	CompactAdjacency(Map<N, Set<E>> map, Map<N, Set<E>> reverseMap) {
+		int n = map.size();
+		vertices = new Object[n];
+		succStart = new int[n + 1];
+		predStart = new int[n + 1];
+
+		int i = 0, succCount = 0, predCount = 0;
+		int minId = Integer.MAX_VALUE, maxId = Integer.MIN_VALUE;
+		for(Map.Entry<N, Set<E>> e : map.entrySet()) {
+			N v = e.getKey();
+			vertices[i] = v;
+			succCount += e.getValue().size();
+			predCount += reverseMap.get(v).size();
+			succStart[++i] = succCount;
+			predStart[i] = predCount;
+
+			int id = v.getNumericId();
+			minId = Math.min(minId, id);
+			maxId = Math.max(maxId, id);
+		}
+
+		succs = new Object[succCount];
+		preds = new Object[predCount];
+		for(i=0; i < n; i++) {
+			@SuppressWarnings("unchecked")
+			N v = (N) vertices[i];
+			fill(succs, succStart[i], map.get(v));
+			fill(preds, predStart[i], reverseMap.get(v));
+		}
+
+		long range = (long) maxId - minId + 1;
+		if(n > 0 && range <= (long) n * MAX_TABLE_FACTOR + 16) {
+			baseId = minId;
+			table = new int[(int) range];
+			for(i=0; i < n; i++) {
+				int slot = ((FastGraphVertex) vertices[i]).getNumericId() - baseId;
+				/* keep the first vertex if ids collide, the others are found
+				 * through the map. */
+				if(table[slot] == 0) {
+					table[slot] = i + 1;
+				}
+			}
+		} else {
+			baseId = 0;
+			table = null;
+		}
+	}
+
+	private static void fill(Object[] arr, int start, Set<?> set) {
+		for(Object o : set) {
+			arr[start++] = o;
+		}
+	}
+
+	int size() {
+		return vertices.length;
+	}
+
+	/**
+	 * @return The position of the vertex or -1 if it isn't in the graph.
+	 */
+	int indexOf(Object o) {
+		if(!(o instanceof FastGraphVertex)) {
+			return -1;
+		}
+		if(table != null) {
+			int slot = ((FastGraphVertex) o).getNumericId() - baseId;
+			if(slot >= 0 && slot < table.length) {
+				int pos = table[slot] - 1;
+				if(pos >= 0 && vertices[pos] == o) {
+					return pos;
+				}
+			}
+		}
+		Integer pos = positions().get(o);
+		return pos != null ? pos : -1;
+	}
+
+	/* racing threads may both build the map, either copy is correct. */
+	private Map<Object, Integer> positions() {
+		Map<Object, Integer> map = positions;
+		if(map == null) {
+			map = new HashMap<>(vertices.length * 2);
+			for(int i=vertices.length - 1; i >= 0; i--) {
+				map.put(vertices[i], i);
+			}
+			positions = map;
+		}
+		return map;
+	}
+
+	Set<N> vertexSet() {
+		return new AbstractSet<N>() {
+			@Override
+			public boolean contains(Object o) {
+				return indexOf(o) != -1;
+			}
+
+			@Override
+			public Iterator<N> iterator() {
+				return new ArrayIterator<>(vertices, 0, vertices.length);
+			}
+
+			@Override
+			public int size() {
+				return vertices.length;
+			}
+		};
+	}
+
+	Set<E> edges(int pos) {
+		return new EdgeSlice<>(succs, succStart[pos], succStart[pos + 1]);
+	}
+
+	Set<E> reverseEdges(int pos) {
+		return new EdgeSlice<>(preds, predStart[pos], predStart[pos + 1]);
+	}
+
+	/**
+	 * Rebuilds the mutable adjacency maps from this, preserving the vertex
+	 * and edge orders.
+	 */
+	@SuppressWarnings("unchecked")
+	void thaw(FastGraph<N, E> g, Map<N, Set<E>> map, Map<N, Set<E>> reverseMap) {
+		for(int i=0; i < vertices.length; i++) {
+			N v = (N) vertices[i];
+			Set<E> set = g.createSet();
+			for(int k=succStart[i]; k < succStart[i + 1]; k++) {
+				set.add((E) succs[k]);
+			}
+			map.put(v, set);
+
+			Set<E> reverseSet = g.createSet();
+			for(int k=predStart[i]; k < predStart[i + 1]; k++) {
+				reverseSet.add((E) preds[k]);
+			}
+			reverseMap.put(v, reverseSet);
+		}
+	}
+
+	private static final class EdgeSlice<E> extends AbstractSet<E> {
+		private final Object[] arr;
+		private final int from, to;
+
+		EdgeSlice(Object[] arr, int from, int to) {
+			this.arr = arr;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			for(int i=from; i < to; i++) {
+				if(arr[i].equals(o)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return new ArrayIterator<>(arr, from, to);
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+
+	private static final class ArrayIterator<T> implements Iterator<T> {
+		private final Object[] arr;
+		private final int to;
+		private int index;
+
+		ArrayIterator(Object[] arr, int from, int to) {
+			this.arr = arr;
+			this.to = to;
+			index = from;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < to;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public T next() {
+			if(index >= to) {
+				throw new NoSuchElementException();
+			}
+			return (T) arr[index++];
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package org.mapleir.stdlib.collections.graph;
 
 import java.util.*;
-import java.util.Map.Entry;
 import java.util.stream.Stream;
 
 import org.mapleir.dot4j.model.DotGraph;
@@ -9,8 +8,12 @@ import org.mapleir.propertyframework.api.IPropertyDictionary;
 
 public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends FastGraphEdge<N>> implements FastGraph<N, E>{
 
-	private final Map<N, Set<E>> map;
-	private final Map<N, Set<E>> reverseMap;
+	/* null while the graph is frozen. */
+	private Map<N, Set<E>> map;
+	private Map<N, Set<E>> reverseMap;
+	/* non null while the graph is frozen. readers copy it into a local first,
+	 * as it is replaced when the graph is frozen or thawed. */
+	private volatile CompactAdjacency<N, E> compact;
 	
 	public FastDirectedGraph() {
 		map = createMap();
@@ -18,8 +21,52 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 	}
 	
 	public FastDirectedGraph(FastDirectedGraph<N, E> g) {
-		map = createMap(g.map);
-		reverseMap = createMap(g.reverseMap);
+		CompactAdjacency<N, E> compact = g.compact;
+		if(compact != null) {
+			/* the compact form is immutable, so the copy can share it until
+			 * either graph thaws. */
+			this.compact = compact;
+		} else {
+			map = createMap(g.map);
+			reverseMap = createMap(g.reverseMap);
+		}
+	}
+
+	/**
+	 * Converts the adjacency maps of this graph into compact arrays, for
+	 * phases that only query the graph, such as dominance, liveness and
+	 * hierarchy queries. This drops the per vertex hash sets, and vertices
+	 * are looked up by their numeric id. Any modification of the graph
+	 * thaws it again first, but sets of edges or vertices that were
+	 * obtained while the graph was frozen are snapshots and aren't updated
+	 * after that.
+	 */
+	public void freeze() {
+		if(compact == null) {
+			compact = new CompactAdjacency<>(map, reverseMap);
+			map = null;
+			reverseMap = null;
+		}
+	}
+
+	/**
+	 * Converts this graph back into its mutable form, with the vertices and
+	 * edges in the same order as before it was frozen.
+	 */
+	public void thaw() {
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			Map<N, Set<E>> newMap = createMap();
+			Map<N, Set<E>> newReverseMap = createMap();
+			compact.thaw(this, newMap, newReverseMap);
+			map = newMap;
+			reverseMap = newReverseMap;
+			this.compact = null;
+		}
+	}
+
+	public boolean isFrozen() {
+		return compact != null;
 	}
 
 	/**
@@ -27,11 +74,16 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 	 */
 	@Override
 	public Set<N> vertices() {
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			return compact.vertexSet();
+		}
 		return Collections.unmodifiableSet(map.keySet());
 	}
 
 	@Override
 	public boolean addVertex(N v) {
+		thaw();
 		boolean ret = false;
 		if(!map.containsKey(v)) {
 			map.put(v, createSet());
@@ -90,6 +142,7 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 		// C = {(A->C)}
 		// D = {(C->D)}
 
+		thaw();
 		for(E e : map.remove(v)) {
 			reverseMap.get(e.dst()).remove(e);
 		}
@@ -101,15 +154,24 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 
 	@Override
 	public boolean containsVertex(N v) {
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			return compact.indexOf(v) != -1;
+		}
 		return map.containsKey(v);
 	}
 	
 	public boolean containsReverseVertex(N v) {
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			return compact.indexOf(v) != -1;
+		}
 		return reverseMap.containsKey(v);
 	}
 
 	@Override
 	public void addEdge(E e) {
+		thaw();
 		N src = e.src();
 		addVertex(src);
 		map.get(src).add(e);
@@ -121,6 +183,7 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 
 	@Override
 	public void removeEdge(E e) {
+		thaw();
 		N src = e.src();
 		if(map.containsKey(src)) {
 			map.get(src).remove(e);
@@ -135,16 +198,30 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 	@Override
 	public boolean containsEdge(E e) {
 		N src = e.src();
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			int pos = compact.indexOf(src);
+			return pos != -1 && compact.edges(pos).contains(e);
+		}
 		return map.containsKey(src) && map.get(src).contains(e);
 	}
 
 	public boolean containsReverseEdge(E e) {
 		N dst = e.dst();
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			int pos = compact.indexOf(dst);
+			return pos != -1 && compact.reverseEdges(pos).contains(e);
+		}
 		return reverseMap.containsKey(dst) && reverseMap.get(dst).contains(e);
 	}
 
 	@Override
 	public Set<E> getEdges(N b) {
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			return compact.edges(position(compact, b));
+		}
 		return Collections.unmodifiableSet(map.get(b));
 	}
 
@@ -153,6 +230,10 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 	}
 
 	public Set<E> getReverseEdges(N v) {
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			return compact.reverseEdges(position(compact, v));
+		}
 		return Collections.unmodifiableSet(reverseMap.get(v));
 	}
 
@@ -160,8 +241,21 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 		return getReverseEdges(v).stream().map(E::src);
 	}
 
+	private static <N extends FastGraphVertex> int position(CompactAdjacency<N, ?> compact, N v) {
+		int pos = compact.indexOf(v);
+		if(pos == -1) {
+			/* what the unmodifiable view of a missing map entry throws. */
+			throw new NullPointerException(String.valueOf(v));
+		}
+		return pos;
+	}
+
 	@Override
 	public int size() {
+		CompactAdjacency<N, E> compact = this.compact;
+		if(compact != null) {
+			return compact.size();
+		}
 		return map.size();
 	}
 	
@@ -190,6 +284,7 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 		// C = {(A->C)}
 		// D = {(E->D), (C->D)}
 		
+		thaw();
 		Set<E> succs = getEdges(old);
 		Set<E> preds = getReverseEdges(old);
 		
@@ -214,6 +309,7 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 
 	@Override
 	public void clear() {
+		thaw();
 		map.clear();
 		reverseMap.clear();
 	}
@@ -222,14 +318,14 @@ public abstract class FastDirectedGraph<N extends FastGraphVertex, E extends Fas
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("map {\n");
-		for(Entry<N, Set<E>> e : map.entrySet()) {
-			sb.append("   ").append(e.getKey()).append("  ").append(e.getValue()).append("\n");
+		for(N n : vertices()) {
+			sb.append("   ").append(n).append("  ").append(getEdges(n)).append("\n");
 		}
 		sb.append("}\n");
 		
 		sb.append("reverse {\n");
-		for(Entry<N, Set<E>> e : reverseMap.entrySet()) {
-			sb.append("   ").append(e.getKey()).append("  ").append(e.getValue()).append("\n");
+		for(N n : vertices()) {
+			sb.append("   ").append(n).append("  ").append(getReverseEdges(n)).append("\n");
 		}
 		sb.append("}");
 		return sb.toString();
@@ -127,7 +127,7 @@ public class GraphUtils {
 		LT79Dom<N, E> dom = new LT79Dom<>(g, entry);
 		for (N b : g.vertices()) {
 			for (E edge : g.getEdges(b)) {
-				if (dom.getDominates(edge.dst()).contains(b)) {
+				if (dom.dominates(edge.dst(), b)) {
 					// dst dominates src
 					backEdges.add(edge);
 				}
@@ -1,8 +1,11 @@
 package org.mapleir.stdlib.collections.graph.algorithms;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -11,305 +14,465 @@ import org.mapleir.stdlib.collections.graph.FastDirectedGraph;
 import org.mapleir.stdlib.collections.graph.FastGraphEdge;
 import org.mapleir.stdlib.collections.graph.FastGraphEdgeImpl;
 import org.mapleir.stdlib.collections.graph.FastGraphVertex;
-import org.mapleir.stdlib.collections.map.NullPermeableHashMap;
-import org.mapleir.stdlib.collections.map.SetCreator;
 
 /**
  * Implementation of A Fast Algorithm for Finding Dominators in a Flowgraph by Lengauer and Tarjan, 1979
+ *
+ * <p> Vertices are numbered by their dfs pre-time and all of the state of the
+ * algorithm is kept in int arrays indexed by that number. The numbers are
+ * found through an array indexed by the numeric ids of the vertices, or
+ * through a map if the ids are too sparse or not unique. Dominance queries
+ * are answered from the pre and post-times of the dominator tree and the
+ * dominance frontiers are only computed when they are first requested.
  */
 public class LT79Dom<N extends FastGraphVertex, E extends FastGraphEdge<N>> {
 
 	private final FastDirectedGraph<N, E> graph;
 	private final N root;
 	private final boolean computeFrontiers;
-	
-	/* semi(w)=
-	 *    (i) before semidominators are computed: vertex(w)
+
+	/* don't make the id table much larger than the graph itself. */
+	private static final int MAX_TABLE_FACTOR = 4;
+
+	/* number(v) = dfs pre-time of v, only reachable vertices are numbered.
+	 * numberTable[id(v) - baseId] = number(v) + 1 or 0, null if the ids are
+	 * too sparse or collide, in which case numberMap is used instead. */
+	private int baseId;
+	private int[] numberTable;
+	private Map<N, Integer> numberMap;
+	/* vertex[i] = vertex with dfs pre-time == i */
+	private final List<N> vertex;
+	private final int[] postOrder;
+	private final int count;
+
+	/* semi[w]=
+	 *    (i) before semidominators are computed: w
 	 *   (ii) after semidominators are computed: the semidominator of w */
-	private final Map<N, Integer> semi;
-	/* vertex(i) = vertex with dfs pre-time == i*/
-	private final Map<Integer, N> vertex;
-	private final List<N> postOrder;
-	/* parent(w) = parent of w in the dfs spanning tree */
-	private final Map<N, N> parent;
-	/* see step 3, idom(w) == immediate dominator of w after step 4 */
-	private final Map<N, N> idoms;
-	/* bucket(w) = set of vertices whose semidominator is w */
-	private final NullPermeableHashMap<N, Set<N>> bucket;
-	private final Map<N, N> ancestor;
-	private final Map<N, N> label;
-	
-	/* treeDescendants(n) = descendants of n in the dominator tree + n */
-	private final NullPermeableHashMap<N, Set<N>> treeDescendants;
-	/* treeSuccessors(n) = direct successors of n in the */
-	private final NullPermeableHashMap<N, Set<N>> treeSuccessors;
+	private final int[] semi;
+	/* parent[w] = parent of w in the dfs spanning tree */
+	private final int[] parent;
+	/* see step 3, idom[w] == immediate dominator of w after step 4, -1 for
+	 * the root */
+	private final int[] idom;
+	/* bucket(w) = set of vertices whose semidominator is w, as linked lists
+	 * threaded through bucketNext, -1 terminated */
+	private final int[] bucketHead;
+	private final int[] bucketNext;
+	/* forest used by eval, -1 for the roots of its trees */
+	private final int[] ancestor;
+	private final int[] label;
+	/* scratch space for compress */
+	private final int[] path;
+
+	/* pre and post-times of the vertices in the dominator tree, v dominates w
+	 * iff treePre[v] <= treePre[w] && treePost[w] <= treePost[v] */
+	private final int[] treePre;
+	private final int[] treePost;
+	/* treeOrder[i] = vertex with dominator tree pre-time == i */
+	private final int[] treeOrder;
+
 	/* graph representation of the dominator tree. edges are of
-	 * the form(idom(n), n) */
-	private final DominatorTree<N> dominatorTree;
-	
-	private final NullPermeableHashMap<N, Set<N>> frontiers;
-	private final NullPermeableHashMap<N, Set<N>> iteratedFrontiers;
+	 * the form(idom(n), n). built on first use. */
+	private DominatorTree<N> dominatorTree;
+	/* built on first use. */
+	private BitSet[] frontiers;
+	private BitSet[] iteratedFrontiers;
 
 	public LT79Dom(FastDirectedGraph<N, E> graph, N root) {
 		this(graph, root, true);
 	}
-	
+
 	public LT79Dom(FastDirectedGraph<N, E> graph, N root, boolean computeFrontiers) {
 		this.graph = graph;
 		this.root = root;
-		
-		semi = new HashMap<>();
-		vertex = new HashMap<>();
-		postOrder = new ArrayList<>();
-		parent = new HashMap<>();
-		idoms = new HashMap<>();
-		bucket = new NullPermeableHashMap<>(new SetCreator<>());
-		ancestor = new HashMap<>();
-		label = new HashMap<>();
-		
-		treeDescendants = new NullPermeableHashMap<>(new SetCreator<>());
-		treeSuccessors = new NullPermeableHashMap<>(new SetCreator<>());
-		frontiers = new NullPermeableHashMap<>(new SetCreator<>());
-		iteratedFrontiers = new NullPermeableHashMap<>(new SetCreator<>());
-		
-		step1();
+		this.computeFrontiers = computeFrontiers;
+
+		int size = graph.size();
+		makeNumberTable(size);
+		vertex = new ArrayList<>(size);
+		int[] dfsParent = new int[size];
+		int[] post = new int[size];
+
+		count = step1(dfsParent, post);
+		postOrder = post;
+		parent = dfsParent;
+		semi = new int[count];
+		idom = new int[count];
+		bucketHead = new int[count];
+		bucketNext = new int[count];
+		ancestor = new int[count];
+		label = new int[count];
+		path = new int[count];
+		for(int i=0; i < count; i++) {
+			semi[i] = i;
+			label[i] = i;
+			ancestor[i] = -1;
+			bucketHead[i] = -1;
+		}
+
 		/* carry out step 2 and 3 on all w != r ∈ V in decreasing order by
-		 * number. maintain a forest of vertex set V and edge set 
+		 * number. maintain a forest of vertex set V and edge set
 		 * {(parent(w), w) | w ∈ processed_nodes()} */
 		step2and3();
 		/* step 4 examines vertices in increasing order by number, filling in
 		 * the immediate dominators not explicitly computed in step 3. */
 		step4();
-		
-		dominatorTree = makeDominatorTree();
-		this.computeFrontiers = computeFrontiers;
-		if(computeFrontiers) {
-			dfrontiers();
-			iteratedFrontiers();
-		}
+
+		treePre = new int[count];
+		treePost = new int[count];
+		treeOrder = new int[count];
+		numberTree();
+	}
+
+	public N getRoot() {
+		return root;
 	}
-	
+
 	public List<N> getPreOrder() {
-		List<N> preOrder = new ArrayList<>();
-		for(int i=0; i < vertex.size(); i++) {
-			preOrder.add(vertex.get(i));
-		}
-		return preOrder;
+		return new ArrayList<>(vertex);
 	}
-	
+
 	public List<N> getPostOrder() {
-		return new ArrayList<>(postOrder);
+		List<N> res = new ArrayList<>(count);
+		for(int i=0; i < count; i++) {
+			res.add(vertex.get(postOrder[i]));
+		}
+		return res;
 	}
-	
-	private void step1() {
-		dfs(root);
-		
+
+	private void makeNumberTable(int size) {
+		int minId = Integer.MAX_VALUE, maxId = Integer.MIN_VALUE;
+		for(N v : graph.vertices()) {
+			int id = v.getNumericId();
+			minId = Math.min(minId, id);
+			maxId = Math.max(maxId, id);
+		}
+		long range = (long) maxId - minId + 1;
+		if(size > 0 && range <= (long) size * MAX_TABLE_FACTOR + 16) {
+			baseId = minId;
+			numberTable = new int[(int) range];
+		} else {
+			numberMap = new HashMap<>(size * 2);
+		}
+	}
+
+	private int step1(int[] dfsParent, int[] post) {
+		/* iterative version of the recursive dfs, visiting the successors in
+		 * the same order. */
+		List<Iterator<E>> stack = new ArrayList<>();
+		int[] path = new int[dfsParent.length];
+		visit(root);
+		dfsParent[0] = -1;
+		stack.add(graph.getEdges(root).iterator());
+		path[0] = 0;
+		int postCount = 0;
+
+		while(!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			Iterator<E> it = stack.get(top);
+			if(it.hasNext()) {
+				N w = it.next().dst();
+				if(num(w) == -1) {
+					int n = vertex.size();
+					dfsParent[n] = path[top];
+					visit(w);
+					path[top + 1] = n;
+					stack.add(graph.getEdges(w).iterator());
+				}
+			} else {
+				stack.remove(top);
+				post[postCount++] = path[top];
+			}
+		}
+
 		assert vertex.get(0) == root;
+		return vertex.size();
 	}
-	
-	private void dfs(N v) {
-		int n = semi.size();
-		semi.put(v, n);
-		vertex.put(n, v);
-		ancestor.put(v, null);
-		label.put(v, v);
-		
-		for(E succ : graph.getEdges(v)) {
-			N w = succ.dst();
-			if(!semi.containsKey(w)) {
-				parent.put(w, v);
-				dfs(w);
+
+	private void visit(N v) {
+		int n = vertex.size();
+		vertex.add(v);
+		if(numberTable != null) {
+			int slot = v.getNumericId() - baseId;
+			if(slot >= 0 && slot < numberTable.length && numberTable[slot] == 0) {
+				numberTable[slot] = n + 1;
+				return;
 			}
+			/* ids collide or the vertex isn't in the graph, number everything
+			 * through the map from here on. */
+			numberMap = new HashMap<>(numberTable.length * 2);
+			for(int i=0; i < n; i++) {
+				numberMap.put(vertex.get(i), i);
+			}
+			numberTable = null;
 		}
-		
-		postOrder.add(v);
+		numberMap.put(v, n);
 	}
-	
+
 	private void step2and3() {
 		/* ignore entry */
-		for(int i=semi.size() - 1; i > 0; i--) {
-			N w = vertex.get(i);
+		for(int w=count - 1; w > 0; w--) {
 			step2(w);
 			step3(w);
 		}
 	}
-	
-	private void step2(N w) {
+
+	private void step2(int w) {
 		/* Theorem 4: For any vertex w != r:
-		 *   sdom(w) = min({v | (v, w} ∈ E and v < w} ∪ 
-		 *   {sdom(u) |u > w and ∃(v, w) such that u ->* v}) 
+		 *   sdom(w) = min({v | (v, w} ∈ E and v < w} ∪
+		 *   {sdom(u) |u > w and ∃(v, w) such that u ->* v})
 		 */
-		for(E pred : graph.getReverseEdges(w)) {
-			N v = pred.src();
-			N u = eval(v);
-			if(semi.get(u) < semi.get(w)) {
-				semi.put(w, semi.get(u));
+		for(E pred : graph.getReverseEdges(vertex.get(w))) {
+			int v = num(pred.src());
+			if(v == -1) {
+				/* unreachable from the root. */
+				continue;
+			}
+			int u = eval(v);
+			if(semi[u] < semi[w]) {
+				semi[w] = semi[u];
 			}
 		}
-		bucket.getNonNull(vertex.get(semi.get(w))).add(w);
-		link(parent.get(w), w);
+		int s = semi[w];
+		bucketNext[w] = bucketHead[s];
+		bucketHead[s] = w;
+		link(parent[w], w);
 	}
-	
-	private void step3(N w) {
+
+	private void step3(int w) {
 		/* Corollary 1: Let w != r and let u be a vertex for which sdom(u) is a
 		 * minimum among vericies u satisfying sdom(w) ->+ u ->* w, then:
-		 *   idom(w) = sdom(w); if sdom(w) == sdom(u) 
+		 *   idom(w) = sdom(w); if sdom(w) == sdom(u)
 		 *   idom(w) = idom(u); otherwise
-		 * 
+		 *
 		 * implicitly define the immediate dominator of each vertex by applying
 		 * corollary 1. */
-		Set<N> wbucket = bucket.getNonNull(parent.get(w));
-		for(N v : wbucket) {
-			N u = eval(v);
+		int p = parent[w];
+		for(int v = bucketHead[p]; v != -1; v = bucketNext[v]) {
+			int u = eval(v);
 			/* If the semidominator of w is its immediate dominator, then dom is
 			 * the immediate dominator of w. Otherwise dom is a vertex, v, whose
 			 * number is smaller than w and whose immediate dominator is also
 			 * w's immediate dominator. */
-			N dom = semi.get(u) < semi.get(v) ? u : parent.get(w);
-			idoms.put(v, dom);
+			idom[v] = semi[u] < semi[v] ? u : p;
 		}
-		wbucket.clear();
+		bucketHead[p] = -1;
 	}
-	
+
 	private void step4() {
 		/* explicitly define the immediate dominator of each vertex, carrying
 		 * out the computation vertex by vertex in increasing order by
 		 * number. */
-		for(int i=0; i < semi.size(); i++) {
-			N w = vertex.get(i);
-			if(idoms.get(w) != vertex.get(semi.get(w))) {
-				idoms.put(w, idoms.get(idoms.get(w)));
+		idom[0] = -1;
+		for(int w=1; w < count; w++) {
+			if(idom[w] != semi[w]) {
+				idom[w] = idom[idom[w]];
 			}
 		}
 	}
-	
+
 	/* add (v, w) to the forest */
-	private void link(N v, N w) {
-		ancestor.put(w, v);
+	private void link(int v, int w) {
+		ancestor[w] = v;
 	}
-	
+
 	/* if v is a root of a tree in the forest, return v. else let r be the root
 	 * of the tree in the forest which contains v. return any vertex u != r of
 	 * minimum semi(u) on the path r ->* v */
-	private N eval(N v) {
-		if(ancestor.get(v) != null) {
+	private int eval(int v) {
+		if(ancestor[v] != -1) {
 			compress(v);
-			return label.get(v);
+			return label[v];
 		} else {
 			return v;
 		}
 	}
-	
-	private void compress(N v) {
-		if (ancestor.get(ancestor.get(v)) != null) {
-			compress(ancestor.get(v));
-			if (semi.get(label.get(ancestor.get(v))) < semi.get(label.get(v))) {
-				label.put(v, label.get(ancestor.get(v)));
+
+	private void compress(int v) {
+		/* path compression without recursion: collect the path up to the
+		 * child of the root of the tree, then compress it from the top. */
+		int top = v;
+		int depth = 0;
+		while(ancestor[ancestor[top]] != -1) {
+			top = ancestor[top];
+			depth++;
+		}
+		for(int i=depth - 1, x=v; i >= 0; i--, x=ancestor[x]) {
+			path[i] = x;
+		}
+		for(int i=0; i < depth; i++) {
+			int x = path[i];
+			int a = ancestor[x];
+			if(semi[label[a]] < semi[label[x]]) {
+				label[x] = label[a];
 			}
-			ancestor.put(v, ancestor.get(ancestor.get(v)));
+			ancestor[x] = ancestor[a];
 		}
 	}
-	
-	private void dfrontiers() {
-		for(N n : treeReverseTopoOrder()) {
-			Set<N> df = frontiers.getNonNull(n);
-			// DF (local)
-			for(E e : graph.getEdges(n)) {
-				N succ = e.dst();
-				if(idoms.get(succ) != n) {
-					df.add(succ);
-				}
+
+	private void numberTree() {
+		/* children in the dominator tree, as linked lists over the vertices,
+		 * added in post order like the edges of the tree used to be. */
+		int[] firstChild = new int[count];
+		int[] nextSibling = new int[count];
+		Arrays.fill(firstChild, -1);
+		for(int i=count - 1; i >= 0; i--) {
+			int v = postOrder[i];
+			int d = idom[v];
+			if(d != -1) {
+				nextSibling[v] = firstChild[d];
+				firstChild[d] = v;
 			}
-			// DF (up)
-			for(N f : treeSuccessors.getNonNull(n)) {
-				for(N ff : frontiers.getNonNull(f)) {
-					if(idoms.get(ff) != n) {
-						df.add(ff);
-					}
-				}
+		}
+
+		int[] stack = new int[count];
+		int sp = 0, pre = 0, post = 0;
+		stack[sp++] = 0;
+		treeOrder[pre] = 0;
+		treePre[0] = pre++;
+		int[] cursor = firstChild.clone();
+		while(sp > 0) {
+			int v = stack[sp - 1];
+			int c = cursor[v];
+			if(c != -1) {
+				cursor[v] = nextSibling[c];
+				treeOrder[pre] = c;
+				treePre[c] = pre++;
+				stack[sp++] = c;
+			} else {
+				sp--;
+				treePost[v] = post++;
 			}
 		}
 	}
-	
-	private List<N> treeReverseTopoOrder() {
-		/* side notes: topo sort on tree == pre order on tree (not on general
-		 * DAG) == reverse post order on general DAG,
-		 * therefore reverse topo sort on tree == post order of general DAG */
-		ExtendedDfs<N> dfs = new ExtendedDfs<>(getDominatorTree(),
-				ExtendedDfs.POST);
-		dfs.run(root);
-		return dfs.getPostOrder();
-	}
-	
-	private void iteratedFrontiers() {
-		for(N n : postOrder) {
-			iteratedFrontier(n);
+
+	private int num(N v) {
+		if(numberTable != null) {
+			int slot = v.getNumericId() - baseId;
+			if(slot < 0 || slot >= numberTable.length) {
+				return -1;
+			}
+			int i = numberTable[slot] - 1;
+			/* another vertex with the same id, e.g. an unreachable one. */
+			return i != -1 && vertex.get(i) == v ? i : -1;
 		}
+		Integer i = numberMap.get(v);
+		return i == null ? -1 : i;
 	}
-	
-	private void iteratedFrontier(N n) {
-		Set<N> res = new HashSet<>();
-		Set<N> workingSet = new HashSet<>();
-		workingSet.add(n);
-		
-		do {
-			Set<N> newWorkingSet = new HashSet<>();
-			for(N n1 : workingSet) {
-				for(N n2 : frontiers.get(n1)) {
-					if(!res.contains(n2)) {
-						newWorkingSet.add(n2);
-						res.add(n2);
-					}
-				}
-			}
-			workingSet = newWorkingSet;
-		} while(!workingSet.isEmpty());
-		
-		iteratedFrontiers.put(n, res);
+
+	private boolean dominates(int a, int b) {
+		return treePre[a] <= treePre[b] && treePost[b] <= treePost[a];
+	}
+
+	/**
+	 * @return Whether {@code a} dominates {@code b}, which is the case if they
+	 * are the same vertex. Vertices that aren't reachable from the root
+	 * don't dominate and aren't dominated by anything.
+	 */
+	public boolean dominates(N a, N b) {
+		int i = num(a), j = num(b);
+		return i != -1 && j != -1 && dominates(i, j);
 	}
-	
-	private DominatorTree<N> makeDominatorTree() {
-		DominatorTree<N> tree = new DominatorTree<>();
-		for(N v : postOrder) {
-			N idom = idoms.get(v);
-			if(idom != null) {
-				Set<N> decs = treeDescendants.getNonNull(idom);
-				decs.add(v);
-				decs.addAll(treeDescendants.getNonNull(v));
-				
-				Set<N> succs = treeSuccessors.getNonNull(idom);
-				succs.add(v);
-				
-				tree.addEdge(new FastGraphEdgeImpl<>(idom, v));
+
+	public synchronized DominatorTree<N> getDominatorTree() {
+		if(dominatorTree == null) {
+			DominatorTree<N> tree = new DominatorTree<>();
+			for(int i=0; i < count; i++) {
+				int v = postOrder[i];
+				if(idom[v] != -1) {
+					tree.addEdge(new FastGraphEdgeImpl<>(vertex.get(idom[v]), vertex.get(v)));
+				}
 			}
-			treeDescendants.getNonNull(v).add(v);
+			dominatorTree = tree;
 		}
-		return tree;
-	}
-	
-	public DominatorTree<N> getDominatorTree() {
 		return dominatorTree;
 	}
-	
+
 	public Set<N> getDominates(N v) {
-		return new HashSet<>(treeDescendants.getNonNull(v));
+		Set<N> res = new HashSet<>();
+		int i = num(v);
+		if(i != -1) {
+			/* the subtree of v is contiguous in the tree pre order. */
+			for(int k=treePre[i]; k < count && dominates(i, treeOrder[k]); k++) {
+				res.add(vertex.get(treeOrder[k]));
+			}
+		}
+		return res;
 	}
-	
+
 	public N getImmediateDominator(N v) {
-		return idoms.get(v);
+		int i = num(v);
+		return i == -1 || idom[i] == -1 ? null : vertex.get(idom[i]);
 	}
-	
-	public Set<N> getDominanceFrontier(N v) {
+
+	private void dfrontiers() {
+		if(frontiers != null) {
+			return;
+		}
+		BitSet[] df = new BitSet[count];
+		for(int i=0; i < count; i++) {
+			df[i] = new BitSet();
+		}
+		/* Cooper, Harvey and Kennedy: walk up the dominator tree from each
+		 * predecessor of a vertex until its immediate dominator is reached,
+		 * every vertex on the way has the vertex in its frontier. */
+		for(int b=0; b < count; b++) {
+			for(E pred : graph.getReverseEdges(vertex.get(b))) {
+				int p = num(pred.src());
+				if(p == -1) {
+					continue;
+				}
+				for(int runner = p; runner != -1 && runner != idom[b]; runner = idom[runner]) {
+					df[runner].set(b);
+				}
+			}
+		}
+		frontiers = df;
+		iteratedFrontiers = new BitSet[count];
+	}
+
+	private BitSet iteratedFrontier(int n) {
+		BitSet res = iteratedFrontiers[n];
+		if(res == null) {
+			res = new BitSet();
+			BitSet work = (BitSet) frontiers[n].clone();
+			while(!work.isEmpty()) {
+				int m = work.nextSetBit(0);
+				work.clear(m);
+				if(!res.get(m)) {
+					res.set(m);
+					work.or(frontiers[m]);
+					work.andNot(res);
+				}
+			}
+			iteratedFrontiers[n] = res;
+		}
+		return res;
+	}
+
+	private Set<N> toSet(BitSet set) {
+		Set<N> res = new HashSet<>();
+		for(int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+			res.add(vertex.get(i));
+		}
+		return res;
+	}
+
+	public synchronized Set<N> getDominanceFrontier(N v) {
 		if(computeFrontiers) {
-			return new HashSet<>(frontiers.getNonNull(v));
+			dfrontiers();
+			int i = num(v);
+			return i == -1 ? new HashSet<>() : toSet(frontiers[i]);
 		} else {
 			throw new UnsupportedOperationException();
 		}
 	}
-	
-	public Set<N> getIteratedDominanceFrontier(N v) {
+
+	public synchronized Set<N> getIteratedDominanceFrontier(N v) {
 		if(computeFrontiers) {
-			return new HashSet<>(iteratedFrontiers.getNonNull(v));
+			dfrontiers();
+			int i = num(v);
+			return i == -1 ? new HashSet<>() : toSet(iteratedFrontier(i));
 		} else {
 			throw new UnsupportedOperationException();
 		}
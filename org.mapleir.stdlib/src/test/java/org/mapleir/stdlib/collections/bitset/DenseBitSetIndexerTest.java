@@ -0,0 +1,55 @@
+package org.mapleir.stdlib.collections.bitset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapleir.stdlib.collections.graph.FastGraphVertex;
+import org.mapleir.stdlib.collections.graph.util.FakeFastVertex;
+
+import junit.framework.TestCase;
+
+public class DenseBitSetIndexerTest extends TestCase {
+
+	private final DenseBitSetIndexer<FakeFastVertex> indexer = new DenseBitSetIndexer<>(FastGraphVertex::getNumericId, 2);
+
+	public void testAddContains() {
+		GenericBitSet<FakeFastVertex> set = new GenericBitSet<>(indexer);
+		FakeFastVertex a = new FakeFastVertex(0), b = new FakeFastVertex(40);
+		assertFalse(set.contains(a));
+		assertTrue(set.add(a));
+		assertFalse(set.add(a));
+		assertTrue(set.add(b));
+		assertTrue(set.contains(b));
+		assertEquals(2, set.size());
+		assertSame(b, indexer.get(40));
+		assertNull(indexer.get(1000));
+
+		assertTrue(set.remove(a));
+		assertFalse(set.contains(a));
+		assertEquals(1, set.size());
+	}
+
+	public void testIterateInIndexOrder() {
+		GenericBitSet<FakeFastVertex> set = new GenericBitSet<>(indexer);
+		for(int i : new int[] {7, 3, 12, 0}) {
+			set.add(new FakeFastVertex(i));
+		}
+		List<Integer> ids = new ArrayList<>();
+		for(FakeFastVertex v : set) {
+			ids.add(v.getNumericId());
+		}
+		assertEquals(List.of(0, 3, 7, 12), ids);
+	}
+
+	public void testNegativeIndex() {
+		GenericBitSet<FakeFastVertex> set = new GenericBitSet<>(indexer);
+		FakeFastVertex v = new FakeFastVertex(-1);
+		assertFalse(set.contains(v));
+		try {
+			set.add(v);
+			fail("negative index");
+		} catch(IllegalArgumentException e) {
+			// pass
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package org.mapleir.stdlib.collections.bitset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapleir.stdlib.collections.graph.FastGraphVertex;
+import org.mapleir.stdlib.collections.graph.util.FakeFastVertex;
+
+import junit.framework.TestCase;
+
+public class GenericBitSetTest extends TestCase {
+
+	private final DenseBitSetIndexer<FakeFastVertex> indexer = new DenseBitSetIndexer<>(FastGraphVertex::getNumericId);
+	private final FakeFastVertex[] vertices = new FakeFastVertex[100];
+
+	@Override
+	public void setUp() {
+		for(int i=0; i < vertices.length; i++) {
+			vertices[i] = new FakeFastVertex(i);
+			indexer.getIndex(vertices[i]);
+		}
+	}
+
+	private GenericBitSet<FakeFastVertex> set(int... ids) {
+		GenericBitSet<FakeFastVertex> set = new GenericBitSet<>(indexer);
+		for(int i : ids) {
+			set.add(vertices[i]);
+		}
+		return set;
+	}
+
+	public void testQueries() {
+		GenericBitSet<FakeFastVertex> a = set(1, 2, 3, 70), b = set(2, 70), c = set(4, 90);
+		assertTrue(a.containsAll(b));
+		assertTrue(b.isSubsetOf(a));
+		assertFalse(b.containsAll(a));
+		assertTrue(a.intersects(b));
+		assertFalse(a.intersects(c));
+		assertTrue(a.containsNone(c));
+		assertEquals(2, a.intersectionSize(b));
+		assertEquals(2, b.intersectionSize(a));
+		assertEquals(0, a.intersectionSize(c));
+	}
+
+	public void testInPlaceOps() {
+		GenericBitSet<FakeFastVertex> target = set(1, 5);
+		target.addAllExcept(set(2, 3, 4, 80), set(3, 99));
+		assertEquals(set(1, 2, 4, 5, 80), target);
+
+		target.removeAllExcept(set(1, 2, 80), set(2));
+		assertEquals(set(2, 4, 5), target);
+
+		target.copyFrom(set(7, 60));
+		assertEquals(set(7, 60), target);
+	}
+
+	public void testCursor() {
+		GenericBitSet<FakeFastVertex> set = set(0, 9, 64, 65);
+		List<FakeFastVertex> seen = new ArrayList<>();
+		for(int i = set.nextIndex(0); i >= 0; i = set.nextIndex(i + 1)) {
+			assertTrue(set.containsIndex(i));
+			seen.add(set.get(i));
+		}
+		assertEquals(List.of(vertices[0], vertices[9], vertices[64], vertices[65]), seen);
+		assertEquals(-1, set.nextIndex(66));
+	}
+
+	public void testMixedIndexers() {
+		GenericBitSet<FakeFastVertex> other = new GenericBitSet<>(new DenseBitSetIndexer<>(FastGraphVertex::getNumericId));
+		try {
+			set(1).intersects(other);
+			fail("mixed indexers");
+		} catch(IllegalArgumentException e) {
+			// pass
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package org.mapleir.stdlib.collections.graph.algorithms;
+
+import static org.mapleir.stdlib.collections.graph.util.CollectionUtil.*;
+
+import java.util.HashSet;
+
+import org.mapleir.stdlib.collections.graph.AbstractFastGraphTest;
+import org.mapleir.stdlib.collections.graph.directed.FakeFastDirectedGraph;
+import org.mapleir.stdlib.collections.graph.util.FakeFastEdge;
+import org.mapleir.stdlib.collections.graph.util.FakeFastVertex;
+
+public class LT79DomTest extends AbstractFastGraphTest {
+
+	public LT79DomTest() {
+		super(true);
+	}
+
+	/* diamond 1-2-3-4 followed by the loop 4-5, 7 is unreachable. */
+	private LT79Dom<FakeFastVertex, FakeFastEdge> dom() {
+		FakeFastDirectedGraph g = new FakeFastDirectedGraph();
+		int[][] edges = {{1, 2}, {1, 3}, {2, 4}, {3, 4}, {4, 5}, {5, 4}, {5, 6}, {7, 4}};
+		for(int[] e : edges) {
+			g.addEdge(edge(e[0], e[1]));
+		}
+		return new LT79Dom<>(g, node(1));
+	}
+
+	public void testImmediateDominators() {
+		LT79Dom<FakeFastVertex, FakeFastEdge> dom = dom();
+		assertNull(dom.getImmediateDominator(node(1)));
+		assertEquals(node(1), dom.getImmediateDominator(node(2)));
+		assertEquals(node(1), dom.getImmediateDominator(node(3)));
+		assertEquals(node(1), dom.getImmediateDominator(node(4)));
+		assertEquals(node(4), dom.getImmediateDominator(node(5)));
+		assertEquals(node(5), dom.getImmediateDominator(node(6)));
+		assertNull(dom.getImmediateDominator(node(7)));
+		assertEquals(6, dom.getPreOrder().size());
+	}
+
+	public void testDominates() {
+		LT79Dom<FakeFastVertex, FakeFastEdge> dom = dom();
+		assertTrue(dom.dominates(node(4), node(6)));
+		assertTrue(dom.dominates(node(4), node(4)));
+		assertFalse(dom.dominates(node(2), node(4)));
+		assertFalse(dom.dominates(node(7), node(4)));
+		assertFalse(dom.dominates(node(4), node(7)));
+		assertEquals(new HashSet<>(asList(node(4), node(5), node(6))), dom.getDominates(node(4)));
+		assertTrue(dom.getDominates(node(7)).isEmpty());
+	}
+
+	public void testFrontiers() {
+		LT79Dom<FakeFastVertex, FakeFastEdge> dom = dom();
+		assertEquals(new HashSet<>(asList(node(4))), dom.getDominanceFrontier(node(2)));
+		assertEquals(new HashSet<>(asList(node(4))), dom.getDominanceFrontier(node(5)));
+		assertEquals(new HashSet<>(asList(node(4))), dom.getDominanceFrontier(node(4)));
+		assertTrue(dom.getDominanceFrontier(node(1)).isEmpty());
+		assertTrue(dom.getDominanceFrontier(node(6)).isEmpty());
+		assertEquals(new HashSet<>(asList(node(4))), dom.getIteratedDominanceFrontier(node(3)));
+	}
+
+	/* the same graph as dom(), over vertices with the given ids. */
+	private void checkWithIds(int[] ids) {
+		FakeFastVertex[] v = new FakeFastVertex[8];
+		for(int i=1; i < v.length; i++) {
+			v[i] = new FakeFastVertex(ids[i]);
+		}
+		FakeFastDirectedGraph g = new FakeFastDirectedGraph();
+		int[][] edges = {{1, 2}, {1, 3}, {2, 4}, {3, 4}, {4, 5}, {5, 4}, {5, 6}, {7, 4}};
+		for(int[] e : edges) {
+			g.addEdge(new FakeFastEdge(v[e[0]], v[e[1]], true));
+		}
+		LT79Dom<FakeFastVertex, FakeFastEdge> dom = new LT79Dom<>(g, v[1]);
+		assertNull(dom.getImmediateDominator(v[1]));
+		assertSame(v[1], dom.getImmediateDominator(v[4]));
+		assertSame(v[4], dom.getImmediateDominator(v[5]));
+		assertSame(v[5], dom.getImmediateDominator(v[6]));
+		assertNull(dom.getImmediateDominator(v[7]));
+		assertTrue(dom.dominates(v[4], v[6]));
+		assertFalse(dom.dominates(v[2], v[4]));
+		assertFalse(dom.dominates(v[7], v[4]));
+		assertEquals(new HashSet<>(asList(v[4])), dom.getDominanceFrontier(v[5]));
+	}
+
+	public void testSparseIds() {
+		checkWithIds(new int[] { 0, 100000, 200000, 300000, 400000, 500000, 600000, 700000 });
+	}
+
+	public void testCollidingIds() {
+		/* the unreachable vertex shares its id with a reachable one. */
+		checkWithIds(new int[] { 0, 1, 2, 3, 4, 5, 6, 1 });
+		checkWithIds(new int[] { 0, 1, 1, 1, 1, 1, 1, 1 });
+	}
+}
@@ -5,6 +5,13 @@ import org.mapleir.stdlib.collections.graph.util.FakeFastEdge;
 import org.mapleir.stdlib.collections.graph.util.FakeFastVertex;
 
 public class FakeFastDirectedGraph extends FastDirectedGraph<FakeFastVertex, FakeFastEdge> {
+
+	public FakeFastDirectedGraph() {
+	}
+
+	public FakeFastDirectedGraph(FakeFastDirectedGraph g) {
+		super(g);
+	}
 	
 	@Override
 	public FakeFastEdge clone(FakeFastEdge e, FakeFastVertex src, FakeFastVertex dst) {
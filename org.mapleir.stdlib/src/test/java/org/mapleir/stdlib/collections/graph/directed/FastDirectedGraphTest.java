@@ -4,6 +4,7 @@ import static org.mapleir.stdlib.collections.graph.util.CollectionUtil.*;
 
 import org.mapleir.stdlib.collections.graph.AbstractFastGraphTest;
 import org.mapleir.stdlib.collections.graph.util.FakeFastEdge;
+import org.mapleir.stdlib.collections.graph.util.FakeFastVertex;
 
 public class FastDirectedGraphTest extends AbstractFastGraphTest {
 	
@@ -101,6 +102,67 @@ public class FastDirectedGraphTest extends AbstractFastGraphTest {
 		assertContainsEdges(getEdges(g), asList(edge(1, 5), edge(1, 3), edge(5, 4), edge(3, 4)));
 	}
 	
+	public void testFreeze() {
+		FakeFastDirectedGraph g = graph();
+		FakeFastEdge e1 = edge(1, 2), e2 = edge(1, 3), e3 = edge(2, 4), e4 = edge(3, 4);
+		g.addEdge(e1);
+		g.addEdge(e2);
+		g.addEdge(e3);
+		g.addEdge(e4);
+		g.addVertex(node(1000));
+		
+		g.freeze();
+		assertTrue(g.isFrozen());
+		assertEquals(5, g.size());
+		assertTrue(g.containsVertex(node(1000)));
+		assertFalse(g.containsVertex(node(5)));
+		assertTrue(g.containsEdge(e1));
+		assertTrue(g.containsReverseEdge(e4));
+		assertFalse(g.containsEdge(edge(4, 1)));
+		assertEquals(2, g.getEdges(node(1)).size());
+		assertEquals(2, g.getReverseEdges(node(4)).size());
+		assertEquals(0, g.getEdges(node(1000)).size());
+		assertContainsEdges(getEdges(g), asList(e1, e2, e3, e4));
+		
+		/* a copy shares the frozen form but thaws on its own. */
+		FakeFastDirectedGraph copy = new FakeFastDirectedGraph(g);
+		assertTrue(copy.isFrozen());
+		copy.removeEdge(e1);
+		assertFalse(copy.isFrozen());
+		assertFalse(copy.containsEdge(e1));
+		assertTrue(g.containsEdge(e1));
+		
+		/* modifying thaws the graph. */
+		g.removeVertex(node(2));
+		assertFalse(g.isFrozen());
+		assertEquals(4, g.size());
+		assertContainsEdges(getEdges(g), asList(e2, e4));
+	}
+	
+	public void testFrozenLookupAfterRelabel() {
+		FakeFastDirectedGraph g = graph();
+		int[] ids = { 7 };
+		FakeFastVertex moved = new FakeFastVertex(-1) {
+			@Override
+			public int getNumericId() {
+				return ids[0];
+			}
+		};
+		g.addEdge(edge(1, 2));
+		g.addEdge(new FakeFastEdge(node(2), moved, true));
+		g.freeze();
+		assertFalse(g.containsVertex(node(5)));
+		assertTrue(g.containsVertex(moved));
+		
+		/* the table still has the old id, the vertex is found anyway. */
+		ids[0] = 100;
+		assertTrue(g.containsVertex(moved));
+		assertEquals(1, g.getReverseEdges(moved).size());
+		ids[0] = 1;
+		assertTrue(g.containsVertex(moved));
+		assertTrue(g.containsVertex(node(1)));
+	}
+	
 	/* internal test */
 	public void testClone() {
 		FakeFastDirectedGraph g = graph();
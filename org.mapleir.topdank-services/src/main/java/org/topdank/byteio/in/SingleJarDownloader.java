@@ -1,69 +1,237 @@
 package org.topdank.byteio.in;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import org.apache.log4j.Logger;
 import org.mapleir.asm.ClassNode;
 import org.topdank.byteengineer.commons.asm.ASMFactory;
 import org.topdank.byteengineer.commons.data.JarInfo;
 import org.topdank.byteengineer.commons.data.JarResource;
+import org.topdank.byteengineer.commons.data.JarType;
 import org.topdank.byteengineer.commons.data.LocateableJarContents;
 
 import com.google.common.io.ByteStreams;
 
+/**
+ * Loads the classes and resources of a single jar.<br>
+ * Local jars are opened directly as a {@link ZipFile}, so that the central
+ * directory is only read once, and their entries are inflated and parsed on a
+ * fork-join pool when the parallelism is greater than one. Remote jars are
+ * read serially through a {@link JarURLConnection}.
+ *
+ * <p> Either way the contents are added in the order of the entries in the jar.
+ * When more than one entry defines the same class the first is kept and the
+ * names of the others are reported by {@link #getDuplicates()}.
+ */
 public class SingleJarDownloader<C extends ClassNode> extends AbstractJarDownloader<C> {
+	private static final Logger LOGGER = Logger.getLogger(SingleJarDownloader.class);
 
 	protected final JarInfo jarInfo;
+	protected final int parallelism;
+	private final List<String> duplicates;
 
 	public SingleJarDownloader(JarInfo jarInfo) {
 		super();
 		this.jarInfo = jarInfo;
+		parallelism = 1;
+		duplicates = new ArrayList<>();
 	}
 
 	public SingleJarDownloader(ASMFactory<C> factory, JarInfo jarInfo) {
+		this(factory, jarInfo, 1);
+	}
+
+	/**
+	 * @param factory The factory used to parse classes, which must be safe to
+	 * call from several threads at once if the parallelism is greater than one.
+	 * @param jarInfo The jar to load.
+	 * @param parallelism The number of threads to load a local jar with.
+	 */
+	public SingleJarDownloader(ASMFactory<C> factory, JarInfo jarInfo, int parallelism) {
 		super(factory);
 		this.jarInfo = jarInfo;
+		this.parallelism = parallelism;
+		duplicates = new ArrayList<>();
+	}
+
+	/**
+	 * @return The names of the entries that were skipped because a class of
+	 * the same name had already been loaded from the jar.
+	 */
+	public List<String> getDuplicates() {
+		return Collections.unmodifiableList(duplicates);
 	}
 
 	@Override
 	public void download() throws IOException {
-		URL url = null;
-		JarURLConnection connection = (JarURLConnection) (url = new URL(jarInfo.formattedURL())).openConnection();
+		URL url = new URL(jarInfo.formattedURL());
+		contents = new LocateableJarContents<>(url);
+		duplicates.clear();
+
+		if (jarInfo.getType() == JarType.FILE) {
+			downloadFile(localFile());
+		} else {
+			downloadURL(url);
+		}
+
+		if (!duplicates.isEmpty()) {
+			LOGGER.warn(String.format("%s: skipped %d duplicate classes, e.g. %s", jarInfo.getPath(), duplicates.size(), duplicates.get(0)));
+		}
+	}
+
+	/* mirrors the path resolution of JarInfo.formattedURL(). */
+	private File localFile() {
+		String path = jarInfo.getPath();
+		File file = new File(path);
+		if (!path.endsWith(".jar") && !file.exists()) {
+			file = new File(path + ".jar");
+		}
+		return file;
+	}
+
+	private void downloadURL(URL url) throws IOException {
+		JarURLConnection connection = (JarURLConnection) url.openConnection();
 		JarFile jarFile = connection.getJarFile();
 		Enumeration<JarEntry> entries = jarFile.entries();
-		contents = new LocateableJarContents<>(url);
-		
-		Map<String, ClassNode> map = new HashMap<>();
-		
+		Set<String> names = new HashSet<>();
+
 		while (entries.hasMoreElements()) {
 			JarEntry entry = entries.nextElement();
-			byte[] bytes = read(jarFile.getInputStream(entry));
-			if (entry.getName().endsWith(".class")) {
-				C cn = factory.create(bytes, entry.getName());
-				if(!map.containsKey(cn.getName())) {
-					contents.getClassContents().add(cn);
+			byte[] bytes = ByteStreams.toByteArray(jarFile.getInputStream(entry));
+			if (isClass(entry)) {
+				addClass(names, entry.getName(), factory.create(bytes, entry.getName()));
+			} else {
+				contents.getResourceContents().add(new JarResource(entry.getName(), bytes));
+			}
+		}
+	}
+
+	private void downloadFile(File file) throws IOException {
+		try (ZipFile zip = new ZipFile(file)) {
+			List<ZipEntry> entries = new ArrayList<>(zip.size());
+			Enumeration<? extends ZipEntry> it = zip.entries();
+			while (it.hasMoreElements()) {
+				entries.add(it.nextElement());
+			}
+
+			/* slots are indexed by entry, holding the parsed class for class
+			 * entries and the raw bytes for everything else. */
+			Object[] loaded = new Object[entries.size()];
+			LoadTask task = new LoadTask(zip, entries, loaded, 0, entries.size());
+			if (parallelism <= 1 || entries.size() <= LoadTask.THRESHOLD) {
+				task.compute();
+			} else {
+				ForkJoinPool pool = new ForkJoinPool(parallelism);
+				try {
+					pool.invoke(task);
+				} finally {
+					pool.shutdown();
+				}
+			}
+			if (task.error != null) {
+				throw task.error;
+			}
+
+			Set<String> names = new HashSet<>();
+			for (int i = 0; i < loaded.length; i++) {
+				String name = entries.get(i).getName();
+				if (isClass(entries.get(i))) {
+					@SuppressWarnings("unchecked")
+					C cn = (C) loaded[i];
+					addClass(names, name, cn);
 				} else {
-					throw new IllegalStateException("duplicate: " + cn.getName());
+					contents.getResourceContents().add(new JarResource(name, (byte[]) loaded[i]));
 				}
-				
-				//if(cn.name.equals("org/xmlpull/v1/XmlPullParser")) {
-				//	System.out.println("SingleJarDownloader.download() " +entry.getName() + " " + bytes.length);
-				//}
-			} else {
-				JarResource resource = new JarResource(entry.getName(), bytes);
-				contents.getResourceContents().add(resource);
 			}
 		}
 	}
 
-	private byte[] read(InputStream inputStream) throws IOException {
-		return ByteStreams.toByteArray(inputStream);
+	private void addClass(Set<String> names, String entryName, C cn) {
+		if (names.add(cn.getName())) {
+			contents.getClassContents().add(cn);
+		} else {
+			duplicates.add(entryName);
+		}
+	}
+
+	private static boolean isClass(ZipEntry entry) {
+		return entry.getName().endsWith(".class");
+	}
+
+	private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+		try (InputStream in = zip.getInputStream(entry)) {
+			long size = entry.getSize();
+			if (size >= 0 && size <= Integer.MAX_VALUE) {
+				/* the inflated size is known from the central directory, so
+				 * read into an exactly sized array. */
+				byte[] bytes = in.readNBytes((int) size);
+				if (in.read() == -1) {
+					return bytes;
+				}
+				throw new IOException("size mismatch for " + entry.getName());
+			}
+			return in.readAllBytes();
+		}
+	}
+
+	private class LoadTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/* below this many entries a task loads its range directly. */
+		private static final int THRESHOLD = 32;
+
+		private final ZipFile zip;
+		private final List<ZipEntry> entries;
+		private final Object[] loaded;
+		private final int start, end;
+		/* the first failure in this task's range, the remaining entries are
+		 * still loaded. */
+		private IOException error;
+
+		LoadTask(ZipFile zip, List<ZipEntry> entries, Object[] loaded, int start, int end) {
+			this.zip = zip;
+			this.entries = entries;
+			this.loaded = loaded;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if ((end - start) <= THRESHOLD) {
+				for (int i = start; i < end; i++) {
+					ZipEntry entry = entries.get(i);
+					try {
+						byte[] bytes = read(zip, entry);
+						loaded[i] = isClass(entry) ? factory.create(bytes, entry.getName()) : bytes;
+					} catch (IOException e) {
+						if (error == null) {
+							error = e;
+						}
+					}
+				}
+			} else {
+				int mid = (start + end) >>> 1;
+				LoadTask left = new LoadTask(zip, entries, loaded, start, mid);
+				LoadTask right = new LoadTask(zip, entries, loaded, mid, end);
+				invokeAll(left, right);
+				error = left.error != null ? left.error : right.error;
+			}
+		}
 	}
 }